@@ -0,0 +1,36 @@
+package com.carbontc.walletservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class CertificateRenderConfig {
+
+    public static final String CERTIFICATE_RENDER_EXECUTOR = "certificateRenderExecutor";
+
+    /**
+     * Pool riêng cho render PDF (tốn CPU): số luồng cố định, hàng đợi có giới hạn.
+     * Mọi lượt render (worker, lần tải đầu ở chế độ lazy, tạo lại hàng loạt) đi qua đây.
+     * Hàng đợi đầy thì luồng gửi việc tự render (CallerRuns) - tự chậm lại thay vì
+     * dồn việc vô hạn vào heap. Kích thước hàng đợi xem qua metric executor.queued.
+     */
+    @Bean(name = CERTIFICATE_RENDER_EXECUTOR)
+    public ThreadPoolTaskExecutor certificateRenderExecutor(
+            @Value("${wallet-config.certificate.render.pool-size:0}") int poolSize,
+            @Value("${wallet-config.certificate.render.queue-capacity:100}") int queueCapacity) {
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("cert-render-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
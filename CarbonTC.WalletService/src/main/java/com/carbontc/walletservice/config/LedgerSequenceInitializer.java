@@ -0,0 +1,61 @@
+package com.carbontc.walletservice.config;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Các bảng sổ cái trước đây dùng AUTO_INCREMENT. Khi chuyển sang bảng sequence (*_seq),
+ * giá trị next_val phải luôn lớn hơn id lớn nhất đang có, nếu không sẽ trùng khoá chính.
+ * Chạy sau khi Hibernate cập nhật schema nhưng trước khi các listener RabbitMQ start.
+ * Đồng bộ lỗi thì dừng khởi động: chạy tiếp sẽ cấp id trùng với dòng cũ và mọi INSERT sổ cái đều lỗi.
+ * Chỉ áp dụng cho MySQL/MariaDB (sequence giả lập bằng bảng); DB có sequence thật (H2 khi test)
+ * luôn được tạo mới cùng schema nên không có dòng cũ để đồng bộ.
+ */
+@Component
+@RequiredArgsConstructor
+public class LedgerSequenceInitializer implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerSequenceInitializer.class);
+
+    // Phải khớp allocationSize trong @SequenceGenerator của các entity
+    private static final int ALLOCATION_SIZE = 50;
+
+    // bảng sequence -> (bảng dữ liệu, cột id)
+    private static final Map<String, String[]> SEQUENCES = Map.of(
+            "transaction_logs_seq", new String[]{"transaction_logs", "id"},
+            "carbon_credit_transfers_seq", new String[]{"carbon_credit_transfers", "transfer_id"},
+            "transaction_fees_seq", new String[]{"transaction_fees", "fee_id"},
+            "payments_seq", new String[]{"payments", "payment_id"},
+            "certificates_seq", new String[]{"certificates", "certificate_id"}
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (database == null || !(database.contains("MySQL") || database.contains("MariaDB"))) {
+            log.info("DB {} dùng sequence thật, bỏ qua đồng bộ bảng *_seq", database);
+            return;
+        }
+        SEQUENCES.forEach((sequenceTable, target) -> {
+            String sql = "UPDATE " + sequenceTable + " SET next_val = GREATEST(next_val, " +
+                    "(SELECT COALESCE(MAX(" + target[1] + "), 0) + " + (ALLOCATION_SIZE + 1) + " FROM " + target[0] + "))";
+            try {
+                int updated = jdbcTemplate.update(sql);
+                log.info("Đồng bộ sequence {} theo {}.{} ({} dòng)", sequenceTable, target[0], target[1], updated);
+            } catch (DataAccessException e) {
+                throw new IllegalStateException("Không đồng bộ được sequence " + sequenceTable + " theo "
+                        + target[0] + "." + target[1] + ", dừng khởi động để tránh trùng khoá chính", e);
+            }
+        });
+    }
+}
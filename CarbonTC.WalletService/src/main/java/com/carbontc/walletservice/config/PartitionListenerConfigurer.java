@@ -0,0 +1,40 @@
+package com.carbontc.walletservice.config;
+
+import com.carbontc.walletservice.consumer.PartitionedEventDispatcher;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Đăng ký 1 listener container cho mỗi partition queue (số partition lấy từ cấu hình
+ * nên không khai báo được bằng @RabbitListener). Id: partitionListener-{i}.
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "wallet-config.partitioning", name = "enabled", havingValue = "true")
+public class PartitionListenerConfigurer implements RabbitListenerConfigurer {
+
+    public static final String LISTENER_ID_PREFIX = "partitionListener-";
+
+    private final PartitionedEventDispatcher partitionedEventDispatcher;
+    private final SimpleRabbitListenerContainerFactory partitionContainerFactory;
+
+    @Value("${wallet-config.partitioning.partitions:8}")
+    private int partitions;
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int i = 0; i < partitions; i++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId(LISTENER_ID_PREFIX + i);
+            endpoint.setQueueNames(RabbitMQConfig.partitionQueueName(i));
+            endpoint.setMessageListener(partitionedEventDispatcher);
+            registrar.registerEndpoint(endpoint, partitionContainerFactory);
+        }
+    }
+}
@@ -4,11 +4,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitMQConfig {
     // Xử lý giao dịch từ Marketplace
@@ -84,8 +92,9 @@ public class RabbitMQConfig {
         // 3. (QUAN TRỌNG) TẮT tính năng ghi ngày tháng thành số timestamp
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
-        // 4. Trả về converter đã được cấu hình
-        return new Jackson2JsonMessageConverter(objectMapper);
+        // 4. Trả về converter đã được cấu hình.
+        // Tin trong partition queue không có listener theo kiểu tham số, phải đọc kiểu từ __TypeId__
+        return new Jackson2JsonMessageConverter(objectMapper, "com.carbontc.walletservice.dto.event");
     }
 
     public static final String USER_EXCHANGE = "user_exchange";
@@ -106,4 +115,191 @@ public class RabbitMQConfig {
     public Binding userCreatedWalletBinding(Queue userCreatedWalletQueue, TopicExchange userExchange) {
         return BindingBuilder.bind(userCreatedWalletQueue).to(userExchange).with(USER_CREATED_ROUTING_KEY);
     }
+
+    // Render PDF chứng nhận bất đồng bộ (nội bộ Wallet Service)
+    public static final String CERTIFICATE_EXCHANGE = "wallet_service.certificate_exchange";
+    public static final String CERTIFICATE_REQUEST_QUEUE = "wallet_service_certificate_request_queue";
+    public static final String CERTIFICATE_REQUEST_ROUTING_KEY = "certificate.requested";
+    // Gửi trên TRANSACTION_EXCHANGE khi PDF đã sẵn sàng
+    public static final String CERTIFICATE_ISSUED_ROUTING_KEY = "certificate.issued";
+
+    @Bean
+    public DirectExchange certificateExchange() {
+        return new DirectExchange(CERTIFICATE_EXCHANGE);
+    }
+
+    @Bean
+    public Queue certificateRequestQueue() {
+        return QueueBuilder.durable(CERTIFICATE_REQUEST_QUEUE).build();
+    }
+
+    @Bean
+    public Binding certificateRequestBinding(Queue certificateRequestQueue, DirectExchange certificateExchange) {
+        return BindingBuilder.bind(certificateRequestQueue).to(certificateExchange).with(CERTIFICATE_REQUEST_ROUTING_KEY);
+    }
+
+    // Worker render: mỗi consumer chỉ giữ 1 tin chưa ack vì render + upload tốn CPU/IO
+    @Bean
+    public SimpleRabbitListenerContainerFactory certificateWorkerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${wallet-config.certificate.worker-concurrency:2}") int concurrency,
+            @Value("${wallet-config.certificate.worker-max-concurrency:4}") int maxConcurrency) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        factory.setPrefetchCount(1);
+        return factory;
+    }
+
+    // Chế độ partition: router chia tin theo hash userId vào N queue, mỗi queue đúng 1 consumer đang chạy
+    // (x-single-active-consumer cả khi scale nhiều replica) -> giữ thứ tự theo từng user
+    public static final String PARTITION_EXCHANGE = "wallet_service.partition_exchange";
+    public static final String PARTITION_QUEUE_PREFIX = "wallet_service_partition_";
+
+    public static String partitionQueueName(int partition) {
+        return PARTITION_QUEUE_PREFIX + partition;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "wallet-config.partitioning", name = "enabled", havingValue = "true")
+    public Declarables partitionDeclarables(@Value("${wallet-config.partitioning.partitions:8}") int partitions) {
+        DirectExchange exchange = new DirectExchange(PARTITION_EXCHANGE);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        for (int i = 0; i < partitions; i++) {
+            Queue queue = QueueBuilder.durable(partitionQueueName(i)).singleActiveConsumer().build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(String.valueOf(i)));
+        }
+        return new Declarables(declarables);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory partitionContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${wallet-config.partitioning.prefetch:20}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 1 consumer / partition: nhiều hơn là mất thứ tự
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(prefetch);
+        return factory;
+    }
+
+    // Retry nhiều tầng + parking lot cho các queue mà service này consume.
+    // Tin lỗi được TieredRetryMessageRecoverer chuyển sang <queue>.retry.N (TTL tăng dần),
+    // hết TTL thì RabbitMQ dead-letter qua default exchange về lại queue gốc;
+    // hết số tầng thì vào <queue>.parking-lot chờ admin replay.
+    // Không đổi arguments của queue gốc để không bị PRECONDITION_FAILED với queue đã tồn tại.
+    public static final String DEAD_LETTER_EXCHANGE = "wallet_service.dead_letter_exchange";
+
+    // Parking lot chung cho tin lỗi không xác định được queue gốc (không replay tự động được)
+    public static final String UNKNOWN_QUEUE_PARKING_LOT = "wallet_service.unknown.parking-lot";
+
+    public static String retryQueueName(String queue, int tier) {
+        return queue + ".retry." + tier;
+    }
+
+    public static String parkingLotQueueName(String queue) {
+        return queue + ".parking-lot";
+    }
+
+    public static List<String> consumedQueues(boolean partitioning, int partitions) {
+        List<String> queues = new ArrayList<>(List.of(TRANSACTION_QUEUE, CREDIT_QUEUE, USER_CREATED_QUEUE, CERTIFICATE_REQUEST_QUEUE));
+        if (partitioning) {
+            for (int i = 0; i < partitions; i++) {
+                queues.add(partitionQueueName(i));
+            }
+        }
+        return queues;
+    }
+
+    @Bean
+    public Declarables deadLetterDeclarables(
+            @Value("${wallet-config.dead-letter.retry-delays-ms:5000,30000,300000}") long[] retryDelaysMs,
+            @Value("${wallet-config.partitioning.enabled:false}") boolean partitioning,
+            @Value("${wallet-config.partitioning.partitions:8}") int partitions) {
+        DirectExchange exchange = new DirectExchange(DEAD_LETTER_EXCHANGE);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        Queue unknownParkingLot = QueueBuilder.durable(UNKNOWN_QUEUE_PARKING_LOT).build();
+        declarables.add(unknownParkingLot);
+        declarables.add(BindingBuilder.bind(unknownParkingLot).to(exchange).with(UNKNOWN_QUEUE_PARKING_LOT));
+        for (String queue : consumedQueues(partitioning, partitions)) {
+            for (int tier = 1; tier <= retryDelaysMs.length; tier++) {
+                String retryQueue = retryQueueName(queue, tier);
+                Queue retry = QueueBuilder.durable(retryQueue)
+                        .ttl((int) retryDelaysMs[tier - 1])
+                        .deadLetterExchange("")
+                        .deadLetterRoutingKey(queue)
+                        .build();
+                declarables.add(retry);
+                declarables.add(BindingBuilder.bind(retry).to(exchange).with(retryQueue));
+            }
+            Queue parkingLot = QueueBuilder.durable(parkingLotQueueName(queue)).build();
+            declarables.add(parkingLot);
+            declarables.add(BindingBuilder.bind(parkingLot).to(exchange).with(parkingLotQueueName(queue)));
+        }
+        return new Declarables(declarables);
+    }
+
+    // Chế độ batch: gom tối đa N tin nhắn (hoặc chờ tối đa T ms) rồi xử lý trong 1 transaction DB
+    @Bean
+    public SimpleRabbitListenerContainerFactory transactionBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${wallet-config.transaction-batch.size:50}") int batchSize,
+            @Value("${wallet-config.transaction-batch.linger-ms:200}") long lingerMs) {
+        return batchContainerFactory(configurer, connectionFactory, batchSize, lingerMs);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory creditBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${wallet-config.credit-batch.size:500}") int batchSize,
+            @Value("${wallet-config.credit-batch.linger-ms:500}") long lingerMs) {
+        return batchContainerFactory(configurer, connectionFactory, batchSize, lingerMs);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory userCreatedBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${wallet-config.user-batch.size:200}") int batchSize,
+            @Value("${wallet-config.user-batch.linger-ms:500}") long lingerMs) {
+        return batchContainerFactory(configurer, connectionFactory, batchSize, lingerMs);
+    }
+
+    // Router chế độ partition: đọc theo batch để chờ publisher confirm 1 lần cho cả batch.
+    // Listener khai báo exclusive nên factory giữ đúng 1 consumer
+    @Bean
+    public SimpleRabbitListenerContainerFactory partitionRouterContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${wallet-config.partitioning.router-batch-size:100}") int batchSize,
+            @Value("${wallet-config.partitioning.router-linger-ms:50}") long lingerMs) {
+        SimpleRabbitListenerContainerFactory factory = batchContainerFactory(configurer, connectionFactory, batchSize, lingerMs);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        return factory;
+    }
+
+    static SimpleRabbitListenerContainerFactory batchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory, int batchSize, long lingerMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setBatchReceiveTimeout(lingerMs);
+        // prefetch phải >= batch size, nếu không consumer không bao giờ gom đủ 1 batch
+        factory.setPrefetchCount(batchSize * 2);
+        return factory;
+    }
 }
@@ -38,7 +38,8 @@ public class SecurityConfig {
                                 "/swagger-resources/**",
                                 "/v3/api-docs/**",
                                 "/api-docs/**",
-                                "/api/payments/vnpay-return" // Chỉ VNPAY callback
+                                "/api/payments/vnpay-return", // Chỉ VNPAY callback
+                                "/api/certificates/verify/**" // Bên thứ ba xác minh chứng nhận
                         ).permitAll()
                         .requestMatchers("/api/admin/**").hasRole("Admin")                        // Các API khác vẫn cần xác thực
                         .anyRequest().authenticated()
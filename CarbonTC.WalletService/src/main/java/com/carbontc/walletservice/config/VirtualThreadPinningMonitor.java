@@ -0,0 +1,93 @@
+package com.carbontc.walletservice.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Chỉ chạy khi bật virtual thread (spring.threads.virtual.enabled=true).
+ * Nghe sự kiện JFR jdk.VirtualThreadPinned: virtual thread bị ghim vào carrier thread
+ * (thường do chặn I/O bên trong khối synchronized hoặc native frame) lâu hơn ngưỡng.
+ * Đếm bằng metric wallet.virtual_threads.pinned và log frame của service gây ra.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "com.carbontc.";
+
+    private final Counter pinnedCounter;
+    private final Timer pinnedTimer;
+
+    @Value("${wallet-config.virtual-threads.pinning-threshold-ms:20}")
+    private long thresholdMs;
+
+    private volatile RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        this.pinnedCounter = meterRegistry.counter("wallet.virtual_threads.pinned");
+        this.pinnedTimer = meterRegistry.timer("wallet.virtual_threads.pinned.duration");
+    }
+
+    @Override
+    public void start() {
+        RecordingStream recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        stream = recording;
+        log.info("Theo dõi virtual thread bị ghim (ngưỡng {} ms)", thresholdMs);
+    }
+
+    @Override
+    public void stop() {
+        RecordingStream recording = stream;
+        stream = null;
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        pinnedTimer.record(event.getDuration());
+        log.warn("Virtual thread bị ghim {} ms tại {}", event.getDuration().toMillis(), culprit(event.getStackTrace()));
+    }
+
+    // Frame đầu tiên thuộc code của service, nếu không có thì frame trên cùng
+    private static String culprit(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown";
+        }
+        RecordedFrame selected = stackTrace.getFrames().get(0);
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame() && frame.getMethod().getType().getName().startsWith(APP_PACKAGE)) {
+                selected = frame;
+                break;
+            }
+        }
+        return selected.getMethod().getType().getName() + "." + selected.getMethod().getName()
+                + ":" + selected.getLineNumber();
+    }
+}
@@ -0,0 +1,133 @@
+package com.carbontc.walletservice.config;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tạo ví hàng loạt (INSERT ... ON DUPLICATE KEY) chỉ đúng khi có unique key trên e_wallets.user_id
+ * và carbon_wallets.owner_id. ddl-auto: update không thêm được key nếu DB cũ đã có ví trùng
+ * (chỉ log cảnh báo), nên bước này chạy khi khởi động, trước khi các listener RabbitMQ start:
+ * - key đã có: không làm gì;
+ * - ví trùng mà rỗng (số dư 0, không có lịch sử tham chiếu): xoá, giữ lại 1 ví mỗi user;
+ * - còn ví trùng có dữ liệu: dừng khởi động, cần gộp tay (không tự cộng dồn số dư).
+ */
+@Component
+@RequiredArgsConstructor
+public class WalletUniqueKeyMigration implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletUniqueKeyMigration.class);
+
+    record UniqueKey(String table, String idColumn, String keyColumn, String constraint,
+                     String emptyCondition, List<String> references) {
+    }
+
+    // references: "bảng.cột" trỏ tới ví; ví có dòng tham chiếu thì không được xoá
+    static final List<UniqueKey> KEYS = List.of(
+            new UniqueKey("e_wallets", "wallet_id", "user_id", "uk_e_wallets_user_id",
+                    "COALESCE(balance, 0) = 0",
+                    List.of("transaction_logs.wallet_id", "withdraw_requests.wallet_id", "payments.wallet_id")),
+            new UniqueKey("carbon_wallets", "wallet_id", "owner_id", "uk_carbon_wallets_owner_id",
+                    "COALESCE(balance, 0) = 0 AND COALESCE(total_earned, 0) = 0",
+                    List.of("carbon_credit_transfers.from_wallet_id", "carbon_credit_transfers.to_wallet_id"))
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        KEYS.forEach(this::migrate);
+    }
+
+    void migrate(UniqueKey key) {
+        if (hasUniqueIndex(key.table(), key.keyColumn())) {
+            log.debug("Unique key trên {}.{} đã có", key.table(), key.keyColumn());
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> removable = new ArrayList<>();
+            Map<String, Integer> conflicts = new HashMap<>();
+            for (String duplicated : duplicatedKeys(key)) {
+                List<Long> walletIds = jdbcTemplate.queryForList(
+                        "SELECT " + key.idColumn() + " FROM " + key.table() + " WHERE " + key.keyColumn() + " = ? ORDER BY " + key.idColumn(),
+                        Long.class, duplicated);
+                List<Long> used = walletIds.stream().filter(id -> !isEmpty(key, id)).toList();
+                if (used.size() > 1) {
+                    conflicts.put(duplicated, used.size());
+                    continue;
+                }
+                // Giữ ví đang dùng, nếu tất cả đều rỗng thì giữ ví tạo sớm nhất
+                Long keep = used.isEmpty() ? walletIds.get(0) : used.get(0);
+                walletIds.stream().filter(id -> !id.equals(keep)).forEach(removable::add);
+            }
+
+            if (!conflicts.isEmpty()) {
+                throw new IllegalStateException("Không thể tạo unique key " + key.constraint() + ": " + conflicts.size()
+                        + " " + key.keyColumn() + " có nhiều ví " + key.table() + " đang có dữ liệu, cần gộp tay trước khi khởi động: "
+                        + conflicts);
+            }
+
+            for (Long walletId : removable) {
+                jdbcTemplate.update("DELETE FROM " + key.table() + " WHERE " + key.idColumn() + " = ?", walletId);
+            }
+            jdbcTemplate.execute("ALTER TABLE " + key.table() + " ADD CONSTRAINT " + key.constraint()
+                    + " UNIQUE (" + key.keyColumn() + ")");
+            log.warn("Đã xoá {} ví rỗng bị trùng trong {} và tạo unique key {}", removable.size(), key.table(), key.constraint());
+        });
+    }
+
+    private List<String> duplicatedKeys(UniqueKey key) {
+        return jdbcTemplate.queryForList("SELECT " + key.keyColumn() + " FROM " + key.table()
+                + " WHERE " + key.keyColumn() + " IS NOT NULL GROUP BY " + key.keyColumn() + " HAVING COUNT(*) > 1", String.class);
+    }
+
+    private boolean isEmpty(UniqueKey key, Long walletId) {
+        Integer empty = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + key.table()
+                + " WHERE " + key.idColumn() + " = ? AND " + key.emptyCondition(), Integer.class, walletId);
+        if (empty == null || empty == 0) {
+            return false;
+        }
+        for (String reference : key.references()) {
+            String[] target = reference.split("\\.");
+            Integer referenced = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM " + target[0] + " WHERE " + target[1] + " = ?", Integer.class, walletId);
+            if (referenced != null && referenced > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Qua JDBC metadata thay vì information_schema để chạy được cả trên DB test
+    private boolean hasUniqueIndex(String table, String column) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, List<String>> columnsByIndex = new HashMap<>();
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), table, true, false)) {
+                while (rs.next()) {
+                    String index = rs.getString("INDEX_NAME");
+                    String indexed = rs.getString("COLUMN_NAME");
+                    if (index != null && indexed != null) {
+                        columnsByIndex.computeIfAbsent(index, k -> new ArrayList<>()).add(indexed);
+                    }
+                }
+            }
+            return columnsByIndex.values().stream()
+                    .anyMatch(columns -> columns.size() == 1 && columns.get(0).equalsIgnoreCase(column));
+        }));
+    }
+}
@@ -0,0 +1,16 @@
+package com.carbontc.walletservice.consumer;
+
+/**
+ * Tin không được đi retry queue (thử lại vô ích, hoặc quay lại cuối partition queue sẽ mất thứ tự):
+ * TieredRetryMessageRecoverer chuyển thẳng vào parking lot để xử lý tay.
+ */
+public class NonRetryableMessageException extends RuntimeException {
+
+    public NonRetryableMessageException(String message) {
+        super(message);
+    }
+
+    public NonRetryableMessageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,124 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.repository.ProcessedEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Điểm hẹn giữa các partition cho event chạm ví ở nhiều partition (vd. người mua và người bán
+ * rơi vào 2 partition khác nhau). Router gửi event vào partition nhỏ nhất và 1 tin đánh dấu vào
+ * mỗi partition còn lại, đúng vị trí theo thứ tự đọc từ queue gốc:
+ * - consumer partition khác gặp tin đánh dấu thì báo "đã tới" rồi chờ event xử lý xong;
+ * - consumer partition chính chờ mọi partition kia "đã tới" rồi mới xử lý event.
+ * Nhờ vậy event đứng sau mọi tin trước nó và trước mọi tin sau nó ở tất cả partition liên quan.
+ * Trạng thái lưu trong processed_events (replica khác nhau vẫn thấy nhau), được dọn theo TTL chung.
+ * Bên chờ được đánh thức ngay nếu bên kia chạy cùng JVM, còn lại thì poll DB với khoảng giãn dần.
+ * Hết thời gian chờ thì không bao giờ xử lý tiếp mà mất thứ tự:
+ * - partition chính ném NonRetryableMessageException, event vào parking lot (rồi vẫn đánh dấu hoàn tất);
+ * - partition phụ tiếp tục chờ, vì event chắc chắn sẽ hoàn tất hoặc bị park ở partition chính.
+ */
+@Component
+@RequiredArgsConstructor
+public class PartitionBarrier {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionBarrier.class);
+
+    private static final String EVENT_TYPE = "PARTITION_BARRIER";
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet-config.partitioning.barrier-timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Value("${wallet-config.partitioning.barrier-poll-ms:20}")
+    private long pollMs;
+
+    @Value("${wallet-config.partitioning.barrier-max-poll-ms:1000}")
+    private long maxPollMs;
+
+    // Đánh thức các thread đang chờ trong JVM này mỗi khi có mốc mới được ghi
+    private final Object signal = new Object();
+
+    /**
+     * Gọi bởi partition phụ khi gặp tin đánh dấu: báo đã tới rồi chờ partition chính xử lý xong event.
+     */
+    public void arriveAndAwaitCompletion(String barrierId, int partition) {
+        mark(arrivalKey(barrierId, partition));
+        BooleanSupplier completed = () -> processedEventRepository.existsById(completionKey(barrierId));
+        while (!await(completed)) {
+            timedOut(barrierId, "hoàn tất");
+        }
+    }
+
+    /**
+     * Gọi bởi partition chính trước khi xử lý event: chờ mọi partition phụ xử lý xong các tin đứng trước.
+     */
+    public void awaitArrivals(String barrierId, Collection<Integer> partitions) {
+        List<String> keys = partitions.stream().map(p -> arrivalKey(barrierId, p)).toList();
+        if (!await(() -> processedEventRepository.countByEventIdIn(keys) >= keys.size())) {
+            timedOut(barrierId, "các partition phụ");
+            throw new NonRetryableMessageException("Barrier " + barrierId + ": các partition phụ không tới kịp trong "
+                    + timeoutMs + " ms");
+        }
+    }
+
+    public void complete(String barrierId) {
+        mark(completionKey(barrierId));
+    }
+
+    private void mark(String key) {
+        transactionTemplate.executeWithoutResult(status ->
+                processedEventRepository.markProcessed(key, EVENT_TYPE, LocalDateTime.now()));
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    // Trả về false nếu hết timeoutMs mà điều kiện vẫn chưa đúng
+    private boolean await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long sleepMs = pollMs;
+        while (!condition.getAsBoolean()) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            try {
+                synchronized (signal) {
+                    signal.wait(Math.min(sleepMs, remainingMs));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Bị ngắt khi chờ barrier", e);
+            }
+            sleepMs = Math.min(sleepMs * 2, maxPollMs);
+        }
+        return true;
+    }
+
+    private void timedOut(String barrierId, String what) {
+        meterRegistry.counter("wallet.partition.barrier.timeouts").increment();
+        log.error("Barrier {}: chờ {} quá {} ms", barrierId, what, timeoutMs);
+    }
+
+    private static String arrivalKey(String barrierId, int partition) {
+        return "barrier:" + barrierId + ":" + partition;
+    }
+
+    private static String completionKey(String barrierId) {
+        return "barrier:" + barrierId + ":done";
+    }
+}
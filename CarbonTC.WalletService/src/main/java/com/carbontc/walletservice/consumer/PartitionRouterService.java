@@ -0,0 +1,174 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.CreditIssuedEvent;
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import com.carbontc.walletservice.dto.event.UserCreatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Chế độ partition: đọc tin từ các queue gốc và chuyển sang partition queue theo hash userId
+ * của MỌI ví mà event chạm tới (giao dịch: người mua và người bán).
+ * - Mỗi router là exclusive consumer của queue gốc: dù chạy nhiều replica, tại một thời điểm chỉ
+ *   1 router đọc mỗi queue (các replica khác chờ sẵn và tự nhận khi router đang chạy mất kết nối),
+ *   nên thứ tự chia partition đúng bằng thứ tự trong queue gốc.
+ * - Event chạm nhiều partition đi vào partition nhỏ nhất, các partition còn lại nhận tin đánh dấu
+ *   (xem PartitionBarrier).
+ * - Đọc theo batch, gửi cả batch rồi chờ publisher confirm 1 lần như outbox relay. Batch chỉ được
+ *   ack khi broker đã xác nhận mọi tin chuyển tiếp, nên không mất tin nếu router chết giữa chừng.
+ *   Tin có thể bị chuyển trùng: giao dịch chống trùng theo transactionId, tín chỉ theo referenceId
+ *   (processed_events), ví mới theo userId.
+ */
+@Service
+public class PartitionRouterService {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionRouterService.class);
+
+    public static final String PARTITION_HEADER = "x-wallet-partition";
+    public static final String BARRIER_ID_HEADER = "x-wallet-barrier-id";
+    // Trên tin chính: danh sách partition phụ phải "đã tới" trước khi xử lý
+    public static final String BARRIER_PARTITIONS_HEADER = "x-wallet-barrier-partitions";
+    public static final String BARRIER_MARKER_HEADER = "x-wallet-barrier-marker";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MessageConverter messageConverter;
+
+    @Value("${wallet-config.partitioning.partitions:8}")
+    private int partitions;
+
+    @Value("${wallet-config.partitioning.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    public PartitionRouterService(RabbitTemplate rabbitTemplate, MessageConverter messageConverter) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.messageConverter = messageConverter;
+    }
+
+    // Người mua bị trừ tiền, người bán bị trừ tín chỉ: cả 2 cần đúng thứ tự
+    @RabbitListener(id = "transactionRouter", queues = RabbitMQConfig.TRANSACTION_QUEUE,
+            containerFactory = "partitionRouterContainerFactory", exclusive = true,
+            autoStartup = "${wallet-config.partitioning.enabled:false}")
+    public void routeTransactions(List<Message> messages) {
+        routeBatch(messages, TransactionCreatedEvent.class,
+                event -> Arrays.asList(event.getBuyerUserId(), event.getSellerUserId()));
+    }
+
+    @RabbitListener(id = "creditRouter", queues = RabbitMQConfig.CREDIT_QUEUE,
+            containerFactory = "partitionRouterContainerFactory", exclusive = true,
+            autoStartup = "${wallet-config.partitioning.enabled:false}")
+    public void routeCreditsIssued(List<Message> messages) {
+        routeBatch(messages, CreditIssuedEvent.class, event -> Arrays.asList(event.getOwnerUserId()));
+    }
+
+    @RabbitListener(id = "userCreatedRouter", queues = RabbitMQConfig.USER_CREATED_QUEUE,
+            containerFactory = "partitionRouterContainerFactory", exclusive = true,
+            autoStartup = "${wallet-config.partitioning.enabled:false}")
+    public void routeUsersCreated(List<Message> messages) {
+        routeBatch(messages, UserCreatedEvent.class, event -> Arrays.asList(event.getUserId()));
+    }
+
+    public static int partitionOf(String userId, int partitions) {
+        return Math.floorMod(userId.hashCode(), partitions);
+    }
+
+    <T> void routeBatch(List<Message> messages, Class<T> type, Function<T, List<String>> touchedUsers) {
+        List<CorrelationData> confirms = new ArrayList<>();
+        for (Message message : messages) {
+            message.getMessageProperties().setInferredArgumentType(type);
+            Object payload = messageConverter.fromMessage(message);
+            if (!type.isInstance(payload)) {
+                log.error("Tin không phải {}, bỏ qua: {}", type.getSimpleName(), payload);
+                continue;
+            }
+            T event = type.cast(payload);
+            TreeSet<Integer> targets = touchedUsers.apply(event).stream()
+                    .filter(Objects::nonNull)
+                    .map(userId -> partitionOf(userId, partitions))
+                    .collect(Collectors.toCollection(TreeSet::new));
+            if (targets.isEmpty()) {
+                log.error("Không xác định được userId để chia partition, bỏ qua tin: {}", event);
+                continue;
+            }
+            route(event, targets, confirms);
+        }
+        awaitConfirms(confirms);
+    }
+
+    private void route(Object event, TreeSet<Integer> targets, List<CorrelationData> confirms) {
+        int primary = targets.pollFirst();
+        String barrierId = targets.isEmpty() ? null : UUID.randomUUID().toString();
+
+        CorrelationData correlation = new CorrelationData();
+        rabbitTemplate.convertAndSend(RabbitMQConfig.PARTITION_EXCHANGE, String.valueOf(primary), event, message -> {
+            MessageProperties properties = message.getMessageProperties();
+            properties.setHeader(PARTITION_HEADER, primary);
+            if (barrierId != null) {
+                properties.setHeader(BARRIER_ID_HEADER, barrierId);
+                properties.setHeader(BARRIER_PARTITIONS_HEADER,
+                        targets.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            }
+            return message;
+        }, correlation);
+        confirms.add(correlation);
+
+        for (int partition : targets) {
+            CorrelationData markerCorrelation = new CorrelationData();
+            rabbitTemplate.send(RabbitMQConfig.PARTITION_EXCHANGE, String.valueOf(partition),
+                    barrierMarker(barrierId, partition), markerCorrelation);
+            confirms.add(markerCorrelation);
+        }
+    }
+
+    private static Message barrierMarker(String barrierId, int partition) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setHeader(PARTITION_HEADER, partition);
+        properties.setHeader(BARRIER_ID_HEADER, barrierId);
+        properties.setHeader(BARRIER_MARKER_HEADER, true);
+        return new Message("{}".getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    // 1 lần chờ cho cả batch; thiếu confirm thì ném lỗi để cả batch đi retry (tin đã gửi sẽ bị trùng, không mất)
+    private void awaitConfirms(List<CorrelationData> confirms) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (CorrelationData correlation : confirms) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+                if (!confirm.isAck()) {
+                    throw new AmqpException("Broker từ chối tin chuyển sang partition: " + confirm.getReason());
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                throw new AmqpException("Không nhận được publisher confirm khi chuyển tin sang partition", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmqpException("Bị ngắt khi chờ publisher confirm", e);
+            }
+        }
+    }
+}
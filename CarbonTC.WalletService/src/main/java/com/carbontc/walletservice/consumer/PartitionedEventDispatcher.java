@@ -0,0 +1,78 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.dto.event.CreditIssuedEvent;
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import com.carbontc.walletservice.dto.event.UserCreatedEvent;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Nhận tin từ các partition queue và gọi đúng handler của RabbitMQConsumerService
+ * theo kiểu event (đọc từ header __TypeId__ do PartitionRouterService gắn).
+ * Tin có barrier (event chạm nhiều partition) được đồng bộ qua PartitionBarrier.
+ */
+@Component
+@RequiredArgsConstructor
+public class PartitionedEventDispatcher implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedEventDispatcher.class);
+
+    private final MessageConverter messageConverter;
+    private final RabbitMQConsumerService rabbitMQConsumerService;
+    private final PartitionBarrier partitionBarrier;
+
+    @Override
+    public void onMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        Object barrierId = properties.getHeader(PartitionRouterService.BARRIER_ID_HEADER);
+        if (barrierId == null) {
+            dispatch(message);
+            return;
+        }
+
+        if (Boolean.TRUE.equals(properties.getHeader(PartitionRouterService.BARRIER_MARKER_HEADER))) {
+            Object partition = properties.getHeader(PartitionRouterService.PARTITION_HEADER);
+            partitionBarrier.arriveAndAwaitCompletion(barrierId.toString(), ((Number) partition).intValue());
+            return;
+        }
+
+        try {
+            partitionBarrier.awaitArrivals(barrierId.toString(),
+                    parsePartitions(properties.getHeader(PartitionRouterService.BARRIER_PARTITIONS_HEADER)));
+            dispatch(message);
+        } finally {
+            // Kể cả khi handler lỗi (tin đi retry queue) hay chờ quá hạn (tin vào parking lot): giải phóng các partition đang chờ
+            partitionBarrier.complete(barrierId.toString());
+        }
+    }
+
+    private void dispatch(Message message) {
+        Object event = messageConverter.fromMessage(message);
+        if (event instanceof TransactionCreatedEvent transactionCreated) {
+            rabbitMQConsumerService.handleTransaction(transactionCreated);
+        } else if (event instanceof CreditIssuedEvent creditIssued) {
+            rabbitMQConsumerService.handleCreditIssued(creditIssued);
+        } else if (event instanceof UserCreatedEvent userCreated) {
+            rabbitMQConsumerService.handleUserCreated(userCreated);
+        } else {
+            log.error("Partition {} nhận được tin không rõ kiểu: {}",
+                    message.getMessageProperties().getConsumerQueue(), event == null ? null : event.getClass());
+        }
+    }
+
+    private static List<Integer> parsePartitions(Object header) {
+        if (header == null || header.toString().isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(header.toString().split(",")).map(Integer::valueOf).toList();
+    }
+}
@@ -0,0 +1,218 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.CreditIssuedEvent;
+import com.carbontc.walletservice.dto.event.TransactionCompletedEvent;
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import com.carbontc.walletservice.dto.event.UserCreatedEvent;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.service.CarbonWalletsService;
+import com.carbontc.walletservice.service.OutboxService;
+import com.carbontc.walletservice.service.TransactionSettlementService;
+import com.carbontc.walletservice.service.WalletProvisioningService;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Các listener chế độ batch: gom nhiều tin nhắn rồi xử lý trong 1 transaction DB
+ * để chia nhỏ chi phí commit/fsync khi có đợt cao điểm.
+ * Mặc định tắt, bật bằng wallet-config.*-batch.enabled (không dùng cùng chế độ partition).
+ */
+@Service
+@RequiredArgsConstructor
+public class RabbitMQBatchConsumerService {
+
+    private static final Logger log = LoggerFactory.getLogger(RabbitMQBatchConsumerService.class);
+
+    private final TransactionSettlementService transactionSettlementService;
+    private final CarbonWalletsService carbonWalletsService;
+    private final WalletProvisioningService walletProvisioningService;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final OutboxService outboxService;
+    private final RabbitMQConsumerService rabbitMQConsumerService;
+    private final TieredRetryMessageRecoverer tieredRetryMessageRecoverer;
+    private final MessageConverter messageConverter;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Batch TransactionCreatedEvent: cả batch chạy trong 1 transaction (1 commit), batch được ack
+     * sau khi commit, tin nhắn COMPLETED được ghi vào outbox trong cùng transaction.
+     * Chỉ cần 1 event lỗi (vd. thiếu số dư) là transaction chung đã bị đánh dấu rollback-only
+     * (debit/credit là @Transactional), nên cả batch rollback rồi xử lý lại từng event
+     * trong transaction riêng qua RabbitMQConsumerService.handleTransaction - event hợp lệ vẫn
+     * được commit, event lỗi nhận tin FAILED như ở chế độ thường.
+     */
+    @RabbitListener(id = "transactionBatchListener", queues = RabbitMQConfig.TRANSACTION_QUEUE,
+            containerFactory = "transactionBatchContainerFactory",
+            autoStartup = "#{${wallet-config.transaction-batch.enabled:false} && !${wallet-config.partitioning.enabled:false}}")
+    public void handleTransactionBatch(List<TransactionCreatedEvent> events) {
+        List<TransactionCreatedEvent> batch = events.stream().filter(Objects::nonNull).toList();
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.info("Nhận batch {} TransactionCreatedEvent", batch.size());
+        meterRegistry.summary("wallet.transaction.batch.size").record(batch.size());
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            settleAsGroup(batch);
+        } catch (BusinessException | RuntimeException e) {
+            // Deadlock/xung đột version đã được executor thử lại đủ số lần: để listener đưa batch vào retry queue
+            if (TransactionRetryExecutor.isLockConflict(e) || TransactionRetryExecutor.isOptimisticConflict(e)) {
+                throw e instanceof RuntimeException re ? re : new IllegalStateException(e);
+            }
+            log.warn("Batch {} giao dịch bị rollback ({}), xử lý lại từng giao dịch", batch.size(), e.getMessage());
+            meterRegistry.counter("wallet.transaction.batch.fallbacks").increment();
+            settleOneByOne(batch);
+        } finally {
+            sample.stop(meterRegistry.timer("wallet.transaction.batch.duration"));
+        }
+        log.info("Xử lý batch {} giao dịch xong", batch.size());
+    }
+
+    /**
+     * Đường nhanh: settle cả batch rồi ghi outbox, tất cả trong 1 transaction.
+     * Lỗi ở bất kỳ event nào được ném ra ngoài và rollback cả batch.
+     */
+    private void settleAsGroup(List<TransactionCreatedEvent> batch) throws BusinessException {
+        List<TransactionCompletedEvent> outcomes = transactionRetryExecutor.execute("handleTransactionBatch", () -> {
+            List<TransactionCompletedEvent> completed = new ArrayList<>(batch.size());
+            for (TransactionCreatedEvent event : batch) {
+                Certificate cert = transactionSettlementService.settle(event);
+                if (cert == null) {
+                    log.warn("TransactionId: {} đã được xử lý trước đó. Bỏ qua (Idempotent).", event.getTransactionId());
+                    continue;
+                }
+                completed.add(TransactionCompletedEvent.builder()
+                        .transactionId(event.getTransactionId())
+                        .status("COMPLETED")
+                        .certificateId(cert.getCertificateId())
+                        .certificateHash(cert.getUniqueHash())
+                        .certificateStatus(cert.getStatus() != null ? cert.getStatus().name() : null)
+                        .completedAt(OffsetDateTime.now())
+                        .build());
+            }
+            for (TransactionCompletedEvent outcome : completed) {
+                outboxService.enqueue(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.completed", outcome);
+            }
+            return completed;
+        });
+        countEvents("completed", outcomes.size());
+        countEvents("duplicate", batch.size() - outcomes.size());
+    }
+
+    // Mỗi event 1 transaction riêng (REQUIRES_NEW so với nhau): event lỗi không kéo event khác rollback theo
+    private void settleOneByOne(List<TransactionCreatedEvent> batch) {
+        for (TransactionCreatedEvent event : batch) {
+            rabbitMQConsumerService.handleTransaction(event);
+            countEvents("isolated", 1);
+        }
+    }
+
+    /**
+     * Batch CreditIssuedEvent (đợt duyệt xác minh lớn): cộng dồn theo owner,
+     * mỗi ví 1 câu UPDATE, các dòng ISSUE được insert theo batch.
+     * Nhận tin gốc (không chỉ payload) để từng tin lỗi được TieredRetryMessageRecoverer chuyển đi riêng:
+     * - tin thiếu ví đi retry queue/parking lot giống hệt chế độ thường, thay vì bị ack và mất tín chỉ;
+     * - tin không đọc được hoặc thiếu owner/số tín chỉ vào thẳng parking lot, không làm hỏng cả batch.
+     * Tin lỗi chỉ được chuyển đi sau khi transaction đã commit (executor có thể chạy lại callback khi xung đột).
+     * Chuyển lỗi thì cả batch được giao lại: phần đã cộng được bỏ qua nhờ chống trùng theo referenceId.
+     */
+    @RabbitListener(id = "creditBatchListener", queues = RabbitMQConfig.CREDIT_QUEUE,
+            containerFactory = "creditBatchContainerFactory",
+            autoStartup = "#{${wallet-config.credit-batch.enabled:false} && !${wallet-config.partitioning.enabled:false}}")
+    public void handleCreditIssuedBatch(List<Message> messages) throws BusinessException {
+        Map<CreditIssuedEvent, Message> messageByEvent = new IdentityHashMap<>();
+        Map<Message, Throwable> rejected = new IdentityHashMap<>();
+        for (Message message : messages) {
+            try {
+                messageByEvent.put(toCreditIssuedEvent(message), message);
+            } catch (RuntimeException e) {
+                log.error("Bỏ tin không hợp lệ trong {} vào parking lot: {}", RabbitMQConfig.CREDIT_QUEUE, e.getMessage());
+                rejected.put(message, e instanceof NonRetryableMessageException ? e
+                        : new NonRetryableMessageException("Không đọc được CreditIssuedEvent", e));
+            }
+        }
+
+        List<CreditIssuedEvent> missingWallet = List.of();
+        if (!messageByEvent.isEmpty()) {
+            List<CreditIssuedEvent> batch = new ArrayList<>(messageByEvent.keySet());
+            meterRegistry.summary("wallet.credit.batch.size").record(batch.size());
+
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                missingWallet = transactionRetryExecutor.execute("handleCreditIssuedBatch",
+                        () -> carbonWalletsService.issueNewCreditsBatch(batch));
+            } finally {
+                sample.stop(meterRegistry.timer("wallet.credit.batch.duration"));
+            }
+            log.info("Phát hành tín chỉ theo batch: {} event, {} thiếu ví (chuyển sang retry)", batch.size(), missingWallet.size());
+        }
+
+        for (CreditIssuedEvent event : missingWallet) {
+            log.error("Cộng tín chỉ cho user {} thất bại (Lỗi nghiệp vụ): không tìm thấy ví Carbon, referenceId {}",
+                    event.getOwnerUserId(), event.getReferenceId());
+            rejected.put(messageByEvent.get(event),
+                    new BusinessException("Không tìm thấy ví Carbon của người dùng: " + event.getOwnerUserId()));
+        }
+        rejected.forEach(tieredRetryMessageRecoverer::recover);
+    }
+
+    // Giống listener thường: kiểu đích suy từ tham số, __TypeId__ của bên gửi (nếu có) vẫn được ưu tiên
+    private CreditIssuedEvent toCreditIssuedEvent(Message message) {
+        message.getMessageProperties().setInferredArgumentType(CreditIssuedEvent.class);
+        Object payload = messageConverter.fromMessage(message);
+        if (!(payload instanceof CreditIssuedEvent event)) {
+            throw new NonRetryableMessageException("Tin không phải CreditIssuedEvent: "
+                    + (payload == null ? null : payload.getClass()));
+        }
+        if (event.getOwnerUserId() == null || event.getCreditAmount() == null) {
+            throw new NonRetryableMessageException("CreditIssuedEvent thiếu ownerUserId hoặc creditAmount, referenceId "
+                    + event.getReferenceId());
+        }
+        return event;
+    }
+
+    /**
+     * Batch UserCreatedEvent (import user hàng loạt): tạo ví cho cả batch bằng
+     * 2 câu INSERT nhiều dòng thay vì 4 round-trip mỗi user.
+     */
+    @RabbitListener(id = "userCreatedBatchListener", queues = RabbitMQConfig.USER_CREATED_QUEUE,
+            containerFactory = "userCreatedBatchContainerFactory",
+            autoStartup = "#{${wallet-config.user-batch.enabled:false} && !${wallet-config.partitioning.enabled:false}}")
+    public void handleUserCreatedBatch(List<UserCreatedEvent> events) throws BusinessException {
+        List<String> userIds = events.stream()
+                .filter(e -> e != null && e.getUserId() != null)
+                .map(UserCreatedEvent::getUserId)
+                .toList();
+        if (userIds.isEmpty()) {
+            return;
+        }
+        meterRegistry.summary("wallet.user.batch.size").record(userIds.size());
+
+        int provisioned = walletProvisioningService.provisionWallets(userIds);
+        log.info("Tạo ví theo batch: {} event, {} user", events.size(), provisioned);
+    }
+
+    private void countEvents(String outcome, int count) {
+        if (count > 0) {
+            meterRegistry.counter("wallet.transaction.batch.events", "outcome", outcome).increment(count);
+        }
+    }
+}
@@ -2,38 +2,35 @@ package com.carbontc.walletservice.consumer;
 
 import com.carbontc.walletservice.config.RabbitMQConfig;
 import com.carbontc.walletservice.dto.event.*;
-import com.carbontc.walletservice.dto.request.CreditTransferRequestForConsumer;
 import com.carbontc.walletservice.entity.Certificate;
-import com.carbontc.walletservice.entity.EWallet;
-import com.carbontc.walletservice.entity.status.FeeType;
-import com.carbontc.walletservice.entity.status.TransferStatus;
-import com.carbontc.walletservice.entity.status.TransferType;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
 import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.service.CarbonWalletsService;
 import com.carbontc.walletservice.service.CertificateService;
-import com.carbontc.walletservice.service.EWalletService;
-import com.carbontc.walletservice.service.TransactionFeeService;
+import com.carbontc.walletservice.service.OutboxService;
+import com.carbontc.walletservice.service.TransactionSettlementService;
+import com.carbontc.walletservice.service.WalletProvisioningService;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional; // Đảm bảo import đúng
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class RabbitMQConsumerService {
 
-    private final EWalletService eWalletService;
     private final CarbonWalletsService carbonWalletsService;
-    private final RabbitTemplate rabbitTemplate;
-    private final TransactionFeeService transactionFeeService;
     private final CertificateService certificateService;
+    private final OutboxService outboxService;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final TransactionSettlementService transactionSettlementService;
+    private final WalletProvisioningService walletProvisioningService;
 
 
     private static final Logger log = LoggerFactory.getLogger(RabbitMQConsumerService.class);
@@ -41,9 +38,13 @@ public class RabbitMQConsumerService {
 
     /**
      * Lắng nghe sự kiện MUA BÁN từ Marketplace Service.
+     * Transaction DB do TransactionRetryExecutor mở (để tự thử lại khi deadlock),
+     * tin nhắn COMPLETED được ghi vào outbox trong cùng transaction.
+     * Tắt khi bật chế độ batch (RabbitMQBatchConsumerService.handleTransactionBatch)
+     * hoặc chế độ partition (tin được PartitionRouterService chuyển sang partition queue rồi mới tới đây).
      */
-    @RabbitListener(queues = RabbitMQConfig.TRANSACTION_QUEUE)
-    @Transactional(rollbackFor = Exception.class)
+    @RabbitListener(id = "transactionListener", queues = RabbitMQConfig.TRANSACTION_QUEUE,
+            autoStartup = "#{!${wallet-config.transaction-batch.enabled:false} && !${wallet-config.partitioning.enabled:false}}")
     public void handleTransaction(TransactionCreatedEvent event) {
         log.info(">>>>>> RAW EVENT RECEIVED: {}", event);
         if (event != null) {
@@ -58,47 +59,26 @@ public class RabbitMQConsumerService {
         log.info("Nhận được TransactionCreatedEvent: {}", event.getTransactionId());
 
         try {
-            // 1. Tìm ví
-            EWallet buyerEwallet = eWalletService.findWalletByUserId(event.getBuyerUserId());
-            EWallet sellerEwallet = eWalletService.findWalletByUserId(event.getSellerUserId());
-
-            // 2. Lấy phí từ event (Logic này đúng nếu Marketplace tính phí)
-            BigDecimal platformFee = event.getPlatformFee();
-            BigDecimal amountSellerReceives = event.getMoneyAmount().subtract(platformFee);
-
-            log.info("Giao dịch {}: Tổng tiền {}, Phí {}, Người bán nhận {}",
-                    event.getTransactionId(), event.getMoneyAmount(), platformFee, amountSellerReceives);
-
-            String debitDesc = "Thanh toán cho giao dịch " + event.getTransactionId();
-            eWalletService.debit(buyerEwallet.getWalletId(), event.getMoneyAmount(), debitDesc);
-
-            String creditDesc = "Nhận tiền từ giao dịch " + event.getTransactionId();
-            eWalletService.credit(sellerEwallet.getWalletId(), amountSellerReceives, creditDesc);
-
-            // 5. Chuyển tín chỉ
-            CreditTransferRequestForConsumer transferRequest = new CreditTransferRequestForConsumer();
-            transferRequest.setToUserId(event.getBuyerUserId());
-            transferRequest.setAmount(event.getCreditAmount());
-            transferRequest.setTransferType(TransferType.SALE);
-            transferRequest.setReferenceId(event.getTransactionId());
-            transferRequest.setTotalPrice(event.getMoneyAmount());
-            transferRequest.setStatus(TransferStatus.COMPLETED);
-            carbonWalletsService.transferCredits(event.getSellerUserId(), transferRequest);
-
-            // 6. Ghi nhận phí giao dịch
-            transactionFeeService.recordFee(event.getTransactionId(), platformFee, FeeType.PLATFORM_FEE);
-
-            // 7. Tạo chứng nhận
-            Certificate newCert = certificateService.createCertificate(event.getTransactionId(), event.getBuyerUserId(), event.getCreditAmount());
-
-            // 8. Gửi tin nhắn COMPLETED (Đã sửa đích và key)
-            TransactionCompletedEvent completedEvent = TransactionCompletedEvent.builder()
-                    .transactionId(event.getTransactionId())
-                    .status("COMPLETED")
-                    .certificateId(newCert.getCertificateId())
-                    .completedAt(OffsetDateTime.now())
-                    .build();
-            rabbitTemplate.convertAndSend(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.completed", completedEvent);
+            Certificate newCert = transactionRetryExecutor.execute("handleTransaction", () -> {
+                Certificate cert = transactionSettlementService.settle(event);
+                if (cert != null) {
+                    // 8. Gửi tin nhắn COMPLETED qua outbox - cùng commit với giao dịch, rollback thì không gửi
+                    TransactionCompletedEvent completedEvent = TransactionCompletedEvent.builder()
+                            .transactionId(event.getTransactionId())
+                            .status("COMPLETED")
+                            .certificateId(cert.getCertificateId())
+                            .certificateHash(cert.getUniqueHash())
+                            .certificateStatus(cert.getStatus() != null ? cert.getStatus().name() : null)
+                            .completedAt(OffsetDateTime.now())
+                            .build();
+                    outboxService.enqueue(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.completed", completedEvent);
+                }
+                return cert;
+            });
+            if (newCert == null) {
+                log.warn("TransactionId: {} đã được xử lý trước đó. Bỏ qua tin nhắn (Idempotent).", event.getTransactionId());
+                return;
+            }
 
             log.info("Xử lý TransactionId: {} thành công", event.getTransactionId());
 
@@ -112,7 +92,7 @@ public class RabbitMQConsumerService {
                     .message(e.getMessage())
                     .completedAt(OffsetDateTime.now())
                     .build();
-            rabbitTemplate.convertAndSend(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.failed", failed);
+            outboxService.enqueue(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.failed", failed);
 
         } catch (Exception e) {
             log.error("Xử lý TransactionId: {} thất bại (Lỗi hệ thống): {}", event.getTransactionId(), e.getMessage(), e); // Log cả stack trace
@@ -124,16 +104,18 @@ public class RabbitMQConsumerService {
                     .message("Lỗi hệ thống: " + e.getMessage())
                     .completedAt(OffsetDateTime.now())
                     .build();
-            rabbitTemplate.convertAndSend(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.failed", failed);
+            outboxService.enqueue(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.failed", failed);
 
         }
     }
 
     /**
      * Lắng nghe sự kiện PHÁT HÀNH TÍN CHỈ MỚI
+     * (issueNewCredits tự mở transaction và tự retry khi xung đột version)
+     * Tắt khi bật chế độ batch (RabbitMQBatchConsumerService.handleCreditIssuedBatch) hoặc chế độ partition.
      */
-    @RabbitListener(queues = RabbitMQConfig.CREDIT_QUEUE)
-    @Transactional(rollbackFor = Exception.class)
+    @RabbitListener(id = "creditListener", queues = RabbitMQConfig.CREDIT_QUEUE,
+            autoStartup = "#{!${wallet-config.credit-batch.enabled:false} && !${wallet-config.partitioning.enabled:false}}")
     public void handleCreditIssued(CreditIssuedEvent creditIssuedEvent) {
         log.info("Nhận được CreditIssuedEvent cho user: {}", creditIssuedEvent.getOwnerUserId());
 
@@ -143,14 +125,48 @@ public class RabbitMQConsumerService {
                     creditIssuedEvent.getCreditAmount(), creditIssuedEvent.getOwnerUserId());
 
         } catch (BusinessException e) { // Bắt lỗi nghiệp vụ
+            // Thường là ví chưa được tạo (UserCreatedEvent tới sau) -> đi retry queue rồi parking lot, không nuốt mất
             log.error("Cộng tín chỉ cho user {} thất bại (Lỗi nghiệp vụ): {}", creditIssuedEvent.getOwnerUserId(), e.getMessage());
+            throw new RuntimeException("Lỗi nghiệp vụ, cần retry", e);
         } catch (Exception e) { // Bắt lỗi hệ thống
             log.error("Cộng tín chỉ cho user {} thất bại (Lỗi hệ thống): {}", creditIssuedEvent.getOwnerUserId(), e.getMessage(), e);
+            throw new RuntimeException("Lỗi hệ thống, cần retry", e);
+        }
+    }
+
+    /**
+     * Worker render PDF chứng nhận cho các giao dịch đã commit.
+     * Render lỗi thì chứng nhận được đánh dấu FAILED (không retry vô hạn),
+     * còn lỗi hệ thống (DB...) được ném lại để RabbitMQ gửi lại.
+     */
+    @RabbitListener(id = "certificateWorker", queues = RabbitMQConfig.CERTIFICATE_REQUEST_QUEUE,
+            containerFactory = "certificateWorkerContainerFactory")
+    public void handleCertificateRequested(CertificateRequestedEvent event) {
+        if (event == null || event.getCertificateId() == null) {
+            log.error("Nhận được CertificateRequestedEvent nhưng bị null, không xử lý.");
+            return;
+        }
+
+        try {
+            Certificate cert = certificateService.renderCertificate(event.getCertificateId());
+            if (cert.getStatus() == CertificateStatus.RENDERING) {
+                // Luồng khác (có thể đã chết) giữ lượt render: để tin vào retry queue, sau lease sẽ nhận lại được
+                throw new IllegalStateException("Chứng nhận " + cert.getCertificateId() + " đang được render ở nơi khác");
+            }
+            log.info("Render chứng nhận {} cho giao dịch {}: {}",
+                    cert.getCertificateId(), event.getTransactionId(), cert.getStatus());
+        } catch (BusinessException e) {
+            log.error("Render chứng nhận {} thất bại (Lỗi nghiệp vụ): {}", event.getCertificateId(), e.getMessage());
         }
     }
 
-    @RabbitListener(queues = RabbitMQConfig.USER_CREATED_QUEUE)
-    @Transactional(rollbackFor = Exception.class) // Đảm bảo cả 2 ví cùng tạo, hoặc rollback
+    /**
+     * Tạo ví tiền + ví Carbon cho user mới. Tin gửi lại không tạo ví trùng
+     * nhờ unique key (INSERT ... ON DUPLICATE KEY), không cần kiểm tra trước.
+     * Tắt khi bật chế độ batch (RabbitMQBatchConsumerService.handleUserCreatedBatch) hoặc chế độ partition.
+     */
+    @RabbitListener(id = "userCreatedListener", queues = RabbitMQConfig.USER_CREATED_QUEUE,
+            autoStartup = "#{!${wallet-config.user-batch.enabled:false} && !${wallet-config.partitioning.enabled:false}}")
     public void handleUserCreated(UserCreatedEvent event) {
         if (event == null || event.getUserId() == null) {
             log.error("Nhận được UserCreatedEvent nhưng bị null, không xử lý.");
@@ -161,28 +177,12 @@ public class RabbitMQConsumerService {
         log.info("Nhận được UserCreatedEvent, bắt đầu tạo ví cho user: {}", userId);
 
         try {
-            // 1. Tạo Ví tiền (EWallet)
-            eWalletService.createWallet(userId);
-            log.info("Tạo EWallet (tiền) cho user {} thành công.", userId);
-
-            // 2. Tạo Ví Carbon (CarbonWallet)
-            carbonWalletsService.createCarbonWallet(userId);
-            log.info("Tạo CarbonWallet (tín chỉ) cho user {} thành công.", userId);
-
-        } catch (BusinessException e) {
-            // Xử lý Idempotency (tin nhắn bị gửi lại)
-            // Cả 2 hàm create của bạn đều ném BusinessException nếu ví đã tồn tại
-            if (e.getMessage().contains("đã tạo ví rồi") || e.getMessage().contains("đã tồn tại")) {
-                log.warn("User {} đã có ví. Bỏ qua tin nhắn (Idempotent).", userId);
-            } else {
-                log.error("Lỗi nghiệp vụ khi tạo ví cho user {}: {}", userId, e.getMessage());
-            }
+            walletProvisioningService.provisionWallets(List.of(userId));
+            log.info("Đã đảm bảo EWallet và CarbonWallet cho user {}.", userId);
         } catch (Exception e) {
             log.error("Lỗi hệ thống khi tạo ví cho user {}: {}", userId, e.getMessage(), e);
             // Ném lỗi lại để RabbitMQ biết mà retry (thử lại)
             throw new RuntimeException("Lỗi hệ thống, cần retry", e);
         }
     }
-
-
-}
\ No newline at end of file
+}
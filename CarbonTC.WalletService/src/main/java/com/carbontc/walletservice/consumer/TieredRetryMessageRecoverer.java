@@ -0,0 +1,187 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Recoverer dùng chung cho mọi listener container (Spring Boot tự gắn vào retry interceptor).
+ * Thay vì sleep trên thread listener, tin lỗi được chuyển sang retry queue có TTL của tầng kế tiếp,
+ * hết tầng (hoặc lỗi NonRetryableMessageException) thì vào parking lot; không rõ queue gốc thì vào
+ * parking lot chung. Chỉ ack tin gốc khi broker đã xác nhận bản chuyển tiếp, nếu không thì requeue
+ * để không mất tin.
+ */
+@Component
+public class TieredRetryMessageRecoverer implements MessageBatchRecoverer {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredRetryMessageRecoverer.class);
+
+    public static final String RETRY_COUNT_HEADER = "x-wallet-retry-count";
+    public static final String ORIGINAL_QUEUE_HEADER = "x-wallet-original-queue";
+    public static final String EXCEPTION_HEADER = "x-wallet-exception";
+
+    private static final int MAX_EXCEPTION_LENGTH = 500;
+    private static final String UNKNOWN_QUEUE = "unknown";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet-config.dead-letter.retry-delays-ms:5000,30000,300000}")
+    private long[] retryDelaysMs;
+
+    @Value("${wallet-config.dead-letter.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    // Số lần gửi lại riêng các tin bị nack/quá hạn confirm trước khi requeue cả batch
+    @Value("${wallet-config.dead-letter.publish-attempts:3}")
+    private int publishAttempts;
+
+    public TieredRetryMessageRecoverer(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        publishConfirmed(List.of(route(message, cause)));
+    }
+
+    /**
+     * Batch lỗi cả cụm: từng tin đi retry riêng, lần sau sẽ nằm trong batch khác.
+     * Gửi cả batch rồi chờ confirm 1 lần; tin bị nack được gửi lại riêng, tin đã được xác nhận
+     * không gửi lại. Chỉ khi vẫn lỗi sau publish-attempts lần mới requeue cả batch
+     * (các tin đã chuyển đi sẽ bị trùng, handler chống trùng theo khoá nghiệp vụ).
+     */
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        List<Routed> routed = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            routed.add(route(message, cause));
+        }
+        publishConfirmed(routed);
+    }
+
+    private Routed route(Message message, Throwable cause) {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = originalQueue(properties);
+        properties.setHeader(EXCEPTION_HEADER, describe(cause));
+        if (queue == null) {
+            log.error("Không xác định được queue gốc của tin lỗi, chuyển vào {}: {}",
+                    RabbitMQConfig.UNKNOWN_QUEUE_PARKING_LOT, cause.getMessage());
+            return new Routed(message, RabbitMQConfig.UNKNOWN_QUEUE_PARKING_LOT, UNKNOWN_QUEUE, "parked");
+        }
+
+        int retries = retryCount(properties);
+        properties.setHeader(ORIGINAL_QUEUE_HEADER, queue);
+        if (isNonRetryable(cause)) {
+            log.error("Tin từ {} không thể thử lại, chuyển thẳng vào parking lot: {}", queue, cause.getMessage());
+            return new Routed(message, RabbitMQConfig.parkingLotQueueName(queue), queue, "parked");
+        }
+        if (retries < retryDelaysMs.length) {
+            properties.setHeader(RETRY_COUNT_HEADER, retries + 1);
+            log.warn("Tin từ {} lỗi lần {}, thử lại sau {} ms: {}", queue, retries + 1, retryDelaysMs[retries], cause.getMessage());
+            return new Routed(message, RabbitMQConfig.retryQueueName(queue, retries + 1), queue, "retry");
+        }
+        log.error("Tin từ {} vẫn lỗi sau {} lần thử lại, chuyển vào parking lot: {}", queue, retries, cause.getMessage());
+        return new Routed(message, RabbitMQConfig.parkingLotQueueName(queue), queue, "parked");
+    }
+
+    private void publishConfirmed(List<Routed> routed) {
+        List<Routed> pending = routed;
+        String failure = null;
+        for (int attempt = 1; attempt <= publishAttempts && !pending.isEmpty(); attempt++) {
+            List<CorrelationData> confirms = new ArrayList<>(pending.size());
+            for (Routed r : pending) {
+                CorrelationData correlation = new CorrelationData();
+                try {
+                    rabbitTemplate.send(RabbitMQConfig.DEAD_LETTER_EXCHANGE, r.target(), r.message(), correlation);
+                    confirms.add(correlation);
+                } catch (AmqpException e) {
+                    failure = "Không gửi được tin sang " + r.target() + ": " + e.getMessage();
+                    confirms.add(null);
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+            List<Routed> failed = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                Routed r = pending.get(i);
+                CorrelationData correlation = confirms.get(i);
+                if (correlation == null) {
+                    failed.add(r);
+                    continue;
+                }
+                try {
+                    long remaining = Math.max(0, deadline - System.nanoTime());
+                    CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+                    if (confirm.isAck()) {
+                        meterRegistry.counter("wallet.messages.recovered", "queue", r.queue(), "outcome", r.outcome()).increment();
+                    } else {
+                        failure = "Broker từ chối tin chuyển sang " + r.target() + ": " + confirm.getReason();
+                        failed.add(r);
+                    }
+                } catch (TimeoutException | ExecutionException e) {
+                    failure = "Không nhận được publisher confirm cho " + r.target();
+                    failed.add(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ImmediateRequeueAmqpException("Bị ngắt khi chờ publisher confirm", e);
+                }
+            }
+            if (!failed.isEmpty()) {
+                log.warn("{}/{} tin chưa được broker xác nhận (lần {}): {}", failed.size(), pending.size(), attempt, failure);
+            }
+            pending = failed;
+        }
+        if (!pending.isEmpty()) {
+            throw new ImmediateRequeueAmqpException(failure);
+        }
+    }
+
+    private static String originalQueue(MessageProperties properties) {
+        Object header = properties.getHeader(ORIGINAL_QUEUE_HEADER);
+        return header != null ? header.toString() : properties.getConsumerQueue();
+    }
+
+    private static int retryCount(MessageProperties properties) {
+        Object header = properties.getHeader(RETRY_COUNT_HEADER);
+        return header instanceof Number number ? number.intValue() : 0;
+    }
+
+    private static boolean isNonRetryable(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof NonRetryableMessageException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(Throwable cause) {
+        Throwable root = cause;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        String text = root.getClass().getSimpleName() + ": " + root.getMessage();
+        return text.length() > MAX_EXCEPTION_LENGTH ? text.substring(0, MAX_EXCEPTION_LENGTH) : text;
+    }
+
+    private record Routed(Message message, String target, String queue, String outcome) {
+    }
+}
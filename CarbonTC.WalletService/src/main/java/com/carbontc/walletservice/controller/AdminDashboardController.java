@@ -1,10 +1,13 @@
 package com.carbontc.walletservice.controller;
 
+import com.carbontc.walletservice.dto.response.CertificateRegenerationResponse;
 import com.carbontc.walletservice.dto.response.SystemOverviewResponse;
 import com.carbontc.walletservice.dto.response.WithdrawRequestResponse;
 import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.payload.ApiResponse;
 import com.carbontc.walletservice.service.AdminDashboardService;
+import com.carbontc.walletservice.service.CertificateRegenerationService;
+import com.carbontc.walletservice.service.DeadLetterService;
 import com.carbontc.walletservice.service.WithdrawRequestService;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +19,7 @@ import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/admin-dashboard")
@@ -25,6 +29,8 @@ public class AdminDashboardController {
 
     private final WithdrawRequestService withdrawRequestService;
     private final AdminDashboardService dashboardService;
+    private final DeadLetterService deadLetterService;
+    private final CertificateRegenerationService certificateRegenerationService;
 
     @Operation(summary = "Admin duyệt chấp nhận rút tiền")
     @PostMapping("/{requestId}/approve")
@@ -63,4 +69,44 @@ public class AdminDashboardController {
         BigDecimal totalFees = dashboardService.getFeeStatistics(startDate, endDate);
         return ResponseEntity.ok(ApiResponse.success("Lấy thống kê phí thành công", totalFees));
     }
+
+    @Operation(summary = "[ADMIN] Số tin nhắn lỗi đang nằm trong parking lot theo từng queue")
+    @GetMapping("/dead-letters")
+    public ResponseEntity<ApiResponse<Map<String, Long>>> getParkedMessages() {
+        Map<String, Long> counts = deadLetterService.getParkedCounts();
+        return ResponseEntity.ok(ApiResponse.success("Lấy số tin trong parking lot thành công", counts));
+    }
+
+    @Operation(summary = "[ADMIN] Đưa tin nhắn trong parking lot về lại queue gốc để xử lý lại")
+    @PostMapping("/dead-letters/{queue}/replay")
+    public ResponseEntity<ApiResponse<Integer>> replayParkedMessages(
+            @PathVariable String queue,
+            @RequestParam(defaultValue = "1000") int limit) throws BusinessException {
+        int replayed = deadLetterService.replayParked(queue, limit);
+        return ResponseEntity.ok(ApiResponse.success("Đã replay " + replayed + " tin nhắn", replayed));
+    }
+
+    @Operation(summary = "[ADMIN] Tạo lại PDF chứng nhận hàng loạt theo khoảng thời gian phát hành hoặc các chứng nhận chưa có file")
+    @PostMapping("/certificates/regenerate")
+    public ResponseEntity<ApiResponse<CertificateRegenerationResponse>> regenerateCertificates(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "false") boolean onlyMissingFile) throws BusinessException {
+        CertificateRegenerationResponse job = certificateRegenerationService.start(startDate, endDate, onlyMissingFile);
+        return ResponseEntity.accepted().body(ApiResponse.success("Đã bắt đầu tạo lại chứng nhận", job));
+    }
+
+    @Operation(summary = "[ADMIN] Tiến độ và tốc độ của đợt tạo lại chứng nhận gần nhất")
+    @GetMapping("/certificates/regenerate")
+    public ResponseEntity<ApiResponse<CertificateRegenerationResponse>> getRegenerationProgress() throws BusinessException {
+        CertificateRegenerationResponse job = certificateRegenerationService.getProgress();
+        return ResponseEntity.ok(ApiResponse.success("Lấy tiến độ tạo lại chứng nhận thành công", job));
+    }
+
+    @Operation(summary = "[ADMIN] Huỷ đợt tạo lại chứng nhận đang chạy")
+    @PostMapping("/certificates/regenerate/cancel")
+    public ResponseEntity<ApiResponse<CertificateRegenerationResponse>> cancelRegeneration() throws BusinessException {
+        CertificateRegenerationResponse job = certificateRegenerationService.cancel();
+        return ResponseEntity.ok(ApiResponse.success("Đã yêu cầu huỷ, đợt tạo lại sẽ dừng sau chunk hiện tại", job));
+    }
 }
@@ -1,21 +1,36 @@
 package com.carbontc.walletservice.controller;
 
 import com.carbontc.walletservice.dto.response.CertificateResponse;
+import com.carbontc.walletservice.dto.response.CertificateVerificationResponse;
 import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.payload.ApiResponse;
+import com.carbontc.walletservice.service.CertificateBundleService;
 import com.carbontc.walletservice.service.CertificateService;
+import com.carbontc.walletservice.service.CertificateVerificationService;
+import com.carbontc.walletservice.util.AuthencationUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize; // Cho phép cả User và Admin
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/certificates")
@@ -23,14 +38,26 @@ import java.io.IOException;
 public class CertificateController {
 
     private final CertificateService certificateService;
+    private final CertificateBundleService certificateBundleService;
+    private final CertificateVerificationService certificateVerificationService;
+    private final AuthencationUtil authencationUtil;
+
+    // File có thể được render lại (đổi mẫu): client giữ bản sao nhưng luôn hỏi lại bằng ETag (304 nếu chưa đổi);
+    // private vì endpoint cần đăng nhập
+    private static final CacheControl CERTIFICATE_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
 
     @Operation(summary = "Tải về file PDF chứng nhận bằng mã hash")
     @GetMapping("/download/{uniqueHash}")
     // Cho phép người dùng đã đăng nhập (bất kỳ ai có cert đó) tải về
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<byte[]> downloadCertificate(@PathVariable String uniqueHash) {
+    public ResponseEntity<Resource> downloadCertificate(@PathVariable String uniqueHash, WebRequest webRequest) {
         try {
-            return certificateService.downloadCertificateByHash(uniqueHash);
+            // ETag (hash nội dung file) và 304 do service xử lý; body là Resource nên Spring tự xử lý Range (206)
+            ResponseEntity<Resource> file = certificateService.downloadCertificateByHash(uniqueHash, webRequest);
+            return ResponseEntity.status(file.getStatusCode())
+                    .headers(file.getHeaders())
+                    .cacheControl(CERTIFICATE_CACHE_CONTROL)
+                    .body(file.getBody());
         } catch (BusinessException e) {
             HttpHeaders headers = new HttpHeaders();
             headers.add("Error-Message", e.getMessage()); // Gửi thông báo lỗi qua header
@@ -48,4 +75,51 @@ public class CertificateController {
             CertificateResponse result = certificateService.getCertificateByTransactionId(transactionId);
             return ResponseEntity.ok(ApiResponse.success("Lấy chứng chỉ thành công", result));
     }
-}
\ No newline at end of file
+
+    @Operation(summary = "Xác minh chứng nhận bằng mã hash (public, không cần đăng nhập)")
+    @GetMapping("/verify/{uniqueHash}")
+    public ResponseEntity<ApiResponse<CertificateVerificationResponse>> verifyCertificate(@PathVariable String uniqueHash) {
+        CertificateVerificationResponse result = certificateVerificationService.verify(uniqueHash);
+        // Kết quả chỉ đổi khi chứng nhận hết hạn: cho phép CDN/proxy giữ lại một lúc
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic())
+                .body(ApiResponse.success("Xác minh chứng nhận thành công", result));
+    }
+
+    @Operation(summary = "Tải tất cả chứng nhận của tôi thành một file ZIP hoặc một file PDF gộp")
+    @GetMapping("/my-bundle")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StreamingResponseBody> downloadMyBundle(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "ZIP") CertificateBundleService.Format format) throws BusinessException {
+        String userId = authencationUtil.getAuthenticatedUserId();
+        return bundle(userId, startDate, endDate, format);
+    }
+
+    @Operation(summary = "[ADMIN] Xuất chứng nhận theo người mua và/hoặc khoảng thời gian thành ZIP hoặc PDF gộp")
+    @GetMapping("/bundle")
+    @PreAuthorize("hasRole('Admin')")
+    public ResponseEntity<StreamingResponseBody> downloadBundle(
+            @RequestParam(required = false) String buyerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "ZIP") CertificateBundleService.Format format) throws BusinessException {
+        return bundle(buyerId, startDate, endDate, format);
+    }
+
+    // Nội dung được ghi thẳng ra response theo từng chứng nhận, không dựng cả gói trong bộ nhớ
+    private ResponseEntity<StreamingResponseBody> bundle(String buyerId, LocalDateTime startDate, LocalDateTime endDate,
+                                                         CertificateBundleService.Format format) throws BusinessException {
+        certificateBundleService.validate(buyerId, startDate, endDate);
+
+        boolean zip = format == CertificateBundleService.Format.ZIP;
+        String fileName = "certificates-" + LocalDate.now() + (zip ? ".zip" : ".pdf");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(zip ? MediaType.parseMediaType("application/zip") : MediaType.APPLICATION_PDF);
+        headers.setContentDisposition(ContentDisposition.attachment().filename(fileName).build());
+
+        StreamingResponseBody body = out -> certificateBundleService.writeBundle(buyerId, startDate, endDate, format, out);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
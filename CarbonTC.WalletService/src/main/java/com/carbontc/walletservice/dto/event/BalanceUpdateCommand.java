@@ -3,9 +3,14 @@ package com.carbontc.walletservice.dto.event;
 import lombok.Data;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 
 @Data
 public class BalanceUpdateCommand {
     private String userId;
     private BigDecimal newTotalBalance;
+    // Version của ví (@Version) tại thời điểm có số dư này, tăng sau mỗi lần ghi.
+    // Consumer bỏ qua command có version <= version đã áp dụng (tin cũ tới sau).
+    private Long version;
+    private OffsetDateTime updatedAt;
 }
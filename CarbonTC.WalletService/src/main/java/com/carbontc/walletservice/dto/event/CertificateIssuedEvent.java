@@ -0,0 +1,20 @@
+package com.carbontc.walletservice.dto.event;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Gửi sau TransactionCompletedEvent khi PDF chứng nhận đã sẵn sàng.
+ */
+@Data
+@Builder
+public class CertificateIssuedEvent {
+    private String transactionId;
+    private Long certificateId;
+    private String certificateHash;
+    private String certificateUrl;
+    private String status; // ISSUED
+    private OffsetDateTime issuedAt;
+}
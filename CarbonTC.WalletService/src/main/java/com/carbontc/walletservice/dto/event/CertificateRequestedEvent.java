@@ -0,0 +1,20 @@
+package com.carbontc.walletservice.dto.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Yêu cầu render PDF chứng nhận (nội bộ Wallet Service).
+ * Ai gửi: TransactionSettlementService (qua outbox)
+ * Ai nhận: worker render chứng nhận
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CertificateRequestedEvent {
+    private Long certificateId;
+    private String transactionId;
+}
@@ -12,6 +12,8 @@ public class TransactionCompletedEvent {
     private String transactionId; // ID giao dịch gốc để Marketplace khớp
     private String status; // Trạng thái (COMPLETED hoặc FAILED)
     private Long certificateId; // ID của chứng chỉ đã tạo
+    private String certificateHash; // Mã xác thực, dùng để tải PDF khi đã sẵn sàng
+    private String certificateStatus; // PENDING: PDF đang render, sẽ có CertificateIssuedEvent sau
     private String message; // Lý do (nếu FAILED)
     private OffsetDateTime completedAt;
 }
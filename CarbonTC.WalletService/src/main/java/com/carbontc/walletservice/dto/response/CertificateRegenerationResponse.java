@@ -0,0 +1,23 @@
+package com.carbontc.walletservice.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class CertificateRegenerationResponse {
+    private String jobId;
+    private String status;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private boolean onlyMissingFile;
+    private long scanned;
+    private long succeeded;
+    private long failed;
+    private Long lastCertificateId;
+    private double certificatesPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,15 @@
+package com.carbontc.walletservice.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class CertificateVerificationResponse {
+    private String certificate_hash;
+    // VALID | EXPIRED | UNKNOWN
+    private String status;
+    private LocalDateTime expiry_date;
+}
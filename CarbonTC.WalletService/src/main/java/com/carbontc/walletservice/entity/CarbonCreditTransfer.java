@@ -16,7 +16,8 @@ import java.time.OffsetDateTime;
 public class CarbonCreditTransfer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "carbon_credit_transfers_seq")
+    @SequenceGenerator(name = "carbon_credit_transfers_seq", sequenceName = "carbon_credit_transfers_seq", allocationSize = 50)
     private Long transferId;
 
     @ManyToOne
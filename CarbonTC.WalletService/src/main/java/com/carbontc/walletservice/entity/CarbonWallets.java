@@ -8,7 +8,10 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "carbon_wallets")
+@Table(name = "carbon_wallets", uniqueConstraints = {
+        // Mỗi user 1 ví Carbon; tạo ví hàng loạt dựa vào key này để bỏ qua user đã có ví
+        @UniqueConstraint(name = "uk_carbon_wallets_owner_id", columnNames = "owner_id")
+})
 @Data
 public class CarbonWallets {
 
@@ -24,6 +27,11 @@ public class CarbonWallets {
 
     private LocalDateTime lastUpdated;
 
+    // Khoá lạc quan: người ghi sau sẽ bị OptimisticLockException thay vì âm thầm ghi đè
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+
     @OneToMany(mappedBy = "fromWallet", cascade = CascadeType.ALL)
     private List<CarbonCreditTransfer>  outgoingTransfers;
 
@@ -1,5 +1,6 @@
 package com.carbontc.walletservice.entity;
 
+import com.carbontc.walletservice.entity.status.CertificateStatus;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -7,12 +8,22 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "certificates")
+@Table(name = "certificates", uniqueConstraints = {
+        // Tra cứu/tải/xác minh chứng nhận đều theo uniqueHash
+        @UniqueConstraint(name = "uk_certificates_unique_hash", columnNames = "unique_hash"),
+        @UniqueConstraint(name = "uk_certificates_certificate_number", columnNames = "certificate_number")
+}, indexes = {
+        // Nạp bổ sung index xác minh theo thời gian phát hành
+        @Index(name = "idx_certificates_issued_at", columnList = "issued_at"),
+        // Xuất gói chứng nhận theo người mua: lọc buyer_id, đọc keyset theo certificate_id
+        @Index(name = "idx_certificates_buyer_id_certificate_id", columnList = "buyer_id, certificate_id")
+})
 @Data
 public class Certificate {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "certificates_seq")
+    @SequenceGenerator(name = "certificates_seq", sequenceName = "certificates_seq", allocationSize = 50)
     private Long certificateId;
 
     private String transactionId;
@@ -23,6 +34,10 @@ public class Certificate {
 
     private String certificateUrl;
 
+    // SHA-256 (hex) của đúng file đang lưu: làm ETag và khoá cache bytes; đổi mỗi lần render lại
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
     private String uniqueHash;
 
     private LocalDateTime issuedAt;
@@ -31,4 +46,12 @@ public class Certificate {
 
     private String certificateNumber;
 
+    // null với các chứng nhận cũ (đã render đồng bộ)
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private CertificateStatus status;
+
+    // Thời điểm nhận render (status RENDERING): replica chết giữa chừng thì quá hạn là nhận lại được
+    private LocalDateTime renderClaimedAt;
+
 }
\ No newline at end of file
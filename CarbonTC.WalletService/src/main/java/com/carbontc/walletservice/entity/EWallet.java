@@ -13,7 +13,10 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "e_wallets")
+@Table(name = "e_wallets", uniqueConstraints = {
+        // Mỗi user 1 ví; tạo ví hàng loạt dựa vào key này để bỏ qua user đã có ví
+        @UniqueConstraint(name = "uk_e_wallets_user_id", columnNames = "user_id")
+})
 @Data
 public class EWallet {
 
@@ -29,6 +32,11 @@ public class EWallet {
 
     private LocalDateTime updatedAt;
 
+    // Khoá lạc quan: người ghi sau sẽ bị OptimisticLockException thay vì âm thầm ghi đè
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+
     @OneToMany(mappedBy = "wallet", cascade = CascadeType.ALL)
     @ToString.Exclude
     private List<Payment> payments;
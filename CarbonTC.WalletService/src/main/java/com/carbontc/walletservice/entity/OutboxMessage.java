@@ -0,0 +1,58 @@
+package com.carbontc.walletservice.entity;
+
+import com.carbontc.walletservice.entity.status.OutboxStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tin nhắn chờ gửi lên RabbitMQ, được ghi cùng transaction với nghiệp vụ.
+ * OutboxRelayScheduler gửi theo batch và chỉ đánh dấu SENT khi broker xác nhận.
+ */
+@Entity
+@Table(name = "outbox_messages", indexes = {
+        @Index(name = "idx_outbox_status_id", columnList = "status, id")
+})
+@Data
+public class OutboxMessage {
+
+    public static final int MAX_ERROR_LENGTH = 255;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_messages_seq")
+    @SequenceGenerator(name = "outbox_messages_seq", sequenceName = "outbox_messages_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String exchange;
+
+    @Column(nullable = false)
+    private String routingKey;
+
+    // Giá trị header __TypeId__ do Jackson2JsonMessageConverter sinh ra
+    private String payloadType;
+
+    // Các tin PENDING cùng key chỉ gửi tin có id lớn nhất, còn lại đánh dấu COALESCED
+    @Column(length = 100)
+    private String coalesceKey;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private OutboxStatus status;
+
+    private int attempts;
+
+    @Column(length = OutboxMessage.MAX_ERROR_LENGTH)
+    private String lastError;
+
+    // Thời điểm relay nhận tin (status SENDING)
+    private LocalDateTime claimedAt;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,28 @@
+package com.carbontc.walletservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Đánh dấu tin nhắn RabbitMQ đã xử lý xong (khoá chính = transactionId),
+ * để tin nhắn bị gửi lại chỉ tốn 1 lần tra theo khoá chính.
+ */
+@Entity
+@Table(name = "processed_events", indexes = {
+        @Index(name = "idx_processed_events_processed_at", columnList = "processed_at")
+})
+@Data
+public class ProcessedEvent {
+
+    @Id
+    @Column(length = 100)
+    private String eventId;
+
+    @Column(nullable = false, length = 50)
+    private String eventType;
+
+    @Column(nullable = false)
+    private LocalDateTime processedAt;
+}
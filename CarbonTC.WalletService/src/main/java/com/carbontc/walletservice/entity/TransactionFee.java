@@ -10,12 +10,17 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transaction_fees")
+@Table(name = "transaction_fees", indexes = {
+        // Lượt rút phí nhận phí bằng UPDATE theo fee_status rồi cộng tổng theo withdrawal_id
+        @Index(name = "idx_transaction_fees_status", columnList = "fee_status"),
+        @Index(name = "idx_transaction_fees_withdrawal_id", columnList = "withdrawal_id")
+})
 @Data
 public class TransactionFee {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_fees_seq")
+    @SequenceGenerator(name = "transaction_fees_seq", sequenceName = "transaction_fees_seq", allocationSize = 50)
     private Long feeId;
 
     private String transactionId;
@@ -32,5 +37,10 @@ public class TransactionFee {
 
     private LocalDateTime calculatedAt;
 
+    // Lượt rút phí đã nhận khoản phí này (null khi còn PENDING_WITHDRAWAL)
+    @Column(name = "withdrawal_id", length = 36)
+    private String withdrawalId;
+
+    private LocalDateTime withdrawnAt;
 
 }
\ No newline at end of file
@@ -11,8 +11,10 @@ import java.time.LocalDateTime;
 @Data
 public class TransactionLog {
 
+    // IDENTITY làm Hibernate tắt batch INSERT; SEQUENCE pooled (trên MySQL là bảng *_seq) cấp id theo khối 50
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_logs_seq")
+    @SequenceGenerator(name = "transaction_logs_seq", sequenceName = "transaction_logs_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,9 @@
+package com.carbontc.walletservice.entity.status;
+
+public enum CertificateStatus {
+    PENDING, // Đã có metadata, PDF đang chờ render
+    DEFERRED, // Chế độ lazy: chỉ có metadata, PDF render ở lần tải đầu tiên
+    RENDERING, // Đã có một luồng (ở replica bất kỳ) nhận render, các luồng khác chờ kết quả
+    ISSUED,  // PDF đã render và lưu xong
+    FAILED   // Render/upload lỗi, cần tạo lại
+}
@@ -0,0 +1,9 @@
+package com.carbontc.walletservice.entity.status;
+
+public enum OutboxStatus {
+    PENDING,  // Chờ relay gửi lên RabbitMQ
+    SENDING,  // Relay đã nhận tin và đang gửi/chờ confirm (quá claim-lease-ms thì relay khác nhận lại)
+    SENT,     // Broker đã xác nhận (publisher confirm)
+    COALESCED, // Không gửi vì đã có tin mới hơn cùng coalesceKey trong outbox
+    PARKED    // Gửi lỗi quá max-attempts lần, relay bỏ qua cho tới khi admin đặt lại PENDING
+}
@@ -1,10 +1,17 @@
 package com.carbontc.walletservice.repository;
 import com.carbontc.walletservice.entity.CarbonWallets;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -16,4 +23,30 @@ public interface CarbonWalletsRepository extends JpaRepository<CarbonWallets, Lo
 
     @Query("SELECT SUM(c.balance) FROM CarbonWallets c")
     BigDecimal getTotalBalance();
+
+    @Query("SELECT c.walletId FROM CarbonWallets c WHERE c.ownerId = :ownerId")
+    Optional<Long> findWalletIdByOwnerId(@Param("ownerId") String ownerId);
+
+    /**
+     * SELECT ... FOR UPDATE theo khoá chính. Khi cần khoá nhiều ví, luôn gọi theo thứ tự walletId tăng dần.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM CarbonWallets c WHERE c.walletId = :walletId")
+    Optional<CarbonWallets> findByIdForUpdate(@Param("walletId") Long walletId);
+
+    /**
+     * Trả về các cặp [walletId, ownerId] của những ví thuộc danh sách owner.
+     */
+    @Query("SELECT c.walletId, c.ownerId FROM CarbonWallets c WHERE c.ownerId IN :ownerIds")
+    List<Object[]> findWalletIdsByOwnerIds(@Param("ownerIds") Collection<String> ownerIds);
+
+    /**
+     * Cộng tín chỉ phát hành (balance và totalEarned) bằng 1 câu UPDATE.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE CarbonWallets c SET c.balance = c.balance + :amount, c.totalEarned = c.totalEarned + :amount, " +
+            "c.lastUpdated = :lastUpdated, c.version = c.version + 1 WHERE c.walletId = :walletId")
+    int addIssuedCredits(@Param("walletId") Long walletId,
+                         @Param("amount") BigDecimal amount,
+                         @Param("lastUpdated") LocalDateTime lastUpdated);
 }
@@ -1,8 +1,16 @@
 package com.carbontc.walletservice.repository;
 import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +19,125 @@ public interface CertificateRepository extends JpaRepository<Certificate, Long>
 
     Optional<Certificate> findByTransactionId(String transactionId);
 
+    /**
+     * Ghi hash nội dung cho chứng nhận cũ (lưu trước khi có cột này) khi file được đọc lần đầu.
+     */
+    @Modifying
+    @Query("UPDATE Certificate c SET c.contentSha256 = :sha WHERE c.certificateId = :id AND c.contentSha256 IS NULL")
+    int backfillContentSha256(@Param("id") Long id, @Param("sha") String sha);
+
+    /**
+     * Nhận quyền render chứng nhận chưa có file bằng 1 câu UPDATE có điều kiện: giữa mọi replica
+     * chỉ 1 lời gọi được trả về 1. Lượt RENDERING cũ hơn staleBefore (replica chết) được nhận lại.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Certificate c SET c.status = com.carbontc.walletservice.entity.status.CertificateStatus.RENDERING, " +
+            "c.renderClaimedAt = :now " +
+            "WHERE c.certificateId = :id AND c.certificateUrl IS NULL " +
+            "AND (c.status IS NULL OR c.status IN :claimable " +
+            "OR (c.status = com.carbontc.walletservice.entity.status.CertificateStatus.RENDERING " +
+            "AND c.renderClaimedAt < :staleBefore))")
+    int claimForRender(@Param("id") Long id,
+                       @Param("claimable") Collection<CertificateStatus> claimable,
+                       @Param("now") LocalDateTime now,
+                       @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Nhận quyền render lại chứng nhận đã có file (tạo lại theo mẫu mới), cùng cơ chế với claimForRender:
+     * dòng đang RENDERING chỉ được nhận lại khi lượt trước đã quá lease.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Certificate c SET c.status = com.carbontc.walletservice.entity.status.CertificateStatus.RENDERING, " +
+            "c.renderClaimedAt = :now " +
+            "WHERE c.certificateId = :id AND c.certificateUrl IS NOT NULL " +
+            "AND (c.status IS NULL " +
+            "OR c.status <> com.carbontc.walletservice.entity.status.CertificateStatus.RENDERING " +
+            "OR c.renderClaimedAt < :staleBefore)")
+    int claimForRerender(@Param("id") Long id,
+                         @Param("now") LocalDateTime now,
+                         @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Kết thúc lượt render lại: chỉ ghi các cột file và trạng thái, không ghi đè các cột khác
+     * bằng entity đã nạp từ trước khi nhận dòng.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Certificate c SET c.status = :status, c.certificateUrl = :url, c.contentSha256 = :sha " +
+            "WHERE c.certificateId = :id " +
+            "AND c.status = com.carbontc.walletservice.entity.status.CertificateStatus.RENDERING")
+    int finishRerender(@Param("id") Long id,
+                       @Param("status") CertificateStatus status,
+                       @Param("url") String url,
+                       @Param("sha") String sha);
+
+    /**
+     * Kết quả render đọc thẳng từ DB (không qua entity đã nạp) khi chờ replica khác render xong.
+     */
+    interface RenderState {
+        CertificateStatus getStatus();
+
+        String getCertificateUrl();
+
+        String getContentSha256();
+    }
+
+    @Query("SELECT c.status AS status, c.certificateUrl AS certificateUrl, c.contentSha256 AS contentSha256 " +
+            "FROM Certificate c WHERE c.certificateId = :id")
+    Optional<RenderState> findRenderStateById(@Param("id") Long id);
+
+    /**
+     * Chỉ các cột cần cho index xác minh chứng nhận trong bộ nhớ.
+     */
+    interface HashIndexEntry {
+        Long getCertificateId();
+
+        String getUniqueHash();
+
+        LocalDateTime getExpiryDate();
+    }
+
+    @Query("SELECT c.certificateId AS certificateId, c.uniqueHash AS uniqueHash, c.expiryDate AS expiryDate " +
+            "FROM Certificate c WHERE c.certificateId > :afterId ORDER BY c.certificateId")
+    List<HashIndexEntry> findHashIndexChunk(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT c.certificateId AS certificateId, c.uniqueHash AS uniqueHash, c.expiryDate AS expiryDate " +
+            "FROM Certificate c WHERE c.issuedAt >= :since AND c.certificateId > :afterId ORDER BY c.certificateId")
+    List<HashIndexEntry> findHashIndexChunkSince(@Param("since") LocalDateTime since,
+                                                 @Param("afterId") Long afterId,
+                                                 Pageable pageable);
+
+    /**
+     * Lấy id theo keyset (certificateId > afterId) cho việc tạo lại hàng loạt: mỗi lần chỉ đọc
+     * một chunk, không OFFSET nên chunk cuối cũng nhanh như chunk đầu.
+     * from/to null nghĩa là không giới hạn; onlyMissingFile chỉ lấy dòng chưa có certificateUrl.
+     */
+    @Query("SELECT c.certificateId FROM Certificate c " +
+            "WHERE c.certificateId > :afterId " +
+            "AND (:from IS NULL OR c.issuedAt >= :from) " +
+            "AND (:to IS NULL OR c.issuedAt < :to) " +
+            "AND (:onlyMissingFile = false OR c.certificateUrl IS NULL) " +
+            "AND (c.status IS NULL OR c.status NOT IN :excludedStatuses) " +
+            "ORDER BY c.certificateId")
+    List<Long> findIdsForRegeneration(@Param("afterId") Long afterId,
+                                      @Param("from") LocalDateTime from,
+                                      @Param("to") LocalDateTime to,
+                                      @Param("onlyMissingFile") boolean onlyMissingFile,
+                                      @Param("excludedStatuses") Collection<CertificateStatus> excludedStatuses,
+                                      Pageable pageable);
+
+    /**
+     * Chunk chứng nhận của một người mua và/hoặc trong khoảng issuedAt [from, to), kể cả dòng
+     * chưa có file (để render bù), đọc theo keyset để xuất gói mà không giữ connection trong lúc stream.
+     */
+    @Query("SELECT c FROM Certificate c " +
+            "WHERE c.certificateId > :afterId " +
+            "AND (:buyerId IS NULL OR c.buyerId = :buyerId) " +
+            "AND (:from IS NULL OR c.issuedAt >= :from) " +
+            "AND (:to IS NULL OR c.issuedAt < :to) " +
+            "ORDER BY c.certificateId")
+    List<Certificate> findBundleChunk(@Param("afterId") Long afterId,
+                                      @Param("buyerId") String buyerId,
+                                      @Param("from") LocalDateTime from,
+                                      @Param("to") LocalDateTime to,
+                                      Pageable pageable);
 }
@@ -1,10 +1,13 @@
 package com.carbontc.walletservice.repository;
 import com.carbontc.walletservice.entity.EWallet;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +18,30 @@ public interface EWalletRepository extends JpaRepository<EWallet, Long> {
 
     @Query("SELECT SUM(c.balance) FROM EWallet c")
     BigDecimal getTotalBalance();
+
+    /**
+     * Trừ tiền nguyên tử bằng 1 câu UPDATE có điều kiện.
+     * Trả về số dòng bị ảnh hưởng: 0 nghĩa là ví không tồn tại hoặc số dư không đủ.
+     * Không clear persistence context (sẽ detach entity khác của người gọi): ví này nếu đã được nạp
+     * thì bản trong bộ nhớ là bản cũ, người gọi cần số dư mới phải refresh (EWalletServiceImpl.reloadWallet).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE EWallet w SET w.balance = w.balance - :amount, w.updatedAt = :updatedAt, " +
+            "w.version = w.version + 1 " +
+            "WHERE w.walletId = :walletId AND w.balance >= :amount")
+    int debitIfSufficient(@Param("walletId") Long walletId,
+                          @Param("amount") BigDecimal amount,
+                          @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Cộng tiền nguyên tử bằng 1 câu UPDATE.
+     * Trả về số dòng bị ảnh hưởng: 0 nghĩa là ví không tồn tại. Như debitIfSufficient, không clear persistence context.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE EWallet w SET w.balance = w.balance + :amount, w.updatedAt = :updatedAt, " +
+            "w.version = w.version + 1 " +
+            "WHERE w.walletId = :walletId")
+    int creditBalance(@Param("walletId") Long walletId,
+                      @Param("amount") BigDecimal amount,
+                      @Param("updatedAt") LocalDateTime updatedAt);
 }
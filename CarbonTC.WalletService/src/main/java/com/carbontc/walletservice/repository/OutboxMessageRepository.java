@@ -0,0 +1,38 @@
+package com.carbontc.walletservice.repository;
+
+import com.carbontc.walletservice.entity.OutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    /**
+     * Lấy 1 batch tin PENDING và khoá lại; SKIP LOCKED để nhiều instance relay song song
+     * không lấy trùng tin của nhau. Tin có coalesce_key chỉ được lấy khi đã nằm đủ lâu
+     * (created_at <= coalesceCutoff) để gom được các cập nhật liên tiếp.
+     */
+    @Query(value = "SELECT * FROM outbox_messages WHERE status = 'PENDING' " +
+            "AND (coalesce_key IS NULL OR created_at <= :coalesceCutoff) " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxMessage> lockPendingBatch(@Param("limit") int limit,
+                                         @Param("coalesceCutoff") LocalDateTime coalesceCutoff);
+
+    /**
+     * Tin SENDING mà relay đã nhận từ trước claimCutoff (relay chết giữa chừng) - nhận lại để gửi tiếp.
+     */
+    @Query(value = "SELECT * FROM outbox_messages WHERE status = 'SENDING' AND claimed_at < :claimCutoff " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxMessage> lockExpiredClaims(@Param("limit") int limit,
+                                          @Param("claimCutoff") LocalDateTime claimCutoff);
+
+    @Modifying
+    @Query(value = "DELETE FROM outbox_messages WHERE status IN ('SENT', 'COALESCED') AND sent_at < :cutoff LIMIT :limit", nativeQuery = true)
+    int deleteSentBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
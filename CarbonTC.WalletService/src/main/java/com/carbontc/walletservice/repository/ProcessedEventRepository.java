@@ -0,0 +1,32 @@
+package com.carbontc.walletservice.repository;
+
+import com.carbontc.walletservice.entity.ProcessedEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface ProcessedEventRepository extends JpaRepository<ProcessedEvent, String> {
+
+    /**
+     * Insert trước, kiểm tra sau: trả về 1 nếu đây là lần đầu, 0 nếu eventId đã tồn tại.
+     * Hai consumer nhận trùng cùng lúc sẽ bị khoá chính chặn lại, chỉ một bên được xử lý.
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO processed_events (event_id, event_type, processed_at) " +
+            "VALUES (:eventId, :eventType, :processedAt)", nativeQuery = true)
+    int markProcessed(@Param("eventId") String eventId,
+                      @Param("eventType") String eventType,
+                      @Param("processedAt") LocalDateTime processedAt);
+
+    long countByEventIdIn(Collection<String> eventIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM processed_events WHERE processed_at < :cutoff LIMIT :limit", nativeQuery = true)
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
@@ -4,6 +4,7 @@ import com.carbontc.walletservice.entity.TransactionFee;
 import com.carbontc.walletservice.entity.status.FeeStatus;
 import com.carbontc.walletservice.entity.status.FeeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -16,6 +17,21 @@ import java.util.List;
 public interface TransactionFeeRepository extends JpaRepository<TransactionFee, Long> {
     List<TransactionFee> findByFeeStatus(FeeStatus status);
 
+    /**
+     * Nhận toàn bộ phí đang chờ rút cho một lượt rút bằng 1 câu UPDATE có điều kiện.
+     * Hai lượt chạy song song (2 replica) không thể cùng nhận một khoản phí: lượt đến sau
+     * chờ khoá dòng rồi thấy fee_status đã đổi nên bỏ qua.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE TransactionFee f SET f.feeStatus = com.carbontc.walletservice.entity.status.FeeStatus.WITHDRAWN, " +
+            "f.withdrawalId = :withdrawalId, f.withdrawnAt = :withdrawnAt " +
+            "WHERE f.feeStatus = com.carbontc.walletservice.entity.status.FeeStatus.PENDING_WITHDRAWAL")
+    int claimPendingFees(@Param("withdrawalId") String withdrawalId,
+                         @Param("withdrawnAt") LocalDateTime withdrawnAt);
+
+    @Query("SELECT COALESCE(SUM(f.amount), 0) FROM TransactionFee f WHERE f.withdrawalId = :withdrawalId")
+    BigDecimal sumByWithdrawalId(@Param("withdrawalId") String withdrawalId);
+
     @Query("SELECT SUM(f.amount) FROM TransactionFee f " +
             "WHERE f.feeType = :feeType " +
             "AND f.calculatedAt BETWEEN :startDate AND :endDate")
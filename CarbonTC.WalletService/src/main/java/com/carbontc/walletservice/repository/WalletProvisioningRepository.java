@@ -0,0 +1,71 @@
+package com.carbontc.walletservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tạo ví hàng loạt bằng INSERT nhiều dòng. Trùng user_id/owner_id (unique key) thì
+ * ON DUPLICATE KEY UPDATE không đổi gì, nên gửi lại cùng user nhiều lần vẫn an toàn.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WalletProvisioningRepository {
+
+    // Giới hạn số dòng mỗi câu INSERT để không vượt max_allowed_packet
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertEWalletsIgnoringExisting(List<String> userIds, String currency, LocalDateTime now) {
+        for (List<String> chunk : chunks(userIds)) {
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO e_wallets (user_id, balance, currency, updated_at, version) VALUES ");
+            List<Object> args = new ArrayList<>(chunk.size() * 4);
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?, 0)" : ", (?, ?, ?, ?, 0)");
+                args.add(chunk.get(i));
+                args.add(BigDecimal.ZERO);
+                args.add(currency);
+                args.add(Timestamp.valueOf(now));
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE user_id = user_id");
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    public void insertCarbonWalletsIgnoringExisting(List<String> ownerIds, LocalDateTime now) {
+        for (List<String> chunk : chunks(ownerIds)) {
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO carbon_wallets (owner_id, balance, total_earned, last_updated, version) VALUES ");
+            List<Object> args = new ArrayList<>(chunk.size() * 4);
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?, 0)" : ", (?, ?, ?, ?, 0)");
+                args.add(chunk.get(i));
+                args.add(BigDecimal.ZERO);
+                args.add(BigDecimal.ZERO);
+                args.add(Timestamp.valueOf(now));
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE owner_id = owner_id");
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    private static List<List<String>> chunks(List<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += MAX_ROWS_PER_STATEMENT) {
+            chunks.add(ids.subList(from, Math.min(ids.size(), from + MAX_ROWS_PER_STATEMENT)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,88 @@
+package com.carbontc.walletservice.scheduler;
+
+import com.carbontc.walletservice.repository.CertificateRepository;
+import com.carbontc.walletservice.util.CertificateHashIndex;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Nạp toàn bộ uniqueHash vào CertificateHashIndex khi khởi động, sau đó định kỳ nạp bổ sung
+ * các chứng nhận mới (kể cả do replica khác tạo) theo issuedAt, lùi lại một khoảng overlap
+ * để không sót transaction commit muộn. Chứng nhận do chính instance này tạo đã được thêm
+ * ngay sau commit.
+ */
+@Component
+@RequiredArgsConstructor
+public class CertificateHashIndexRefresher {
+
+    private static final Logger log = LoggerFactory.getLogger(CertificateHashIndexRefresher.class);
+
+    private final CertificateRepository certificateRepository;
+    private final CertificateHashIndex certificateHashIndex;
+
+    @Value("${wallet-config.certificate.verify.load-chunk-size:10000}")
+    private int chunkSize;
+
+    @Value("${wallet-config.certificate.verify.compact-threshold:50000}")
+    private int compactThreshold;
+
+    @Value("${wallet-config.certificate.verify.refresh-overlap-ms:120000}")
+    private long refreshOverlapMs;
+
+    private volatile LocalDateTime watermark;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long afterId = 0L;
+        long total = 0;
+        List<CertificateRepository.HashIndexEntry> chunk;
+        while (!(chunk = certificateRepository.findHashIndexChunk(afterId, PageRequest.of(0, chunkSize))).isEmpty()) {
+            afterId = addAll(chunk);
+            total += chunk.size();
+        }
+        certificateHashIndex.compact();
+        watermark = startedAt;
+        certificateHashIndex.markLoaded();
+        log.info("Đã nạp {} chứng nhận vào index xác minh trong {} ms", total,
+                Duration.between(startedAt, LocalDateTime.now()).toMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${wallet-config.certificate.verify.refresh-interval-ms:30000}",
+            initialDelayString = "${wallet-config.certificate.verify.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (!certificateHashIndex.isLoaded()) {
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = watermark.minusNanos(refreshOverlapMs * 1_000_000);
+        long afterId = 0L;
+        List<CertificateRepository.HashIndexEntry> chunk;
+        while (!(chunk = certificateRepository.findHashIndexChunkSince(since, afterId, PageRequest.of(0, chunkSize))).isEmpty()) {
+            afterId = addAll(chunk);
+        }
+        // Không compact mỗi lần refresh: entry mới nằm ở recent tới khi đủ compact-threshold (addAll)
+        watermark = startedAt;
+    }
+
+    private long addAll(List<CertificateRepository.HashIndexEntry> chunk) {
+        for (CertificateRepository.HashIndexEntry entry : chunk) {
+            certificateHashIndex.add(entry.getUniqueHash(), entry.getExpiryDate());
+        }
+        if (certificateHashIndex.pendingSize() >= compactThreshold) {
+            certificateHashIndex.compact();
+        }
+        return chunk.get(chunk.size() - 1).getCertificateId();
+    }
+}
@@ -5,12 +5,19 @@ import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 
+/**
+ * Mặc định tắt: chỉ bật (wallet-config.fee-withdrawal.enabled=true) trên một replica.
+ * Nếu lỡ bật ở nhiều nơi, UPDATE nhận phí trong TransactionFeeServiceImpl vẫn đảm bảo
+ * mỗi khoản phí chỉ được rút đúng một lần.
+ */
 @Component
+@ConditionalOnProperty(prefix = "wallet-config.fee-withdrawal", name = "enabled", havingValue = "true")
 @RequiredArgsConstructor
 public class FeeWithdrawalScheduler {
 
@@ -22,9 +29,9 @@ public class FeeWithdrawalScheduler {
     private String ADMIN_USER_ID;
 
     /**
-     * Chạy vào 1 giờ sáng mỗi ngày.
+     * Mặc định chạy vào 1 giờ sáng mỗi ngày.
      */
-    @Scheduled(cron = "0 0 1 * * ?")
+    @Scheduled(cron = "${wallet-config.fee-withdrawal.cron:0 0 1 * * ?}")
     public void processFeeWithdrawal() {
         log.info("--- [SCHEDULER] Bắt đầu chạy tác vụ rút phí hoa hồng ---");
         try {
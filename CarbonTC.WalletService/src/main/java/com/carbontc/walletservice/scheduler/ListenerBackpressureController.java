@@ -0,0 +1,275 @@
+package com.carbontc.walletservice.scheduler;
+
+import com.carbontc.walletservice.config.PartitionListenerConfigurer;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Giảm tải listener của TRANSACTION_QUEUE/CREDIT_QUEUE khi pool Hikari bị bão hoà,
+ * để các API người dùng (getMyWallet...) vẫn còn connection.
+ * 3 mức: NORMAL -> THROTTLED (1 consumer, prefetch nhỏ) -> PAUSED (dừng container).
+ * Tăng mức ngay khi thấy áp lực, chỉ hạ từng mức sau vài lần đo liên tiếp pool rảnh.
+ * Chỉ đụng vào container đang chạy (listener của chế độ đang tắt thì bỏ qua).
+ * Chạy trên thread riêng, không dùng scheduler chung của @Scheduled: đúng lúc pool bão hoà thì
+ * outbox relay/job dọn dẹp đang chờ connection và sẽ chặn scheduler chung.
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet-config.backpressure", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ListenerBackpressureController implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerBackpressureController.class);
+
+    private static final int NORMAL = 0;
+    private static final int THROTTLED = 1;
+    private static final int PAUSED = 2;
+
+    // Listener của TRANSACTION_QUEUE/CREDIT_QUEUE ở các chế độ đơn lẻ/batch/partition;
+    // ở chế độ partition còn có partitionListener-{i} (đọc từ registry vì số partition lấy từ cấu hình)
+    private static final List<String> MANAGED_LISTENERS = List.of(
+            "transactionListener", "transactionBatchListener", "transactionRouter",
+            "creditListener", "creditBatchListener", "creditRouter");
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final DataSource dataSource;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger level = new AtomicInteger(NORMAL);
+    private final Map<String, Baseline> baselines = new HashMap<>();
+    private final Set<String> pausedByController = new HashSet<>();
+    private ScheduledExecutorService executor;
+    private int calmChecks;
+    private long lastAcquireCount;
+    private double lastAcquireTotalMs;
+
+    @Value("${wallet-config.backpressure.interval-ms:1000}")
+    private long intervalMs;
+
+    @Value("${wallet-config.backpressure.reserved-connections:3}")
+    private int reservedConnections;
+
+    @Value("${wallet-config.backpressure.acquire-throttle-ms:50}")
+    private double acquireThrottleMs;
+
+    @Value("${wallet-config.backpressure.acquire-pause-ms:500}")
+    private double acquirePauseMs;
+
+    @Value("${wallet-config.backpressure.pause-awaiting-threads:5}")
+    private int pauseAwaitingThreads;
+
+    @Value("${wallet-config.backpressure.throttled-prefetch:5}")
+    private int throttledPrefetch;
+
+    @Value("${wallet-config.backpressure.recovery-checks:5}")
+    private int recoveryChecks;
+
+    @Value("${spring.rabbitmq.listener.simple.prefetch:250}")
+    private int normalPrefetch;
+
+    public ListenerBackpressureController(RabbitListenerEndpointRegistry listenerRegistry, DataSource dataSource,
+                                          MeterRegistry meterRegistry) {
+        this.listenerRegistry = listenerRegistry;
+        this.dataSource = dataSource;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("wallet.listener.backpressure.level", level);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "listener-backpressure");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::evaluateSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    // Ngoại lệ lọt ra ngoài sẽ làm ScheduledExecutorService huỷ lịch chạy
+    private void evaluateSafely() {
+        try {
+            evaluate();
+        } catch (RuntimeException e) {
+            log.error("Backpressure listener: lỗi khi đánh giá pool: {}", e.getMessage(), e);
+        }
+    }
+
+    void evaluate() {
+        HikariPoolMXBean pool = poolMXBean();
+        if (pool == null) {
+            return; // Pool chưa khởi tạo
+        }
+
+        int active = pool.getActiveConnections();
+        int total = Math.max(pool.getTotalConnections(), 1);
+        int awaiting = pool.getThreadsAwaitingConnection();
+        double acquireMs = recentAcquireMillis();
+        int maxPoolSize = maxPoolSize(total);
+
+        int wanted;
+        if (awaiting >= pauseAwaitingThreads || acquireMs >= acquirePauseMs) {
+            wanted = PAUSED;
+        } else if (awaiting > 0 || acquireMs >= acquireThrottleMs || active >= maxPoolSize - reservedConnections) {
+            wanted = Math.max(level.get(), THROTTLED);
+        } else {
+            wanted = NORMAL;
+        }
+
+        int current = level.get();
+        if (wanted > current) {
+            calmChecks = 0;
+            apply(wanted, active, maxPoolSize, awaiting, acquireMs);
+        } else if (wanted < current) {
+            // Hạ từng mức một, sau khi pool rảnh đủ lâu
+            if (++calmChecks >= recoveryChecks) {
+                calmChecks = 0;
+                apply(current - 1, active, maxPoolSize, awaiting, acquireMs);
+            }
+        } else {
+            calmChecks = 0;
+        }
+    }
+
+    private void apply(int newLevel, int active, int maxPoolSize, int awaiting, double acquireMs) {
+        int oldLevel = level.getAndSet(newLevel);
+        log.warn("Backpressure listener: mức {} -> {} (active {}/{}, chờ {}, acquire {} ms)",
+                oldLevel, newLevel, active, maxPoolSize, awaiting, String.format("%.1f", acquireMs));
+
+        for (String id : managedListenerIds()) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (!(container instanceof SimpleMessageListenerContainer simple)) {
+                continue;
+            }
+            if (!simple.isRunning() && !pausedByController.contains(id)) {
+                continue; // Listener của chế độ không dùng
+            }
+
+            if (newLevel == PAUSED) {
+                if (simple.isRunning()) {
+                    rememberBaseline(id, simple, oldLevel);
+                    pausedByController.add(id);
+                    // stop bất đồng bộ: chờ các tin đang xử lý xong mà không chặn scheduler
+                    simple.stop(() -> log.info("Đã tạm dừng listener {}", id));
+                }
+                continue;
+            }
+
+            if (newLevel == THROTTLED) {
+                rememberBaseline(id, simple, oldLevel);
+                simple.setConcurrentConsumers(1);
+                if (!simple.isConsumerBatchEnabled()) {
+                    // Batch listener cần prefetch >= batch size nên giữ nguyên
+                    simple.setPrefetchCount(throttledPrefetch);
+                }
+            } else {
+                // Trả đúng cấu hình riêng của từng container (vd. partition listener prefetch 20, không phải 250)
+                Baseline baseline = baselines.getOrDefault(id, new Baseline(1, normalPrefetch));
+                simple.setConcurrentConsumers(baseline.consumers());
+                if (!simple.isConsumerBatchEnabled()) {
+                    simple.setPrefetchCount(baseline.prefetch());
+                }
+            }
+            if (pausedByController.remove(id)) {
+                simple.start();
+                log.info("Chạy lại listener {}", id);
+            }
+        }
+    }
+
+    private List<String> managedListenerIds() {
+        List<String> ids = new ArrayList<>(MANAGED_LISTENERS);
+        listenerRegistry.getListenerContainerIds().stream()
+                .filter(id -> id.startsWith(PartitionListenerConfigurer.LISTENER_ID_PREFIX))
+                .sorted()
+                .forEach(ids::add);
+        return ids;
+    }
+
+    // Số consumer và prefetch lúc bình thường, ghi lại khi rời mức NORMAL để khôi phục sau này
+    private void rememberBaseline(String id, SimpleMessageListenerContainer container, int oldLevel) {
+        if (oldLevel == NORMAL) {
+            baselines.put(id, new Baseline(Math.max(1, container.getActiveConsumerCount()), prefetchOf(container)));
+        }
+    }
+
+    // getPrefetchCount() của container là protected
+    private int prefetchOf(SimpleMessageListenerContainer container) {
+        Object prefetch = new DirectFieldAccessor(container).getPropertyValue("prefetchCount");
+        return prefetch instanceof Integer value && value > 0 ? value : normalPrefetch;
+    }
+
+    // Thời gian chờ lấy connection trung bình kể từ lần đo trước (metric hikaricp.connections.acquire)
+    private double recentAcquireMillis() {
+        Timer timer = meterRegistry.find("hikaricp.connections.acquire").timer();
+        if (timer == null) {
+            return 0;
+        }
+        long count = timer.count();
+        double totalMs = timer.totalTime(TimeUnit.MILLISECONDS);
+        long deltaCount = count - lastAcquireCount;
+        double deltaMs = totalMs - lastAcquireTotalMs;
+        lastAcquireCount = count;
+        lastAcquireTotalMs = totalMs;
+        return deltaCount > 0 ? deltaMs / deltaCount : 0;
+    }
+
+    private int maxPoolSize(int fallback) {
+        HikariDataSource hikari = hikariDataSource();
+        return hikari != null ? hikari.getMaximumPoolSize() : fallback;
+    }
+
+    private HikariPoolMXBean poolMXBean() {
+        HikariDataSource hikari = hikariDataSource();
+        return hikari != null ? hikari.getHikariPoolMXBean() : null;
+    }
+
+    private HikariDataSource hikariDataSource() {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private record Baseline(int consumers, int prefetch) {
+    }
+}
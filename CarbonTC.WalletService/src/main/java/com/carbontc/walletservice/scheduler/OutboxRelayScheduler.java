@@ -0,0 +1,54 @@
+package com.carbontc.walletservice.scheduler;
+
+import com.carbontc.walletservice.service.OutboxService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class OutboxRelayScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelayScheduler.class);
+
+    private final OutboxService outboxService;
+
+    @Value("${wallet-config.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${wallet-config.outbox.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+
+    /**
+     * Quét outbox liên tục; khi còn tồn nhiều thì gửi liền nhiều batch trong 1 lượt.
+     */
+    @Scheduled(fixedDelayString = "${wallet-config.outbox.poll-interval-ms:200}")
+    public void relayPendingMessages() {
+        try {
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                if (outboxService.relayBatch() < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("--- [SCHEDULER] Lỗi khi gửi tin nhắn outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Chạy 4 giờ sáng mỗi ngày, xoá các tin đã gửi quá hạn lưu.
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void purgeSentMessages() {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = outboxService.purgeSentMessages();
+            total += deleted;
+        } while (deleted > 0);
+        log.info("--- [SCHEDULER] Đã xoá {} tin outbox đã gửi ---", total);
+    }
+}
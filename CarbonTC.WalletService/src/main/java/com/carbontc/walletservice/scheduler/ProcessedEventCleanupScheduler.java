@@ -0,0 +1,49 @@
+package com.carbontc.walletservice.scheduler;
+
+import com.carbontc.walletservice.repository.ProcessedEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+@Component
+@RequiredArgsConstructor
+public class ProcessedEventCleanupScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessedEventCleanupScheduler.class);
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${wallet-config.processed-event.ttl-days:7}")
+    private int ttlDays;
+
+    @Value("${wallet-config.processed-event.purge-chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * Chạy 3 giờ sáng mỗi ngày, xoá dấu "đã xử lý" cũ hơn TTL.
+     * Xoá theo từng khối nhỏ (mỗi khối 1 transaction) để không khoá bảng lâu.
+     */
+    @Scheduled(cron = "${wallet-config.processed-event.purge-cron:0 0 3 * * ?}")
+    public void purgeExpiredEvents() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(ttlDays);
+        log.info("--- [SCHEDULER] Bắt đầu dọn processed_events trước {} ---", cutoff);
+
+        int total = 0;
+        int deleted;
+        do {
+            Integer result = transactionTemplate.execute(status ->
+                    processedEventRepository.deleteOlderThan(cutoff, chunkSize));
+            deleted = result != null ? result : 0;
+            total += deleted;
+        } while (deleted >= chunkSize);
+
+        log.info("--- [SCHEDULER] Đã xoá {} processed_events quá hạn ---", total);
+    }
+}
@@ -0,0 +1,13 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.entity.EWallet;
+
+public interface BalanceUpdatePublisher {
+
+    /**
+     * Ghi BalanceUpdateCommand với số dư hiện tại của ví vào outbox (transaction hiện tại).
+     * Nhiều command của cùng 1 user trong 1 cửa sổ ngắn được gộp lại, chỉ gửi cái mới nhất.
+     * Ví phải đã được flush để version là giá trị sau khi ghi.
+     */
+    void publish(EWallet wallet);
+}
@@ -15,6 +15,13 @@ public interface CarbonWalletsService {
     CarbonWalletResponse createCarbonWallet(String userId) throws BusinessException;
     CarbonWalletResponse getCarbonWalletByUserId(String userId) throws BusinessException;
     void issueNewCredits(CreditIssuedEvent event) throws BusinessException;
+
+    /**
+     * Phát hành tín chỉ cho nhiều event cùng lúc: cộng dồn theo owner, mỗi ví 1 câu UPDATE,
+     * vẫn ghi đủ 1 dòng ISSUE cho mỗi event.
+     * @return các event không tìm thấy ví Carbon của owner (không được xử lý).
+     */
+    List<CreditIssuedEvent> issueNewCreditsBatch(List<CreditIssuedEvent> events) throws BusinessException;
     CarbonWallets findWalletByOwnerId(String userId) throws BusinessException ;
     CreditTransferResponse transferCredits(String fromUserId, CreditTransferRequestForConsumer request) throws BusinessException;
     List<TransactionHistoryDto> getTransactionHistory(String currentUserId);
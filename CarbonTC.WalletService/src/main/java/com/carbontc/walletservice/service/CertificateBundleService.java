@@ -0,0 +1,26 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.exception.BusinessException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+
+public interface CertificateBundleService {
+
+    enum Format { ZIP, PDF }
+
+    /**
+     * Kiểm tra điều kiện lọc trước khi bắt đầu stream (sau khi đã gửi header thì không báo lỗi được nữa).
+     */
+    void validate(String buyerId, LocalDateTime from, LocalDateTime to) throws BusinessException;
+
+    /**
+     * Ghi lần lượt các chứng nhận khớp điều kiện ra output dưới dạng ZIP hoặc một file PDF gộp.
+     * Mỗi file được đọc từ storage và ghi ngay, bộ nhớ không phụ thuộc số lượng chứng nhận.
+     * Chứng nhận chưa có file được render trước khi ghi; chứng nhận vẫn thiếu file được liệt kê
+     * trong MISSING.txt của gói ZIP.
+     * @return số chứng nhận đã ghi.
+     */
+    int writeBundle(String buyerId, LocalDateTime from, LocalDateTime to, Format format, OutputStream out) throws IOException;
+}
@@ -0,0 +1,27 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.dto.response.CertificateRegenerationResponse;
+import com.carbontc.walletservice.exception.BusinessException;
+
+import java.time.LocalDateTime;
+
+public interface CertificateRegenerationService {
+
+    /**
+     * Bắt đầu tạo lại chứng nhận hàng loạt theo khoảng issuedAt [from, to) và/hoặc chỉ các
+     * chứng nhận chưa có file. Chạy nền, mỗi lúc chỉ một đợt.
+     * @throws BusinessException Nếu đang có đợt khác chạy hoặc khoảng thời gian không hợp lệ.
+     */
+    CertificateRegenerationResponse start(LocalDateTime from, LocalDateTime to, boolean onlyMissingFile) throws BusinessException;
+
+    /**
+     * Tiến độ của đợt gần nhất.
+     * @throws BusinessException Nếu chưa có đợt nào.
+     */
+    CertificateRegenerationResponse getProgress() throws BusinessException;
+
+    /**
+     * Dừng đợt đang chạy sau khi xong chunk hiện tại.
+     */
+    CertificateRegenerationResponse cancel() throws BusinessException;
+}
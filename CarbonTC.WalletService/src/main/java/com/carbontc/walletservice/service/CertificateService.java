@@ -3,21 +3,45 @@ package com.carbontc.walletservice.service;
 import com.carbontc.walletservice.dto.response.CertificateResponse;
 import com.carbontc.walletservice.entity.Certificate;
 import com.carbontc.walletservice.exception.BusinessException;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 
 public interface CertificateService {
-    Certificate createCertificate(String transactionId, String buyerUserId, BigDecimal creditAmount);
+    /**
+     * Chỉ ghi metadata chứng nhận (trạng thái PENDING) trong transaction hiện tại và xếp
+     * yêu cầu render vào outbox. PDF được worker tạo sau khi giao dịch đã commit.
+     * Idempotent theo transactionId.
+     */
+    Certificate requestCertificate(String transactionId, String buyerUserId, BigDecimal creditAmount);
+
+    /**
+     * Render + upload PDF cho chứng nhận PENDING/FAILED, chạy ngoài transaction DB;
+     * chỉ bước cập nhật trạng thái cuối cùng mới mở transaction ngắn.
+     * Phải nhận được dòng (chuyển sang RENDERING) mới render; không nhận được thì trả về
+     * chứng nhận như đang có (đã có file, hoặc status RENDERING do nơi khác đang render).
+     */
+    Certificate renderCertificate(Long certificateId) throws BusinessException;
+
+    /**
+     * Render lại PDF theo mẫu hiện tại, kể cả khi chứng nhận đã có file (dùng cho tạo lại hàng loạt).
+     * @return true nếu file mới đã được lưu.
+     */
+    boolean regenerateCertificate(Long certificateId) throws BusinessException;
 
     /**
      * THÊM HÀM MỚI: Tải file chứng nhận dựa trên mã hash.
+     * ETag là SHA-256 của file đang lưu; client gửi If-None-Match khớp thì trả 304 mà không đọc storage.
      * @param uniqueHash Mã hash duy nhất của chứng nhận.
-     * @return ResponseEntity chứa byte[] của file PDF và các header cần thiết.
-     * @throws BusinessException Nếu không tìm thấy chứng nhận hoặc lỗi tải file.
+     * @param webRequest Request hiện tại (để so If-None-Match).
+     * @return ResponseEntity chứa Resource (stream) của file PDF và các header cần thiết (gồm ETag).
+     * @throws BusinessException Nếu không tìm thấy chứng nhận hoặc chưa có file.
+     * @throws IOException Nếu không mở được file trong storage.
      */
-    ResponseEntity<byte[]> downloadCertificateByHash(String uniqueHash) throws BusinessException, IOException;
+    ResponseEntity<Resource> downloadCertificateByHash(String uniqueHash, WebRequest webRequest) throws BusinessException, IOException;
 
     CertificateResponse getCertificateByTransactionId(String transactionId) throws BusinessException;
 }
\ No newline at end of file
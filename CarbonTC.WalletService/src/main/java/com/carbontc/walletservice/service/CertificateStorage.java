@@ -0,0 +1,25 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.entity.Certificate;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+
+/**
+ * Nơi lưu file PDF chứng nhận. Backend chọn bằng wallet-config.certificate.storage
+ * (local | cloudinary); file được định danh theo uniqueHash nên ghi lại là idempotent.
+ */
+public interface CertificateStorage {
+
+    /**
+     * Lưu PDF và trả về URL để ghi vào certificateUrl.
+     */
+    String store(String uniqueHash, byte[] pdfBytes) throws IOException;
+
+    /**
+     * Mở file của chứng nhận dưới dạng Resource để stream thẳng ra response,
+     * không nạp cả file vào heap.
+     * @throws IOException Nếu file không tồn tại hoặc không đọc được.
+     */
+    Resource load(Certificate certificate) throws IOException;
+}
@@ -0,0 +1,12 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.dto.response.CertificateVerificationResponse;
+
+public interface CertificateVerificationService {
+
+    /**
+     * Xác minh chứng nhận theo uniqueHash: VALID, EXPIRED hoặc UNKNOWN.
+     * Trả lời từ index trong bộ nhớ; chỉ hỏi DB khi index chưa nạp xong lúc khởi động.
+     */
+    CertificateVerificationResponse verify(String uniqueHash);
+}
@@ -4,4 +4,10 @@ import java.io.IOException;
 
 public interface CloudinaryService {
     public String uploadPdf(byte[] pdfBytes, String publicId) throws IOException;
+
+    /**
+     * Tải file đã upload (có timeout kết nối/đọc của RestTemplate chung).
+     * @throws IOException Nếu không tải được, để lỗi lộ ra ngay trong service thay vì lúc ghi response.
+     */
+    public byte[] downloadPdf(String url) throws IOException;
 }
@@ -0,0 +1,19 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.exception.BusinessException;
+
+import java.util.Map;
+
+public interface DeadLetterService {
+
+    /**
+     * Số tin đang nằm trong parking lot của từng queue, "unknown" là tin không rõ queue gốc.
+     */
+    Map<String, Long> getParkedCounts();
+
+    /**
+     * Đưa tối đa limit tin từ parking lot về lại queue gốc (đếm retry lại từ đầu).
+     * @return số tin đã replay.
+     */
+    int replayParked(String queue, int limit) throws BusinessException;
+}
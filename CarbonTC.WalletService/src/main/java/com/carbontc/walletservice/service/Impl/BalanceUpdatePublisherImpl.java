@@ -0,0 +1,34 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.BalanceUpdateCommand;
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
+import com.carbontc.walletservice.service.OutboxService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+
+@Service
+@RequiredArgsConstructor
+public class BalanceUpdatePublisherImpl implements BalanceUpdatePublisher {
+
+    private final OutboxService outboxService;
+
+    @Override
+    public void publish(EWallet wallet) {
+        BalanceUpdateCommand command = new BalanceUpdateCommand();
+        command.setUserId(wallet.getUserId());
+        command.setNewTotalBalance(wallet.getBalance()); // Gửi số dư MỚI NHẤT
+        command.setVersion(wallet.getVersion());
+        command.setUpdatedAt(OffsetDateTime.now());
+
+        outboxService.enqueueCoalesced(
+                RabbitMQConfig.BALANCE_EXCHANGE,
+                RabbitMQConfig.BALANCE_UPDATE_ROUTING_KEY,
+                "balance:" + wallet.getUserId(),
+                command
+        );
+    }
+}
@@ -12,27 +12,47 @@ import com.carbontc.walletservice.entity.status.TransferType;
 import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.repository.CarbonCreditTransferRepository;
 import com.carbontc.walletservice.repository.CarbonWalletsRepository;
+import com.carbontc.walletservice.repository.ProcessedEventRepository;
 import com.carbontc.walletservice.service.CarbonWalletsService;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 @Service
 @RequiredArgsConstructor
 public class CarbonWalletsServiceImpl implements CarbonWalletsService {
 
+   private static final Logger logger = LoggerFactory.getLogger(CarbonWalletsServiceImpl.class);
+
+   private static final String CREDIT_ISSUED_EVENT_TYPE = "CREDIT_ISSUED";
+
    private final ModelMapper modelMapper;
 
    private final CarbonWalletsRepository carbonWalletsRepository;
 
    private final CarbonCreditTransferRepository carbonCreditTransferRepository;
 
+   private final TransactionRetryExecutor transactionRetryExecutor;
+
+   private final ProcessedEventRepository processedEventRepository;
+
     @Override
     public CarbonWalletResponse createCarbonWallet(String userId) throws BusinessException {
         if(carbonWalletsRepository.existsByOwnerId(userId)){
@@ -66,9 +86,21 @@ public class CarbonWalletsServiceImpl implements CarbonWalletsService {
     }
 
     @Override
-    @Transactional(rollbackFor = BusinessException.class)
     public void issueNewCredits(CreditIssuedEvent event) throws BusinessException {
+        // Đọc - cộng - ghi có @Version: nếu bị ghi đè giữa chừng thì executor đọc lại và cộng lại
+        transactionRetryExecutor.execute("issueNewCredits", () -> {
+            doIssueNewCredits(event);
+            return null;
+        });
+    }
+
+    private void doIssueNewCredits(CreditIssuedEvent event) throws BusinessException {
         CarbonWallets wallets = findWalletByOwnerId(event.getOwnerUserId());
+        // Đánh dấu sau khi chắc có ví: event thiếu ví đi retry và lần sau vẫn được cộng
+        if (!markCreditProcessed(event)) {
+            logger.warn("CreditIssuedEvent {} đã được xử lý trước đó. Bỏ qua (Idempotent).", event.getReferenceId());
+            return;
+        }
 
         wallets.setBalance(wallets.getBalance().add(event.getCreditAmount()));
         wallets.setTotalEarned(wallets.getTotalEarned().add(event.getCreditAmount()));
@@ -91,15 +123,89 @@ public class CarbonWalletsServiceImpl implements CarbonWalletsService {
     }
 
     @Override
-    @Transactional(rollbackFor = BusinessException.class)
+    public List<CreditIssuedEvent> issueNewCreditsBatch(List<CreditIssuedEvent> events) throws BusinessException {
+        return transactionRetryExecutor.execute("issueNewCreditsBatch", () -> doIssueNewCreditsBatch(events));
+    }
+
+    private List<CreditIssuedEvent> doIssueNewCreditsBatch(List<CreditIssuedEvent> events) {
+        Set<String> ownerIds = new HashSet<>();
+        for (CreditIssuedEvent event : events) {
+            ownerIds.add(event.getOwnerUserId());
+        }
+
+        Map<String, Long> walletIdByOwner = new HashMap<>();
+        for (Object[] row : carbonWalletsRepository.findWalletIdsByOwnerIds(ownerIds)) {
+            walletIdByOwner.put((String) row[1], (Long) row[0]);
+        }
+
+        // Cộng dồn số tín chỉ theo ví, theo thứ tự walletId tăng dần để 2 batch song song không deadlock.
+        // Event đã xử lý (redelivery, hoặc trùng ngay trong batch) bị bỏ qua, event thiếu ví trả về để đi retry.
+        Map<Long, BigDecimal> amountByWallet = new TreeMap<>();
+        List<CreditIssuedEvent> missingWallet = new ArrayList<>();
+        List<CarbonCreditTransfer> logs = new ArrayList<>(events.size());
+        for (CreditIssuedEvent event : events) {
+            Long walletId = walletIdByOwner.get(event.getOwnerUserId());
+            if (walletId == null) {
+                missingWallet.add(event);
+                continue;
+            }
+            if (!markCreditProcessed(event)) {
+                logger.warn("CreditIssuedEvent {} đã được xử lý trước đó. Bỏ qua (Idempotent).", event.getReferenceId());
+                continue;
+            }
+            amountByWallet.merge(walletId, event.getCreditAmount(), BigDecimal::add);
+
+            //LOG GIAO DỊCH - vẫn 1 dòng cho mỗi event, insert theo batch
+            CarbonCreditTransfer log = new CarbonCreditTransfer();
+            log.setFromWallet(null);
+            log.setToWallet(carbonWalletsRepository.getReferenceById(walletId));
+            log.setAmount(event.getCreditAmount());
+            log.setTransferType(TransferType.ISSUE);
+            log.setReferenceId(event.getReferenceId());
+            log.setCreatedAt(event.getIssuedAt());
+            log.setTotalPrice(BigDecimal.ZERO);
+            log.setStatus(TransferStatus.COMPLETED);
+            logs.add(log);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        amountByWallet.forEach((walletId, amount) -> carbonWalletsRepository.addIssuedCredits(walletId, amount, now));
+        carbonCreditTransferRepository.saveAll(logs);
+
+        return missingWallet;
+    }
+
+    /**
+     * Ghi referenceId vào processed_events trong cùng transaction cộng tín chỉ (như TransactionSettlementServiceImpl):
+     * trả về false nếu event đã được cộng trước đó. Event không có referenceId thì không chống trùng được.
+     */
+    private boolean markCreditProcessed(CreditIssuedEvent event) {
+        if (event.getReferenceId() == null) {
+            logger.warn("CreditIssuedEvent cho user {} không có referenceId, không chống trùng được", event.getOwnerUserId());
+            return true;
+        }
+        return processedEventRepository.markProcessed(CREDIT_ISSUED_EVENT_TYPE + ":" + event.getReferenceId(),
+                CREDIT_ISSUED_EVENT_TYPE, LocalDateTime.now()) > 0;
+    }
+
+    @Override
     public CreditTransferResponse transferCredits(String fromUserId, CreditTransferRequestForConsumer request) throws BusinessException {
+        return transactionRetryExecutor.execute("transferCredits", () -> doTransferCredits(fromUserId, request));
+    }
 
-        CarbonWallets senderWallet = carbonWalletsRepository.findByOwnerId(fromUserId)
+    private CreditTransferResponse doTransferCredits(String fromUserId, CreditTransferRequestForConsumer request) throws BusinessException {
+
+        Long senderWalletId = carbonWalletsRepository.findWalletIdByOwnerId(fromUserId)
                 .orElseThrow(() -> new BusinessException("Không tìm thấy ví người gửi."));
 
-        CarbonWallets receiverWallet = carbonWalletsRepository.findByOwnerId(request.getToUserId())
+        Long receiverWalletId = carbonWalletsRepository.findWalletIdByOwnerId(request.getToUserId())
                 .orElseThrow(() -> new BusinessException("Không tìm thấy ví người nhận."));
 
+        // Khoá 2 ví theo thứ tự walletId tăng dần: A->B và B->A chạy song song sẽ chờ nhau thay vì deadlock
+        Map<Long, CarbonWallets> locked = lockWalletsInOrder(senderWalletId, receiverWalletId);
+        CarbonWallets senderWallet = locked.get(senderWalletId);
+        CarbonWallets receiverWallet = locked.get(receiverWalletId);
+
         if (senderWallet.getBalance().compareTo(request.getAmount()) < 0) {
             throw new BusinessException("Số dư tín chỉ không đủ giao dịch.");
         }
@@ -165,6 +271,16 @@ public class CarbonWalletsServiceImpl implements CarbonWalletsService {
         }).toList();
     }
 
+    private Map<Long, CarbonWallets> lockWalletsInOrder(Long... walletIds) throws BusinessException {
+        Map<Long, CarbonWallets> locked = new TreeMap<>();
+        for (Long walletId : new TreeSet<>(Arrays.asList(walletIds))) {
+            CarbonWallets wallet = carbonWalletsRepository.findByIdForUpdate(walletId)
+                    .orElseThrow(() -> new BusinessException("Không tìm thấy ví Carbon: " + walletId));
+            locked.put(walletId, wallet);
+        }
+        return locked;
+    }
+
     // HELPER METHOD MAP
     private CarbonWalletResponse mapToWalletResponse(CarbonWallets carbonWallet) {
         return modelMapper.map(carbonWallet, CarbonWalletResponse.class);
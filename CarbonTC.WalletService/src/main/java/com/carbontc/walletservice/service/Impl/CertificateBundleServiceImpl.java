@@ -0,0 +1,217 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.CertificateRepository;
+import com.carbontc.walletservice.service.CertificateBundleService;
+import com.carbontc.walletservice.service.CertificateService;
+import com.carbontc.walletservice.service.CertificateStorage;
+import com.carbontc.walletservice.util.CertificateCache;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.utils.PdfMerger;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Service
+@RequiredArgsConstructor
+public class CertificateBundleServiceImpl implements CertificateBundleService {
+
+    private static final Logger log = LoggerFactory.getLogger(CertificateBundleServiceImpl.class);
+
+    // Tên file trong ZIP liệt kê các chứng nhận không đưa được vào gói
+    static final String MISSING_MANIFEST = "MISSING.txt";
+    // Manifest chỉ liệt kê chừng này dòng, phần còn lại chỉ ghi số lượng
+    private static final int MAX_MISSING_LISTED = 1000;
+
+    private final CertificateRepository certificateRepository;
+    private final CertificateService certificateService;
+    private final CertificateStorage certificateStorage;
+    private final CertificateCache certificateCache;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet-config.certificate.bundle.chunk-size:100}")
+    private int chunkSize;
+
+    @FunctionalInterface
+    private interface EntryWriter {
+        void write(Certificate certificate, InputStream pdf) throws IOException;
+    }
+
+    // Chứng nhận không có trong gói: số lượng đầy đủ, danh sách chỉ giữ MAX_MISSING_LISTED dòng đầu
+    private static final class MissingFiles {
+        final List<String> listed = new ArrayList<>();
+        int count;
+
+        void add(Certificate cert, String reason) {
+            log.warn("Bỏ qua chứng nhận {} khi xuất gói: {}", cert.getUniqueHash(), reason);
+            if (listed.size() < MAX_MISSING_LISTED) {
+                listed.add(cert.getCertificateNumber() + "\t" + cert.getUniqueHash() + "\t" + reason);
+            }
+            count++;
+        }
+    }
+
+    @Override
+    public void validate(String buyerId, LocalDateTime from, LocalDateTime to) throws BusinessException {
+        if ((buyerId == null || buyerId.isBlank()) && from == null && to == null) {
+            throw new BusinessException("Cần chọn người mua hoặc khoảng thời gian để xuất chứng nhận.");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BusinessException("Thời gian bắt đầu phải trước thời gian kết thúc.");
+        }
+    }
+
+    @Override
+    public int writeBundle(String buyerId, LocalDateTime from, LocalDateTime to, Format format, OutputStream out) throws IOException {
+        int written = switch (format) {
+            case ZIP -> writeZip(buyerId, from, to, out);
+            case PDF -> writeMergedPdf(buyerId, from, to, out);
+        };
+        meterRegistry.counter("wallet.certificates.bundle.exported", "format", format.name()).increment();
+        meterRegistry.counter("wallet.certificates.bundle.files", "format", format.name()).increment(written);
+        log.info("Đã xuất gói {} gồm {} chứng nhận (buyer={}, from={}, to={})", format, written, buyerId, from, to);
+        return written;
+    }
+
+    private int writeZip(String buyerId, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // PDF vốn đã nén, nén thêm chỉ tốn CPU
+        zip.setLevel(Deflater.BEST_SPEED);
+        MissingFiles missing = new MissingFiles();
+        int written = forEachCertificate(buyerId, from, to, missing, (cert, pdf) -> {
+            zip.putNextEntry(new ZipEntry("certificate-" + cert.getUniqueHash() + ".pdf"));
+            pdf.transferTo(zip);
+            zip.closeEntry();
+        });
+        if (missing.count > 0) {
+            zip.putNextEntry(new ZipEntry(MISSING_MANIFEST));
+            zip.write(missingManifest(missing).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        // finish thay vì close: stream của response do Spring đóng
+        zip.finish();
+        return written;
+    }
+
+    private int writeMergedPdf(String buyerId, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        PdfWriter writer = new PdfWriter(out);
+        writer.setCloseStream(false);
+        PdfDocument merged = new PdfDocument(writer);
+        PdfMerger merger = new PdfMerger(merged);
+        int[] flushedPages = {0};
+        // PDF gộp không có chỗ cho manifest: chứng nhận thiếu chỉ được ghi log
+        int written = forEachCertificate(buyerId, from, to, new MissingFiles(), (cert, pdf) -> {
+            try (PdfDocument source = new PdfDocument(new PdfReader(pdf))) {
+                merger.merge(source, 1, source.getNumberOfPages());
+            }
+            // Ghi các trang vừa gộp ra response ngay để không giữ cả gói trong heap
+            for (int page = flushedPages[0] + 1; page <= merged.getNumberOfPages(); page++) {
+                merged.getPage(page).flush(true);
+            }
+            flushedPages[0] = merged.getNumberOfPages();
+        });
+        if (written == 0) {
+            // PDF phải có ít nhất một trang
+            merged.addNewPage();
+        }
+        merged.close();
+        return written;
+    }
+
+    /**
+     * Duyệt chứng nhận theo từng chunk keyset. Chứng nhận chưa có file (DEFERRED ở chế độ lazy,
+     * PENDING chưa tới lượt worker, FAILED) được render ngay qua CertificateService.
+     * Chứng nhận vẫn không có file hoặc file không đọc được thì bỏ qua và ghi vào missing,
+     * vì header đã gửi đi nên không còn đổi được mã lỗi của response.
+     */
+    private int forEachCertificate(String buyerId, LocalDateTime from, LocalDateTime to,
+                                   MissingFiles missing, EntryWriter entryWriter) throws IOException {
+        String buyer = buyerId == null || buyerId.isBlank() ? null : buyerId;
+        long afterId = 0L;
+        int written = 0;
+        while (true) {
+            List<Certificate> chunk = certificateRepository.findBundleChunk(afterId, buyer, from, to, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            for (Certificate cert : chunk) {
+                Certificate withFile = cert.getCertificateUrl() != null ? cert : renderMissing(cert, missing);
+                if (withFile == null) {
+                    continue;
+                }
+                InputStream pdf;
+                try {
+                    pdf = open(withFile);
+                } catch (IOException e) {
+                    missing.add(withFile, "không đọc được file: " + e.getMessage());
+                    continue;
+                }
+                try (pdf) {
+                    entryWriter.write(withFile, pdf);
+                }
+                written++;
+            }
+            afterId = chunk.get(chunk.size() - 1).getCertificateId();
+        }
+        if (missing.count > 0) {
+            log.warn("Gói chứng nhận thiếu {} file", missing.count);
+            meterRegistry.counter("wallet.certificates.bundle.missing").increment(missing.count);
+        }
+        return written;
+    }
+
+    private Certificate renderMissing(Certificate cert, MissingFiles missing) {
+        Certificate rendered;
+        try {
+            rendered = certificateService.renderCertificate(cert.getCertificateId());
+        } catch (BusinessException | RuntimeException e) {
+            missing.add(cert, "render lỗi: " + e.getMessage());
+            return null;
+        }
+        if (rendered.getCertificateUrl() == null) {
+            // RENDERING: đang render ở nơi khác; FAILED: render/upload lỗi
+            missing.add(rendered, "chưa có file (" + rendered.getStatus() + ")");
+            return null;
+        }
+        meterRegistry.counter("wallet.certificates.bundle.rendered").increment();
+        return rendered;
+    }
+
+    private static String missingManifest(MissingFiles missing) {
+        StringBuilder manifest = new StringBuilder()
+                .append("# ").append(missing.count).append(" chứng nhận không có trong gói\n")
+                .append("# certificateNumber\tuniqueHash\tlý do\n");
+        missing.listed.forEach(line -> manifest.append(line).append('\n'));
+        if (missing.count > missing.listed.size()) {
+            manifest.append("# ... và ").append(missing.count - missing.listed.size()).append(" chứng nhận khác\n");
+        }
+        return manifest.toString();
+    }
+
+    private InputStream open(Certificate cert) throws IOException {
+        byte[] cached = certificateCache.getBytes(cert.getContentSha256());
+        if (cached != null) {
+            return new ByteArrayInputStream(cached);
+        }
+        return certificateStorage.load(cert).getInputStream();
+    }
+}
@@ -0,0 +1,214 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.CertificateRenderConfig;
+import com.carbontc.walletservice.dto.response.CertificateRegenerationResponse;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.CertificateRepository;
+import com.carbontc.walletservice.service.CertificateRegenerationService;
+import com.carbontc.walletservice.service.CertificateService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tạo lại PDF chứng nhận hàng loạt (đổi mẫu, hoặc các dòng upload lỗi còn certificateUrl = null).
+ * Một luồng điều phối đọc id theo từng chunk (keyset) rồi xử lý từng chứng nhận trên virtual thread;
+ * bước render bên trong CertificateService chạy trên pool certificateRenderExecutor (dùng chung với
+ * worker và lượt tải), upload/DB không chiếm luồng của pool. Số chứng nhận xử lý đồng thời không vượt
+ * quá số luồng + hàng đợi của pool. Chờ xong chunk mới đọc chunk tiếp nên bộ nhớ không phụ thuộc
+ * số lượng chứng nhận.
+ */
+@Service
+public class CertificateRegenerationServiceImpl implements CertificateRegenerationService {
+
+    private static final Logger log = LoggerFactory.getLogger(CertificateRegenerationServiceImpl.class);
+
+    // PENDING đang có worker xử lý, DEFERRED sẽ render khi có người tải, RENDERING đang được render
+    private static final Set<CertificateStatus> EXCLUDED_STATUSES = EnumSet.of(
+            CertificateStatus.PENDING, CertificateStatus.DEFERRED, CertificateStatus.RENDERING);
+
+    private final CertificateRepository certificateRepository;
+    private final CertificateService certificateService;
+    private final ThreadPoolTaskExecutor renderExecutor;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicReference<RegenerationJob> currentJob = new AtomicReference<>();
+
+    @Value("${wallet-config.certificate.render.regeneration-chunk-size:200}")
+    private int chunkSize;
+
+    public CertificateRegenerationServiceImpl(CertificateRepository certificateRepository,
+                                              CertificateService certificateService,
+                                              @Qualifier(CertificateRenderConfig.CERTIFICATE_RENDER_EXECUTOR) ThreadPoolTaskExecutor renderExecutor,
+                                              MeterRegistry meterRegistry) {
+        this.certificateRepository = certificateRepository;
+        this.certificateService = certificateService;
+        this.renderExecutor = renderExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public CertificateRegenerationResponse start(LocalDateTime from, LocalDateTime to, boolean onlyMissingFile) throws BusinessException {
+        if (from == null && to == null && !onlyMissingFile) {
+            throw new BusinessException("Cần chọn khoảng thời gian hoặc onlyMissingFile=true.");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BusinessException("Thời gian bắt đầu phải trước thời gian kết thúc.");
+        }
+
+        RegenerationJob job = new RegenerationJob(from, to, onlyMissingFile);
+        RegenerationJob previous = currentJob.get();
+        if ((previous != null && previous.status == JobStatus.RUNNING) || !currentJob.compareAndSet(previous, job)) {
+            throw new BusinessException("Đang có một đợt tạo lại chứng nhận chạy, vui lòng chờ hoặc huỷ.");
+        }
+
+        Thread.ofPlatform().name("certificate-regeneration").daemon().start(() -> run(job));
+        return job.snapshot();
+    }
+
+    @Override
+    public CertificateRegenerationResponse getProgress() throws BusinessException {
+        RegenerationJob job = currentJob.get();
+        if (job == null) {
+            throw new BusinessException("Chưa có đợt tạo lại chứng nhận nào.");
+        }
+        return job.snapshot();
+    }
+
+    @Override
+    public CertificateRegenerationResponse cancel() throws BusinessException {
+        RegenerationJob job = currentJob.get();
+        if (job == null || job.status != JobStatus.RUNNING) {
+            throw new BusinessException("Không có đợt tạo lại chứng nhận nào đang chạy.");
+        }
+        job.cancelRequested = true;
+        return job.snapshot();
+    }
+
+    private void run(RegenerationJob job) {
+        log.info("[regen {}] Bắt đầu tạo lại chứng nhận: from={}, to={}, onlyMissingFile={}",
+                job.id, job.from, job.to, job.onlyMissingFile);
+        long afterId = 0L;
+        Semaphore inFlight = new Semaphore(renderExecutor.getMaxPoolSize() + renderExecutor.getQueueCapacity());
+        try {
+            while (!job.cancelRequested) {
+                List<Long> ids = certificateRepository.findIdsForRegeneration(afterId, job.from, job.to,
+                        job.onlyMissingFile, EXCLUDED_STATUSES, PageRequest.of(0, chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                // Không gửi việc từ trong pool render vào chính pool đó (luồng chờ việc xếp sau mình)
+                try (ExecutorService dispatcher = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (Long id : ids) {
+                        inFlight.acquireUninterruptibly();
+                        dispatcher.execute(() -> {
+                            try {
+                                regenerate(job, id);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }
+                }
+
+                afterId = ids.get(ids.size() - 1);
+                job.lastCertificateId = afterId;
+                log.info("[regen {}] Đã xử lý {} chứng nhận (thành công {}, lỗi {}), {} chứng nhận/giây",
+                        job.id, job.scanned.get(), job.succeeded.get(), job.failed.get(),
+                        String.format("%.1f", job.throughput()));
+            }
+            job.finish(job.cancelRequested ? JobStatus.CANCELLED : JobStatus.COMPLETED);
+        } catch (RuntimeException e) {
+            log.error("[regen {}] Dừng vì lỗi: {}", job.id, e.getMessage(), e);
+            job.finish(JobStatus.FAILED);
+        }
+        log.info("[regen {}] Kết thúc với trạng thái {}: {} chứng nhận, thành công {}, lỗi {}",
+                job.id, job.status, job.scanned.get(), job.succeeded.get(), job.failed.get());
+    }
+
+    private void regenerate(RegenerationJob job, Long certificateId) {
+        boolean ok;
+        try {
+            ok = certificateService.regenerateCertificate(certificateId);
+        } catch (Exception e) {
+            log.warn("[regen {}] Lỗi tạo lại chứng nhận {}: {}", job.id, certificateId, e.getMessage());
+            ok = false;
+        }
+        job.scanned.incrementAndGet();
+        (ok ? job.succeeded : job.failed).incrementAndGet();
+        meterRegistry.counter("wallet.certificates.regenerated", "result", ok ? "success" : "failed").increment();
+    }
+
+    private enum JobStatus { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private static final class RegenerationJob {
+        final String id = UUID.randomUUID().toString();
+        final LocalDateTime from;
+        final LocalDateTime to;
+        final boolean onlyMissingFile;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final long startedNanos = System.nanoTime();
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        volatile JobStatus status = JobStatus.RUNNING;
+        volatile boolean cancelRequested;
+        volatile Long lastCertificateId;
+        volatile LocalDateTime finishedAt;
+        volatile long finishedNanos;
+
+        RegenerationJob(LocalDateTime from, LocalDateTime to, boolean onlyMissingFile) {
+            this.from = from;
+            this.to = to;
+            this.onlyMissingFile = onlyMissingFile;
+        }
+
+        void finish(JobStatus finalStatus) {
+            finishedNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+            status = finalStatus;
+        }
+
+        double throughput() {
+            long end = status == JobStatus.RUNNING ? System.nanoTime() : finishedNanos;
+            double seconds = Duration.ofNanos(end - startedNanos).toMillis() / 1000.0;
+            return seconds <= 0 ? 0 : scanned.get() / seconds;
+        }
+
+        CertificateRegenerationResponse snapshot() {
+            return CertificateRegenerationResponse.builder()
+                    .jobId(id)
+                    .status(status.name())
+                    .from(from)
+                    .to(to)
+                    .onlyMissingFile(onlyMissingFile)
+                    .scanned(scanned.get())
+                    .succeeded(succeeded.get())
+                    .failed(failed.get())
+                    .lastCertificateId(lastCertificateId)
+                    .certificatesPerSecond(Math.round(throughput() * 10) / 10.0)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
@@ -1,132 +1,482 @@
 package com.carbontc.walletservice.service.Impl;
 
+import com.carbontc.walletservice.config.CertificateRenderConfig;
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.CertificateIssuedEvent;
+import com.carbontc.walletservice.dto.event.CertificateRequestedEvent;
 import com.carbontc.walletservice.dto.response.CertificateResponse;
 import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
 import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.repository.CertificateRepository;
 import com.carbontc.walletservice.service.CertificateService;
-import com.carbontc.walletservice.service.CloudinaryService;
-import com.itextpdf.io.font.PdfEncodings;
-import com.itextpdf.io.font.constants.StandardFonts;
-import com.itextpdf.io.image.ImageData;
-import com.itextpdf.io.image.ImageDataFactory;
-import com.itextpdf.kernel.colors.ColorConstants;
-import com.itextpdf.kernel.colors.DeviceRgb;
-import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.borders.Border;
-import com.itextpdf.layout.element.*;
-import com.itextpdf.layout.properties.HorizontalAlignment;
-import com.itextpdf.layout.properties.TextAlignment;
-import com.itextpdf.layout.properties.UnitValue;
-import lombok.RequiredArgsConstructor;
+import com.carbontc.walletservice.service.CertificateStorage;
+import com.carbontc.walletservice.service.OutboxService;
+import com.carbontc.walletservice.util.CertificateCache;
+import com.carbontc.walletservice.util.CertificateHashIndex;
+import com.carbontc.walletservice.util.CertificatePdfRenderer;
+import com.carbontc.walletservice.util.CertificateSerialGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.WebRequest;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.OffsetDateTime;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
-@RequiredArgsConstructor
 public class CertificateServiceImpl implements CertificateService {
 
     private static final Logger log = LoggerFactory.getLogger(CertificateServiceImpl.class);
+    // Trạng thái được phép nhận render (cùng điều kiện certificateUrl IS NULL trong câu UPDATE)
+    private static final Set<CertificateStatus> RENDER_CLAIMABLE = EnumSet.of(
+            CertificateStatus.PENDING, CertificateStatus.DEFERRED, CertificateStatus.FAILED);
+    private static final long RENDER_POLL_MS = 100;
     private final CertificateRepository certificateRepository;
-    private final CloudinaryService cloudinaryService;
-    private final RestTemplate restTemplate = new RestTemplate();
-
-    private static final String LOGO_URL = "https://res.cloudinary.com/dxzk5p80d/image/upload/v1761755969/anhcoin_at2e0k.jpg";
+    private final CertificateStorage certificateStorage;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final CertificatePdfRenderer certificatePdfRenderer;
+    private final CertificateCache certificateCache;
+    private final CertificateHashIndex certificateHashIndex;
+    private final CertificateSerialGenerator certificateSerialGenerator;
+    private final MeterRegistry meterRegistry;
+    // Mọi lượt render PDF (worker, lazy, tạo lại) đều chạy trên pool giới hạn này
+    private final ThreadPoolTaskExecutor renderExecutor;
+
+    // Lượt render đang chạy theo certificateId: các lượt tải đầu tiên đồng thời chờ chung một kết quả
+    private final Map<Long, CompletableFuture<Certificate>> inFlightRenders = new ConcurrentHashMap<>();
+
+    @Value("${wallet-config.certificate.lazy-render:false}")
+    private boolean lazyRender;
+
+    // Thời gian tối đa một lượt tải chờ lượt render đang chạy (cùng instance hoặc replica khác)
+    @Value("${wallet-config.certificate.render-wait-ms:15000}")
+    private long renderWaitMs;
+
+    // Lượt RENDERING cũ hơn khoảng này coi như replica đã chết, được nhận render lại
+    @Value("${wallet-config.certificate.render-lease-ms:120000}")
+    private long renderLeaseMs;
+
+    public CertificateServiceImpl(CertificateRepository certificateRepository,
+                                  CertificateStorage certificateStorage,
+                                  OutboxService outboxService,
+                                  TransactionTemplate transactionTemplate,
+                                  CertificatePdfRenderer certificatePdfRenderer,
+                                  CertificateCache certificateCache,
+                                  CertificateHashIndex certificateHashIndex,
+                                  CertificateSerialGenerator certificateSerialGenerator,
+                                  MeterRegistry meterRegistry,
+                                  @Qualifier(CertificateRenderConfig.CERTIFICATE_RENDER_EXECUTOR) ThreadPoolTaskExecutor renderExecutor) {
+        this.certificateRepository = certificateRepository;
+        this.certificateStorage = certificateStorage;
+        this.outboxService = outboxService;
+        this.transactionTemplate = transactionTemplate;
+        this.certificatePdfRenderer = certificatePdfRenderer;
+        this.certificateCache = certificateCache;
+        this.certificateHashIndex = certificateHashIndex;
+        this.certificateSerialGenerator = certificateSerialGenerator;
+        this.meterRegistry = meterRegistry;
+        this.renderExecutor = renderExecutor;
+    }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public Certificate createCertificate(String transactionId, String buyerUserId, BigDecimal creditAmount) {
+    public Certificate requestCertificate(String transactionId, String buyerUserId, BigDecimal creditAmount) {
         Optional<Certificate> existingCert = certificateRepository.findByTransactionId(transactionId);
         if (existingCert.isPresent()) {
             log.warn("Certificate đã tồn tại cho transaction {}, skip tạo mới", transactionId);
             return existingCert.get();
         }
 
-        String uniqueHash = UUID.randomUUID().toString();
-        String serialNumber = "CTC-" + System.currentTimeMillis();
+        Certificate cert = newCertificate(transactionId, buyerUserId, creditAmount);
+        if (lazyRender) {
+            // Không cần worker: PDF chỉ được render khi có người tải
+            return saveDeferred(cert);
+        }
+        cert.setStatus(CertificateStatus.PENDING);
+        Certificate saved = certificateRepository.save(cert);
+        indexAfterCommit(saved);
+
+        // Cùng commit với giao dịch: rollback thì worker không nhận được yêu cầu render
+        CertificateRequestedEvent requested = CertificateRequestedEvent.builder()
+                .certificateId(saved.getCertificateId())
+                .transactionId(transactionId)
+                .build();
+        outboxService.enqueue(RabbitMQConfig.CERTIFICATE_EXCHANGE, RabbitMQConfig.CERTIFICATE_REQUEST_ROUTING_KEY, requested);
+        return saved;
+    }
+
+    @Override
+    public Certificate renderCertificate(Long certificateId) throws BusinessException {
+        boolean claimed = claimForRender(certificateId);
+        Certificate cert = certificateRepository.findById(certificateId)
+                .orElseThrow(() -> new BusinessException("Không tìm thấy chứng nhận " + certificateId));
+
+        if (!claimed) {
+            // Tin nhắn bị gửi lại sau khi đã render xong, hoặc luồng/replica khác đang render
+            log.warn("Chứng nhận {} đã có file hoặc đang được render ({}), bỏ qua render", certificateId, cert.getStatus());
+            return cert;
+        }
+        return issue(cert);
+    }
 
+    @Override
+    public boolean regenerateCertificate(Long certificateId) throws BusinessException {
+        Certificate cert = certificateRepository.findById(certificateId)
+                .orElseThrow(() -> new BusinessException("Không tìm thấy chứng nhận " + certificateId));
+
+        if (cert.getCertificateUrl() == null) {
+            // Chưa từng có file (upload lỗi): coi như phát hành lần đầu, cũng phải nhận render trước
+            if (!claimForRender(certificateId)) {
+                return false;
+            }
+            return issue(cert).getStatus() == CertificateStatus.ISSUED;
+        }
+
+        // Đã có file: ghi đè theo mẫu mới, lỗi thì giữ nguyên file cũ.
+        // Cũng phải nhận dòng trước: lượt tạo lại song song hoặc lượt tải lazy không render cùng lúc
+        if (!claimForRerender(certificateId)) {
+            log.warn("Chứng nhận {} đang được render ở nơi khác, bỏ qua tạo lại", certificateId);
+            return false;
+        }
+        CertificateStatus previousStatus = cert.getStatus();
+        String previousUrl = cert.getCertificateUrl();
+        String previousSha = cert.getContentSha256();
+        boolean uploaded = false;
+        try {
+            uploaded = renderAndUpload(cert);
+        } finally {
+            // Lỗi thì trả dòng về trạng thái cũ với file cũ, không chờ hết lease
+            CertificateStatus status = uploaded ? CertificateStatus.ISSUED : previousStatus;
+            String url = uploaded ? cert.getCertificateUrl() : previousUrl;
+            String sha = uploaded ? cert.getContentSha256() : previousSha;
+            transactionTemplate.executeWithoutResult(tx ->
+                    certificateRepository.finishRerender(certificateId, status, url, sha));
+        }
+        if (!uploaded) {
+            return false;
+        }
+        // Hash mới đã lưu: ETag đổi và cache bytes cũ (ở mọi replica) không còn được dùng
+        if (!previousUrl.equals(cert.getCertificateUrl())) {
+            certificateCache.evictLookup(cert.getTransactionId());
+        }
+        return true;
+    }
+
+    /**
+     * Đổi trạng thái sang RENDERING bằng UPDATE có điều kiện: giữa mọi replica chỉ một lời gọi
+     * nhận được, nên mỗi chứng nhận chỉ có một lượt render và upload tại một thời điểm.
+     */
+    private boolean claimForRender(Long certificateId) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minus(Duration.ofMillis(renderLeaseMs));
+        Integer claimed = transactionTemplate.execute(status ->
+                certificateRepository.claimForRender(certificateId, RENDER_CLAIMABLE, now, staleBefore));
+        return claimed != null && claimed > 0;
+    }
+
+    private boolean claimForRerender(Long certificateId) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minus(Duration.ofMillis(renderLeaseMs));
+        Integer claimed = transactionTemplate.execute(status ->
+                certificateRepository.claimForRerender(certificateId, now, staleBefore));
+        return claimed != null && claimed > 0;
+    }
+
+    private Certificate issue(Certificate cert) {
+        // Render + lưu file không nằm trong transaction nào: không giữ connection DB trong lúc chờ storage
+        boolean uploaded;
+        try {
+            uploaded = renderAndUpload(cert);
+        } catch (RuntimeException e) {
+            // Trả dòng về FAILED để lần gửi lại/lần tải sau nhận render được ngay, không chờ hết lease
+            cert.setStatus(CertificateStatus.FAILED);
+            transactionTemplate.executeWithoutResult(status -> certificateRepository.save(cert));
+            throw e;
+        }
+        cert.setStatus(uploaded ? CertificateStatus.ISSUED : CertificateStatus.FAILED);
+
+        return transactionTemplate.execute(status -> {
+            Certificate saved = certificateRepository.save(cert);
+            if (uploaded) {
+                CertificateIssuedEvent issued = CertificateIssuedEvent.builder()
+                        .transactionId(saved.getTransactionId())
+                        .certificateId(saved.getCertificateId())
+                        .certificateHash(saved.getUniqueHash())
+                        .certificateUrl(saved.getCertificateUrl())
+                        .status(saved.getStatus().name())
+                        .issuedAt(OffsetDateTime.now())
+                        .build();
+                outboxService.enqueue(RabbitMQConfig.TRANSACTION_EXCHANGE, RabbitMQConfig.CERTIFICATE_ISSUED_ROUTING_KEY, issued);
+            }
+            return saved;
+        });
+    }
+
+    private Certificate saveDeferred(Certificate cert) {
+        cert.setStatus(CertificateStatus.DEFERRED);
+        Certificate saved = certificateRepository.save(cert);
+        indexAfterCommit(saved);
+        meterRegistry.counter("wallet.certificates.deferred").increment();
+        return saved;
+    }
+
+    /**
+     * Đưa hash vào index xác minh sau khi commit (rollback thì chứng nhận không tồn tại).
+     */
+    private void indexAfterCommit(Certificate cert) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            certificateHashIndex.add(cert.getUniqueHash(), cert.getExpiryDate());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                certificateHashIndex.add(cert.getUniqueHash(), cert.getExpiryDate());
+            }
+        });
+    }
+
+    /**
+     * Render chứng nhận ở lần tải đầu tiên. Trong một instance các request đồng thời chờ chung
+     * một future; giữa các replica chỉ replica nhận được dòng (status RENDERING) mới render,
+     * replica khác đọc lại trạng thái cho tới khi có kết quả. Chờ quá render-wait-ms thì báo
+     * chứng nhận đang được tạo để client thử lại.
+     */
+    private Certificate renderOnFirstDownload(Certificate cert) throws BusinessException {
+        CompletableFuture<Certificate> flight = new CompletableFuture<>();
+        CompletableFuture<Certificate> existing = inFlightRenders.putIfAbsent(cert.getCertificateId(), flight);
+        if (existing != null) {
+            meterRegistry.counter("wallet.certificates.lazy_render.coalesced").increment();
+            try {
+                return existing.get(renderWaitMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new BusinessException("Chứng nhận đang được tạo, vui lòng thử lại sau.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException("Chứng nhận đang được tạo, vui lòng thử lại sau.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof BusinessException businessException) {
+                    throw businessException;
+                }
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+            }
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Certificate rendered = renderCertificate(cert.getCertificateId());
+            if (rendered.getStatus() == CertificateStatus.RENDERING) {
+                rendered = awaitRender(rendered);
+            }
+            meterRegistry.counter("wallet.certificates.lazy_rendered", "status", rendered.getStatus().name()).increment();
+            flight.complete(rendered);
+            return rendered;
+        } catch (BusinessException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRenders.remove(cert.getCertificateId(), flight);
+            sample.stop(meterRegistry.timer("wallet.certificates.lazy_render.duration"));
+        }
+    }
+
+    /**
+     * Chờ lượt render ở replica khác xong. Đọc các cột trạng thái thay vì entity: với open-in-view,
+     * entity đã nằm trong persistence context của request không tự cập nhật theo DB.
+     */
+    private Certificate awaitRender(Certificate cert) throws BusinessException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(renderWaitMs);
+        while (true) {
+            CertificateRepository.RenderState state = certificateRepository.findRenderStateById(cert.getCertificateId())
+                    .orElseThrow(() -> new BusinessException("Không tìm thấy chứng nhận " + cert.getCertificateId()));
+            if (state.getStatus() != CertificateStatus.RENDERING) {
+                cert.setStatus(state.getStatus());
+                cert.setCertificateUrl(state.getCertificateUrl());
+                cert.setContentSha256(state.getContentSha256());
+                return cert;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new BusinessException("Chứng nhận đang được tạo, vui lòng thử lại sau.");
+            }
+            try {
+                Thread.sleep(RENDER_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException("Chứng nhận đang được tạo, vui lòng thử lại sau.");
+            }
+        }
+    }
+
+    private Certificate newCertificate(String transactionId, String buyerUserId, BigDecimal creditAmount) {
         Certificate cert = new Certificate();
         cert.setTransactionId(transactionId);
         cert.setBuyerId(buyerUserId);
         cert.setCreditAmount(creditAmount);
-        cert.setUniqueHash(uniqueHash);
-        cert.setCertificateNumber(serialNumber);
+        cert.setUniqueHash(UUID.randomUUID().toString());
+        cert.setCertificateNumber(certificateSerialGenerator.nextSerial());
         cert.setIssuedAt(LocalDateTime.now());
         cert.setExpiryDate(LocalDateTime.now().plusDays(30));
+        return cert;
+    }
 
-        byte[] pdfBytes = generatePdfBytes(cert, transactionId, buyerUserId, creditAmount, serialNumber);
+    /**
+     * Tạo PDF và lưu vào storage, gán certificateUrl khi thành công.
+     * Chỉ bước render (CPU) chạy trên pool render; upload chạy trên luồng gọi.
+     */
+    private boolean renderAndUpload(Certificate cert) {
+        byte[] pdfBytes = renderOnPool(cert);
+        if (pdfBytes == null) {
+            return false;
+        }
+        try {
+            String storedUrl = certificateStorage.store(cert.getUniqueHash(), pdfBytes);
+            String sha = sha256Hex(pdfBytes);
+            cert.setCertificateUrl(storedUrl);
+            cert.setContentSha256(sha);
+            // Người mua thường tải ngay sau giao dịch: giữ sẵn bản vừa render
+            certificateCache.putBytes(sha, pdfBytes);
+            log.info("PDF stored successfully: {}", storedUrl);
+            return true;
+        } catch (IOException e) {
+            log.error("Lỗi lưu PDF: {}", e.getMessage());
+            cert.setCertificateUrl(null);
+            return false;
+        }
+    }
 
-        if (pdfBytes != null) {
-            try {
-                String uploadedUrl = cloudinaryService.uploadPdf(pdfBytes, uniqueHash);
-                cert.setCertificateUrl(uploadedUrl);
-                log.info("PDF uploaded successfully: {}", uploadedUrl);
-            } catch (IOException e) {
-                log.error("Lỗi upload PDF: {}", e.getMessage());
-                cert.setCertificateUrl(null);
-            }
+    // Pool đầy thì luồng gọi tự render (CallerRuns), nên nguồn gửi việc tự chậm lại
+    private byte[] renderOnPool(Certificate cert) {
+        try {
+            return CompletableFuture.supplyAsync(() -> certificatePdfRenderer.render(cert), renderExecutor).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
         }
-        return certificateRepository.save(cert);
     }
 
     @Override
-    @Transactional(readOnly = true)
-    public ResponseEntity<byte[]> downloadCertificateByHash(String uniqueHash) throws BusinessException, IOException {
+    public ResponseEntity<Resource> downloadCertificateByHash(String uniqueHash, WebRequest webRequest)
+            throws BusinessException, IOException {
         log.info("Yêu cầu tải chứng nhận với hash: {}", uniqueHash);
 
         Certificate cert = certificateRepository.findByUniqueHash(uniqueHash)
                 .orElseThrow(() -> new BusinessException("Không tìm thấy chứng nhận với mã hash này."));
 
-        String cloudinaryUrl = cert.getCertificateUrl();
-        if (cloudinaryUrl == null || cloudinaryUrl.isBlank()) {
+        if (cert.getStatus() == CertificateStatus.PENDING) {
+            throw new BusinessException("Chứng nhận đang được tạo, vui lòng thử lại sau.");
+        }
+        // FAILED trong chế độ lazy: lần render trước lỗi, thử lại khi có người tải;
+        // RENDERING: chờ lượt đang chạy, hoặc nhận render lại nếu lượt đó đã quá lease
+        if (cert.getStatus() == CertificateStatus.DEFERRED
+                || (lazyRender && (cert.getStatus() == CertificateStatus.FAILED
+                || cert.getStatus() == CertificateStatus.RENDERING))) {
+            cert = renderOnFirstDownload(cert);
+            if (cert.getStatus() != CertificateStatus.ISSUED) {
+                throw new BusinessException("Không thể tạo file chứng nhận. Vui lòng thử lại sau.");
+            }
+        } else if (cert.getStatus() == CertificateStatus.RENDERING) {
+            // Worker đang render
+            cert = awaitRender(cert);
+        }
+        if (cert.getCertificateUrl() == null || cert.getCertificateUrl().isBlank()) {
             throw new BusinessException("Chứng nhận này không có file đính kèm.");
         }
 
-        log.info("Đang tải file từ Cloudinary URL: {}", cloudinaryUrl);
+        // Client đã có đúng bản đang lưu: không đọc storage
+        String etag = etagOf(cert.getContentSha256());
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
 
-        try {
-            byte[] fileContent = restTemplate.getForObject(cloudinaryUrl, byte[].class);
+        byte[] cached = certificateCache.getBytes(cert.getContentSha256());
+        if (cached != null) {
+            return pdfResponse(uniqueHash, etag, new ByteArrayResource(cached));
+        }
 
-            if (fileContent == null) {
-                throw new IOException("Không tải được nội dung file từ Cloudinary.");
+        // File vừa cỡ đọc 1 lần rồi giữ trong cache; file lớn vẫn stream thẳng từ storage
+        Resource file = certificateStorage.load(cert);
+        if (certificateCache.isCacheable(file.contentLength())) {
+            byte[] content;
+            try (InputStream in = file.getInputStream()) {
+                content = in.readAllBytes();
+            }
+            // Hash theo đúng bytes vừa đọc: file có thể vừa bị render lại ở replica khác
+            String sha = sha256Hex(content);
+            if (cert.getContentSha256() == null) {
+                Long id = cert.getCertificateId();
+                transactionTemplate.executeWithoutResult(status -> certificateRepository.backfillContentSha256(id, sha));
             }
+            certificateCache.putBytes(sha, content);
+            return pdfResponse(uniqueHash, etagOf(sha), new ByteArrayResource(content));
+        }
+        return pdfResponse(uniqueHash, etag, file);
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "certificate-" + uniqueHash + ".pdf");
-            headers.setContentLength(fileContent.length);
+    private ResponseEntity<Resource> pdfResponse(String uniqueHash, String etag, Resource file) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.setContentDispositionFormData("attachment", "certificate-" + uniqueHash + ".pdf");
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+        // Không tự đặt Content-Length: converter tính theo file hoặc theo đoạn Range được yêu cầu
 
-            log.info("Tải file thành công, trả về {} bytes.", fileContent.length);
-            return new ResponseEntity<>(fileContent, headers, HttpStatus.OK);
+        return new ResponseEntity<>(file, headers, HttpStatus.OK);
+    }
 
-        } catch (Exception e) {
-            log.error("Lỗi khi tải file từ Cloudinary cho hash {}: {}", uniqueHash, e.getMessage(), e);
-            throw new BusinessException("Không thể tải file chứng nhận. Vui lòng thử lại sau.");
+    // ETag mạnh hợp lệ vì lấy từ chính nội dung file (PDF iText mỗi lần render ra bytes khác nhau)
+    private static String etagOf(String contentSha256) {
+        return contentSha256 != null ? "\"" + contentSha256 + "\"" : null;
+    }
+
+    static String sha256Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
         }
     }
 
     @Override
     public CertificateResponse getCertificateByTransactionId(String transactionId) throws BusinessException {
+        CertificateResponse cached = certificateCache.getLookup(transactionId);
+        if (cached != null) {
+            return cached;
+        }
 
         Certificate certificate = certificateRepository.findByTransactionId(transactionId)
                 .orElseThrow(() -> new BusinessException(" Không tìm thấy chứng chỉ giao dịch"));
@@ -138,160 +488,10 @@ public class CertificateServiceImpl implements CertificateService {
                 certificate.getUniqueHash()
         );
 
-        return certificateResponse;
-    }
-
-    private byte[] generatePdfBytes(Certificate cert, String transactionId, String buyerUserId,
-                                    BigDecimal creditAmount, String serialNumber) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PdfWriter writer = new PdfWriter(baos);
-            PdfDocument pdf = new PdfDocument(writer);
-            Document document = new Document(pdf);
-
-            PdfFont font;
-            PdfFont fontBold;
-
-            try {
-                ClassPathResource regularFont = new ClassPathResource("fonts/NotoSans-Italic-VariableFont_wdth,wght.ttf");
-                ClassPathResource boldFont = new ClassPathResource("fonts/NotoSans-VariableFont_wdth,wght.ttf");
-                byte[] regularBytes = regularFont.getInputStream().readAllBytes();
-                byte[] boldBytes = boldFont.getInputStream().readAllBytes();
-                font = PdfFontFactory.createFont(regularBytes, PdfEncodings.IDENTITY_H);
-                fontBold = PdfFontFactory.createFont(boldBytes, PdfEncodings.IDENTITY_H);
-                log.info("Font tiếng Việt loaded successfully");
-            } catch (Exception e) {
-                log.warn("Không load được font, dùng mặc định: {}", e.getMessage());
-                font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
-                fontBold = PdfFontFactory.createFont(StandardFonts.HELVETICA_BOLD);
-            }
-            document.setFont(font);
-
-
-            try {
-                ImageData imageData = ImageDataFactory.create(LOGO_URL);
-                Image logo = new Image(imageData);
-                logo.setWidth(80);
-                logo.setFixedPosition(50, 750); // Vị trí góc trên bên trái
-                document.add(logo);
-            } catch (Exception e) {
-                log.warn("Không tải được logo: {}", e.getMessage());
-            }
-
-
-            document.add(new Paragraph("\n"));
-
-            Paragraph title = new Paragraph("GIẤY CHỨNG NHẬN")
-                    .setFont(fontBold).setFontSize(24).setTextAlignment(TextAlignment.CENTER)
-                    .setBold().setFontColor(ColorConstants.DARK_GRAY)
-                    .setMarginTop(50);
-            document.add(title);
-
-            Paragraph subtitle = new Paragraph("BÙ ĐẮP CARBON")
-                    .setFont(fontBold).setFontSize(20).setTextAlignment(TextAlignment.CENTER)
-                    .setBold().setFontColor(new DeviceRgb(34, 139, 34));
-            document.add(subtitle);
-
-
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-            Table table = new Table(new float[]{200f, 300f});
-            addTableRow(table, "Mã giao dịch:", transactionId, font, fontBold);
-            addTableRow(table, "Người sở hữu:", buyerUserId, font, fontBold);
-            addTableRow(table, "Số lượng tín chỉ:", creditAmount + " kg CO₂", font, fontBold);
-            addTableRow(table, "Ngày phát hành:", cert.getIssuedAt().format(formatter), font, fontBold);
-            addTableRow(table, "Mã xác thực:", cert.getUniqueHash(), font, fontBold);
-            addTableRow(table, "Số serial:", serialNumber, font, fontBold);
-            document.add(table);
-
-
-            document.add(new Paragraph("\n"));
-
-            Table signatureTable = new Table(1);
-            signatureTable.setWidth(UnitValue.createPercentValue(50)); // Chiếm 50% chiều rộng trang
-            signatureTable.setHorizontalAlignment(HorizontalAlignment.RIGHT); // Đẩy bảng sang phải
-
-            // Cell chứa chữ ký
-            Cell issuerCell = new Cell()
-                    .add(new Paragraph("Người đại diện")
-                            .setFont(fontBold).setBold().setTextAlignment(TextAlignment.CENTER))
-                    .add(new Paragraph("\n\n\n"))
-                    .add(new Paragraph("_____________________")
-                            .setTextAlignment(TextAlignment.CENTER))
-                    .add(new Paragraph("Carbon Trading Company")
-                            .setFont(font).setFontSize(10).setTextAlignment(TextAlignment.CENTER))
-                    .setBorder(Border.NO_BORDER); // Bỏ viền
-
-            signatureTable.addCell(issuerCell);
-            document.add(signatureTable);
-
-            Paragraph commitment = new Paragraph(
-
-                    "Chứng nhận này xác nhận rằng người sở hữu đã đóng góp vào việc " +
-
-                            "bảo vệ môi trường thông qua việc bù đắp lượng khí thải carbon tương ứng. " +
-
-                            "Chứng nhận được phát hành bởi Carbon Trading Company và có giá trị pháp lý.")
-
-                    .setFont(font)
-
-                    .setFontSize(11)
-
-                    .setTextAlignment(TextAlignment.JUSTIFIED)
-
-                    .setItalic()
-
-                    .setMarginTop(20)
-
-                    .setMarginBottom(30)
-
-                    .setFontColor(ColorConstants.DARK_GRAY);
-
-            document.add(commitment);
-
-            document.close();
-            return baos.toByteArray();
-
-        } catch (Exception e) {
-            log.error("Lỗi khi tạo PDF bytes cho cert hash {}: {}",
-                    cert.getUniqueHash(), e.getMessage(), e);
-            return null;
+        // Chứng nhận chưa có file thì URL còn thay đổi, chưa cache được
+        if (certificate.getCertificateUrl() != null) {
+            certificateCache.putLookup(transactionId, certificateResponse);
         }
+        return certificateResponse;
     }
-
-    private void addTableRow(Table table, String label, String value, PdfFont font, PdfFont fontBold) {
-        Cell labelCell = new Cell()
-                .add(new Paragraph(label)
-                        .setFont(fontBold)
-                        .setBold()
-                        .setFontSize(11))
-                .setBorder(Border.NO_BORDER)
-                .setPaddingBottom(8);
-
-        Cell valueCell = new Cell()
-                .add(new Paragraph(value)
-                        .setFont(font)
-                        .setFontSize(11))
-                .setBorder(Border.NO_BORDER)
-                .setPaddingBottom(8);
-
-        table.addCell(labelCell);
-        table.addCell(valueCell);
-    }
-
-    private void addTableRow(Table table, String label, String value) {
-        Cell labelCell = new Cell()
-                .add(new Paragraph(label)
-                        .setBold()
-                        .setFontSize(11))
-                .setBorder(Border.NO_BORDER)
-                .setPaddingBottom(8);
-
-        Cell valueCell = new Cell()
-                .add(new Paragraph(value)
-                        .setFontSize(11))
-                .setBorder(Border.NO_BORDER)
-                .setPaddingBottom(8);
-
-        table.addCell(labelCell);
-        table.addCell(valueCell);
-    }
-}
\ No newline at end of file
+}
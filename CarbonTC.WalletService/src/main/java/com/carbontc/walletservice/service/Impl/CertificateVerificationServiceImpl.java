@@ -0,0 +1,71 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.dto.response.CertificateVerificationResponse;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.repository.CertificateRepository;
+import com.carbontc.walletservice.service.CertificateVerificationService;
+import com.carbontc.walletservice.util.CertificateHashIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+@RequiredArgsConstructor
+public class CertificateVerificationServiceImpl implements CertificateVerificationService {
+
+    private static final String VALID = "VALID";
+    private static final String EXPIRED = "EXPIRED";
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final CertificateHashIndex certificateHashIndex;
+    private final CertificateRepository certificateRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public CertificateVerificationResponse verify(String uniqueHash) {
+        CertificateVerificationResponse response;
+        String source = "index";
+        UUID hash = CertificateHashIndex.parse(uniqueHash);
+        if (hash == null) {
+            // Sai định dạng thì chắc chắn không tồn tại
+            response = new CertificateVerificationResponse(uniqueHash, UNKNOWN, null);
+        } else if (certificateHashIndex.isLoaded()) {
+            response = fromIndex(uniqueHash, certificateHashIndex.lookup(hash));
+        } else {
+            source = "db";
+            response = fromDatabase(uniqueHash);
+        }
+        meterRegistry.counter("wallet.certificates.verified", "result", response.getStatus(), "source", source).increment();
+        return response;
+    }
+
+    private CertificateVerificationResponse fromIndex(String uniqueHash, long expiry) {
+        if (expiry == CertificateHashIndex.NOT_FOUND) {
+            return new CertificateVerificationResponse(uniqueHash, UNKNOWN, null);
+        }
+        if (expiry == CertificateHashIndex.NO_EXPIRY) {
+            return new CertificateVerificationResponse(uniqueHash, VALID, null);
+        }
+        LocalDateTime expiryDate = LocalDateTime.ofInstant(Instant.ofEpochSecond(expiry), ZoneId.systemDefault());
+        return new CertificateVerificationResponse(uniqueHash, status(expiryDate), expiryDate);
+    }
+
+    private CertificateVerificationResponse fromDatabase(String uniqueHash) {
+        Optional<Certificate> certificate = certificateRepository.findByUniqueHash(uniqueHash);
+        if (certificate.isEmpty()) {
+            return new CertificateVerificationResponse(uniqueHash, UNKNOWN, null);
+        }
+        LocalDateTime expiryDate = certificate.get().getExpiryDate();
+        return new CertificateVerificationResponse(uniqueHash, status(expiryDate), expiryDate);
+    }
+
+    private static String status(LocalDateTime expiryDate) {
+        return expiryDate == null || LocalDateTime.now().isBefore(expiryDate) ? VALID : EXPIRED;
+    }
+}
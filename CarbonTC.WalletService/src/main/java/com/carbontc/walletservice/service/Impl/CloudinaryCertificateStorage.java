@@ -0,0 +1,40 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.service.CertificateStorage;
+import com.carbontc.walletservice.service.CloudinaryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Backend mặc định: PDF nằm trên Cloudinary. Khi tải, file được đọc hết qua RestTemplate (có timeout)
+ * ngay trong load(): lỗi mạng thành IOException trong service, không nổ ra lúc đang ghi response.
+ * File chứng nhận chỉ vài chục KB nên giữ trong heap được.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "wallet-config.certificate", name = "storage", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryCertificateStorage implements CertificateStorage {
+
+    private final CloudinaryService cloudinaryService;
+
+    @Override
+    public String store(String uniqueHash, byte[] pdfBytes) throws IOException {
+        return cloudinaryService.uploadPdf(pdfBytes, uniqueHash);
+    }
+
+    @Override
+    public Resource load(Certificate certificate) throws IOException {
+        String url = certificate.getCertificateUrl();
+        if (url == null || !url.startsWith("http")) {
+            throw new FileNotFoundException("Chứng nhận " + certificate.getUniqueHash() + " không có file trên Cloudinary");
+        }
+        return new ByteArrayResource(cloudinaryService.downloadPdf(url));
+    }
+}
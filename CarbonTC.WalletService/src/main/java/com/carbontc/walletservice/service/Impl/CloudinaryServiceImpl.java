@@ -8,6 +8,8 @@ import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
 import java.util.Map;
@@ -17,6 +19,7 @@ import java.util.Map;
 public class CloudinaryServiceImpl implements CloudinaryService {
 
     private final Cloudinary cloudinary;
+    private final RestTemplate restTemplate;
 
     private static final Logger log = LoggerFactory.getLogger(CloudinaryService.class); // Thêm Logger
 
@@ -38,4 +41,17 @@ public class CloudinaryServiceImpl implements CloudinaryService {
 
         return secureUrl;
     }
+
+    @Override
+    public byte[] downloadPdf(String url) throws IOException {
+        try {
+            byte[] content = restTemplate.getForObject(url, byte[].class);
+            if (content == null) {
+                throw new IOException("File trống: " + url);
+            }
+            return content;
+        } catch (RestClientException e) {
+            throw new IOException("Không tải được file từ " + url + ": " + e.getMessage(), e);
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.consumer.TieredRetryMessageRecoverer;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.service.DeadLetterService;
+import com.rabbitmq.client.GetResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class DeadLetterServiceImpl implements DeadLetterService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterServiceImpl.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    @Value("${wallet-config.partitioning.enabled:false}")
+    private boolean partitioning;
+
+    @Value("${wallet-config.partitioning.partitions:8}")
+    private int partitions;
+
+    @Value("${wallet-config.dead-letter.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    public DeadLetterServiceImpl(RabbitTemplate rabbitTemplate, AmqpAdmin amqpAdmin) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+    }
+
+    @Override
+    public Map<String, Long> getParkedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (String queue : queues()) {
+            QueueInformation info = amqpAdmin.getQueueInfo(RabbitMQConfig.parkingLotQueueName(queue));
+            counts.put(queue, info == null ? 0L : info.getMessageCount());
+        }
+        // Tin không rõ queue gốc: chỉ đếm, không replay tự động được
+        QueueInformation unknown = amqpAdmin.getQueueInfo(RabbitMQConfig.UNKNOWN_QUEUE_PARKING_LOT);
+        counts.put("unknown", unknown == null ? 0L : unknown.getMessageCount());
+        return counts;
+    }
+
+    @Override
+    public int replayParked(String queue, int limit) throws BusinessException {
+        if (!queues().contains(queue)) {
+            throw new BusinessException("Queue " + queue + " không có parking lot.");
+        }
+        if (limit <= 0) {
+            throw new BusinessException("Số tin cần replay phải lớn hơn 0.");
+        }
+
+        String parkingLot = RabbitMQConfig.parkingLotQueueName(queue);
+        int replayed = 0;
+        while (replayed < limit) {
+            // basicGet không auto-ack: tin chỉ rời parking lot sau khi bản replay đã được broker xác nhận
+            Boolean moved = rabbitTemplate.execute(channel -> {
+                GetResponse response = channel.basicGet(parkingLot, false);
+                if (response == null) {
+                    return false;
+                }
+                long deliveryTag = response.getEnvelope().getDeliveryTag();
+                MessageProperties properties = propertiesConverter.toMessageProperties(
+                        response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+                properties.getHeaders().remove(TieredRetryMessageRecoverer.RETRY_COUNT_HEADER);
+                properties.getHeaders().remove(TieredRetryMessageRecoverer.EXCEPTION_HEADER);
+
+                CorrelationData correlation = new CorrelationData();
+                rabbitTemplate.send("", queue, new Message(response.getBody(), properties), correlation);
+                try {
+                    CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+                    if (!confirm.isAck()) {
+                        channel.basicNack(deliveryTag, false, true);
+                        return null;
+                    }
+                } catch (Exception e) {
+                    channel.basicNack(deliveryTag, false, true);
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+                channel.basicAck(deliveryTag, false);
+                return true;
+            });
+            if (moved == null) {
+                throw new BusinessException("Replay bị dừng sau " + replayed + " tin: broker không xác nhận tin gửi lại.");
+            }
+            if (!moved) {
+                break;
+            }
+            replayed++;
+        }
+        log.info("Replay {} tin từ {} về {}", replayed, parkingLot, queue);
+        return replayed;
+    }
+
+    private List<String> queues() {
+        return RabbitMQConfig.consumedQueues(partitioning, partitions);
+    }
+}
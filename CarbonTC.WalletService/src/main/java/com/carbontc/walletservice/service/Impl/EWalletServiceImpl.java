@@ -9,11 +9,16 @@ import com.carbontc.walletservice.entity.TransactionLog;
 import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.repository.EWalletRepository;
 import com.carbontc.walletservice.repository.TransactionLogRepository;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
 import com.carbontc.walletservice.service.EWalletService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
 import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -31,6 +36,13 @@ public class EWalletServiceImpl implements EWalletService {
 
     private final TransactionLogRepository transactionLogRepository;
 
+    private final BalanceUpdatePublisher balanceUpdatePublisher;
+
+    private final EntityManager entityManager;
+
+    @Value("${wallet-config.balance-update.publish-all-changes:false}")
+    private boolean publishAllChanges;
+
     private EWalletResponse createWalletInternal(String userId, String currency) throws BusinessException {
         if(eWalletRepository.existsByUserId(userId)){
             throw new BusinessException("Người dùng đã tạo ví rồi");
@@ -56,25 +68,20 @@ public class EWalletServiceImpl implements EWalletService {
     @Override
     @Transactional(rollbackFor = BusinessException.class)
     public EWalletResponse deposit(Long walletId, BigDecimal amount) throws BusinessException {
-        EWallet eWallet = eWalletRepository.findById(walletId)
-                .orElseThrow(() -> new BusinessException("Ví không tồn tại"));
-
         if (amount.compareTo(BigDecimal.valueOf(5000)) < 0) {
             throw new BusinessException("Số tiền nạp phải lớn hơn 5.000 VND");
         }
 
-        eWallet.setBalance(eWallet.getBalance().add(amount));
-        eWallet.setUpdatedAt(LocalDateTime.now());
+        applyCredit(walletId, amount);
 
-        EWallet eWalletSaved = eWalletRepository.save(eWallet);
         TransactionLog log = new TransactionLog();
-        log.setWallet(eWalletSaved);
+        log.setWallet(eWalletRepository.getReferenceById(walletId));
         log.setAmount(amount);
         log.setType("DEPOSIT");
         log.setStatus("SUCCESS");
         log.setDescription("Nạp tiền thành công vào ví ID: " + walletId);
         transactionLogRepository.save(log);
-        return mapToResponse(eWalletSaved);
+        return mapToResponse(reloadWallet(walletId));
     }
 
 
@@ -82,33 +89,21 @@ public class EWalletServiceImpl implements EWalletService {
     @Transactional(rollbackFor = BusinessException.class)
     public EWalletResponse withdraw(Long walletId, BigDecimal amount ) throws BusinessException {
 
-        EWallet eWallet = eWalletRepository.findById(walletId)
-                .orElseThrow(() -> new BusinessException("Ví không tồn tại"));
-
         if (amount.compareTo(BigDecimal.valueOf(10000)) < 0) {
             throw new BusinessException("Số tiền rút phải lớn hơn 10.000 VND");
         }
 
-
-        if (eWallet.getBalance().compareTo(amount) < 0) {
-            throw new BusinessException("Số dư không đủ để thực hiện giao dịch. Vui lòng nạp thêm tiền.");
-        }
-
-
-        eWallet.setBalance(eWallet.getBalance().subtract(amount));
-        eWallet.setUpdatedAt(LocalDateTime.now());
-
-        EWallet eWalletSaved = eWalletRepository.save(eWallet);
+        applyDebit(walletId, amount, "Số dư không đủ để thực hiện giao dịch. Vui lòng nạp thêm tiền.");
 
         TransactionLog log = new TransactionLog();
-        log.setWallet(eWalletSaved);
+        log.setWallet(eWalletRepository.getReferenceById(walletId));
         log.setAmount(amount);
         log.setType("WITHDRAW");
         log.setStatus("SUCCESS");
         log.setDescription("Rút tiền thành công khỏi ví ID: " + walletId);
         transactionLogRepository.save(log);
 
-        return mapToResponse(eWalletSaved);
+        return mapToResponse(reloadWallet(walletId));
     }
 
     @Override
@@ -149,30 +144,19 @@ public class EWalletServiceImpl implements EWalletService {
 
     @Override
     @Transactional(rollbackFor = BusinessException.class)
-    public EWalletResponse debit(Long walletId, BigDecimal amount, String description) throws BusinessException {
-
-        EWallet eWallet = eWalletRepository.findById(walletId)
-                .orElseThrow(() -> new BusinessException("Ví không tồn tại"));
+    public void debit(Long walletId, BigDecimal amount, String description) throws BusinessException {
 
-        // CHỈ KIỂM TRA SỐ DƯ
-        if (eWallet.getBalance().compareTo(amount) < 0) {
-            throw new BusinessException("Số dư không đủ để thực hiện giao dịch.");
-        }
-
-        eWallet.setBalance(eWallet.getBalance().subtract(amount));
-        eWallet.setUpdatedAt(LocalDateTime.now());
-        EWallet eWalletSaved = eWalletRepository.save(eWallet);
+        // CHỈ KIỂM TRA SỐ DƯ (ngay trong câu UPDATE)
+        applyDebit(walletId, amount, "Số dư không đủ để thực hiện giao dịch.");
 
         // Ghi log (dùng description được truyền vào)
         TransactionLog log = new TransactionLog();
-        log.setWallet(eWalletSaved);
+        log.setWallet(eWalletRepository.getReferenceById(walletId));
         log.setAmount(amount);
         log.setType("DEBIT");
         log.setStatus("SUCCESS");
         log.setDescription(description);
         transactionLogRepository.save(log);
-
-        return mapToResponse(eWalletSaved);
     }
 
     /**
@@ -180,24 +164,68 @@ public class EWalletServiceImpl implements EWalletService {
      */
     @Override
     @Transactional(rollbackFor = BusinessException.class)
-    public EWalletResponse credit(Long walletId, BigDecimal amount, String description) throws BusinessException {
+    public void credit(Long walletId, BigDecimal amount, String description) throws BusinessException {
 
-        EWallet eWallet = eWalletRepository.findById(walletId)
-                .orElseThrow(() -> new BusinessException("Ví không tồn tại"));
-
-        eWallet.setBalance(eWallet.getBalance().add(amount));
-        eWallet.setUpdatedAt(LocalDateTime.now());
-        EWallet eWalletSaved = eWalletRepository.save(eWallet);
+        applyCredit(walletId, amount);
 
         TransactionLog log = new TransactionLog();
-        log.setWallet(eWalletSaved);
+        log.setWallet(eWalletRepository.getReferenceById(walletId));
         log.setAmount(amount);
         log.setType("CREDIT");
         log.setStatus("SUCCESS");
         log.setDescription(description);
         transactionLogRepository.save(log);
+    }
 
-        return mapToResponse(eWalletSaved);
+    /**
+     * Trừ tiền bằng 1 câu UPDATE có điều kiện (balance >= amount) nên không thể âm
+     * khi nhiều consumer/HTTP cùng trừ một ví. Thành công thì không đọc lại ví (debit/credit
+     * không cần số dư mới); chỉ khi UPDATE không ảnh hưởng dòng nào mới đọc thêm để phân biệt
+     * "ví không tồn tại" và "không đủ số dư".
+     */
+    private void applyDebit(Long walletId, BigDecimal amount, String insufficientMessage) throws BusinessException {
+        int updated = eWalletRepository.debitIfSufficient(walletId, amount, LocalDateTime.now());
+        if (updated == 0) {
+            if (!eWalletRepository.existsById(walletId)) {
+                throw new BusinessException("Ví không tồn tại");
+            }
+            throw new BusinessException(insufficientMessage);
+        }
+        publishIfEnabled(walletId);
+    }
+
+    private void applyCredit(Long walletId, BigDecimal amount) throws BusinessException {
+        int updated = eWalletRepository.creditBalance(walletId, amount, LocalDateTime.now());
+        if (updated == 0) {
+            throw new BusinessException("Ví không tồn tại");
+        }
+        publishIfEnabled(walletId);
+    }
+
+    // Bật publish-all-changes: số dư mới (và version sau UPDATE) được báo qua outbox, các cập nhật liên tiếp sẽ được gộp lại
+    private void publishIfEnabled(Long walletId) throws BusinessException {
+        if (publishAllChanges) {
+            balanceUpdatePublisher.publish(reloadWallet(walletId));
+        }
+    }
+
+    /**
+     * Đọc lại ví sau UPDATE, chỉ khi người gọi cần số dư mới. UPDATE không clear persistence context
+     * (entity khác của người gọi vẫn giữ nguyên), nên nếu chính ví này đã được nạp trước đó
+     * thì refresh riêng nó thay vì trả về bản cũ trong cache.
+     */
+    private EWallet reloadWallet(Long walletId) throws BusinessException {
+        EWallet wallet = eWalletRepository.getReferenceById(walletId);
+        try {
+            if (Hibernate.isInitialized(wallet)) {
+                entityManager.refresh(wallet);
+            } else {
+                Hibernate.initialize(wallet);
+            }
+        } catch (EntityNotFoundException e) {
+            throw new BusinessException("Ví không tồn tại");
+        }
+        return wallet;
     }
 
     // HEPPLER METHOD MAPPER
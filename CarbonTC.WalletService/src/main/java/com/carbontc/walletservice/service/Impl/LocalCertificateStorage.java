@@ -0,0 +1,97 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.service.CertificateStorage;
+import com.carbontc.walletservice.service.CloudinaryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Lưu PDF trên đĩa, định danh theo uniqueHash: {base-dir}/ab/cd/abcd....pdf
+ * (chia 2 cấp thư mục để không dồn hàng triệu file vào một thư mục).
+ * Khi tải, FileSystemResource đọc qua FileChannel và stream ra response theo từng khối,
+ * không cần mạng và không nạp cả file vào heap.
+ * Mỗi replica chỉ thấy file trên đĩa của mình: chạy nhiều replica thì local-dir phải là volume
+ * dùng chung (NFS/EFS...), nếu không chứng nhận render ở replica khác sẽ báo không tìm thấy file.
+ */
+@Service
+@ConditionalOnProperty(prefix = "wallet-config.certificate", name = "storage", havingValue = "local")
+public class LocalCertificateStorage implements CertificateStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalCertificateStorage.class);
+
+    // uniqueHash là UUID; chặn mọi ký tự có thể thoát ra khỏi thư mục gốc
+    private static final Pattern HASH_PATTERN = Pattern.compile("[A-Za-z0-9-]{8,64}");
+
+    private final Path baseDir;
+    private final String downloadUrlPrefix;
+    private final CloudinaryService cloudinaryService;
+
+    public LocalCertificateStorage(CloudinaryService cloudinaryService,
+                                   @Value("${wallet-config.certificate.local-dir:./data/certificates}") String baseDir,
+                                   @Value("${wallet-config.certificate.download-url-prefix:/api/certificates/download/}") String downloadUrlPrefix)
+            throws IOException {
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+        this.downloadUrlPrefix = downloadUrlPrefix;
+        this.cloudinaryService = cloudinaryService;
+        Files.createDirectories(this.baseDir);
+        log.info("Lưu chứng nhận trên đĩa tại {}", this.baseDir);
+    }
+
+    @Override
+    public String store(String uniqueHash, byte[] pdfBytes) throws IOException {
+        Path target = pathOf(uniqueHash);
+        Files.createDirectories(target.getParent());
+
+        // Ghi ra file tạm cùng thư mục rồi rename: người đang tải không bao giờ thấy file ghi dở
+        Path tmp = Files.createTempFile(target.getParent(), uniqueHash, ".tmp");
+        try {
+            Files.write(tmp, pdfBytes);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return downloadUrlPrefix + uniqueHash;
+    }
+
+    @Override
+    public Resource load(Certificate certificate) throws IOException {
+        Path path = pathOf(certificate.getUniqueHash());
+        if (Files.isReadable(path)) {
+            return new FileSystemResource(path);
+        }
+        // Chứng nhận cũ được upload trước khi chuyển sang lưu local
+        String url = certificate.getCertificateUrl();
+        if (url != null && url.startsWith("http")) {
+            return new ByteArrayResource(cloudinaryService.downloadPdf(url));
+        }
+        throw new FileNotFoundException("Không tìm thấy file chứng nhận " + certificate.getUniqueHash());
+    }
+
+    Path pathOf(String uniqueHash) {
+        if (uniqueHash == null || !HASH_PATTERN.matcher(uniqueHash).matches()) {
+            throw new IllegalArgumentException("uniqueHash không hợp lệ: " + uniqueHash);
+        }
+        String key = uniqueHash.toLowerCase();
+        return baseDir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key + ".pdf");
+    }
+}
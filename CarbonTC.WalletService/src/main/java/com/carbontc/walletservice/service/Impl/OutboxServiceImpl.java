@@ -0,0 +1,266 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.entity.OutboxMessage;
+import com.carbontc.walletservice.entity.status.OutboxStatus;
+import com.carbontc.walletservice.repository.OutboxMessageRepository;
+import com.carbontc.walletservice.service.OutboxService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxServiceImpl.class);
+
+    private static final String TYPE_ID_HEADER = "__TypeId__";
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final MessageConverter messageConverter;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${wallet-config.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${wallet-config.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    @Value("${wallet-config.outbox.coalesce-window-ms:300}")
+    private long coalesceWindowMs;
+
+    @Value("${wallet-config.outbox.claim-lease-ms:60000}")
+    private long claimLeaseMs;
+
+    @Value("${wallet-config.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${wallet-config.outbox.retention-days:3}")
+    private int retentionDays;
+
+    @Override
+    @Transactional
+    public void enqueue(String exchange, String routingKey, Object payload) {
+        enqueueCoalesced(exchange, routingKey, null, payload);
+    }
+
+    @Override
+    @Transactional
+    public void enqueueCoalesced(String exchange, String routingKey, String coalesceKey, Object payload) {
+        // Dùng đúng converter của RabbitTemplate để body/__TypeId__ giống hệt khi gửi trực tiếp
+        Message converted = messageConverter.toMessage(payload, new MessageProperties());
+
+        OutboxMessage message = new OutboxMessage();
+        message.setExchange(exchange);
+        message.setRoutingKey(routingKey);
+        message.setCoalesceKey(coalesceKey);
+        message.setPayloadType((String) converted.getMessageProperties().getHeaders().get(TYPE_ID_HEADER));
+        message.setPayload(new String(converted.getBody(), StandardCharsets.UTF_8));
+        message.setStatus(OutboxStatus.PENDING);
+        message.setAttempts(0);
+        message.setCreatedAt(LocalDateTime.now());
+        outboxMessageRepository.save(message);
+    }
+
+    /**
+     * Không giữ transaction (khoá dòng + connection) trong lúc chờ broker:
+     * 1. claim: transaction ngắn khoá 1 batch (SKIP LOCKED), gộp theo coalesceKey, chuyển sang SENDING;
+     * 2. gửi cả batch rồi chờ publisher confirm, ngoài transaction;
+     * 3. mark: transaction ngắn ghi SENT, hoặc trả về PENDING (quá max-attempts thì PARKED).
+     * Relay chết giữa bước 1 và 3 thì tin SENDING được nhận lại sau claim-lease-ms và gửi lại
+     * (consumer khử trùng theo messageId).
+     */
+    @Override
+    public int relayBatch() {
+        Claim claim = transactionTemplate.execute(status -> claimBatch());
+        if (claim == null || claim.batch().isEmpty()) {
+            return claim == null ? 0 : claim.coalesced();
+        }
+        List<OutboxMessage> batch = claim.batch();
+
+        // 1. Gửi cả batch trước, sau đó mới chờ confirm -> 1 round-trip chờ cho cả batch
+        Map<Long, String> failures = new HashMap<>();
+        List<CorrelationData> confirms = new ArrayList<>(batch.size());
+        for (OutboxMessage message : batch) {
+            CorrelationData correlation = new CorrelationData(String.valueOf(message.getId()));
+            try {
+                rabbitTemplate.send(message.getExchange(), message.getRoutingKey(), toAmqpMessage(message), correlation);
+                confirms.add(correlation);
+            } catch (AmqpException e) {
+                failures.put(message.getId(), String.valueOf(e.getMessage()));
+                confirms.add(null);
+            }
+        }
+
+        // 2. Chờ publisher confirm, chỉ tin được broker ack mới chuyển sang SENT
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        List<Long> acked = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxMessage message = batch.get(i);
+            CorrelationData correlation = confirms.get(i);
+            if (correlation == null) {
+                continue;
+            }
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+                if (confirm.isAck()) {
+                    acked.add(message.getId());
+                } else {
+                    failures.put(message.getId(), "nack: " + confirm.getReason());
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                failures.put(message.getId(), "Không nhận được publisher confirm");
+            } catch (InterruptedException e) {
+                // Tin chưa có kết quả giữ SENDING, hết lease sẽ được gửi lại
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // 3. Ghi kết quả
+        transactionTemplate.executeWithoutResult(status -> markOutcome(acked, failures));
+
+        int sent = acked.size();
+        meterRegistry.counter("wallet.outbox.sent").increment(sent);
+        if (sent < batch.size()) {
+            log.warn("Outbox relay: {}/{} tin được broker xác nhận, phần còn lại sẽ gửi lại", sent, batch.size());
+        }
+        // Tin bị gộp cũng tính là đã xử lý để scheduler biết còn tồn hay không
+        return sent + claim.coalesced();
+    }
+
+    private Claim claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxMessage> locked = new ArrayList<>(outboxMessageRepository.lockExpiredClaims(batchSize,
+                now.minusNanos(TimeUnit.MILLISECONDS.toNanos(claimLeaseMs))));
+        if (locked.size() < batchSize) {
+            locked.addAll(outboxMessageRepository.lockPendingBatch(batchSize - locked.size(),
+                    now.minusNanos(TimeUnit.MILLISECONDS.toNanos(coalesceWindowMs))));
+        }
+        if (locked.isEmpty()) {
+            return new Claim(List.of(), 0);
+        }
+        locked.sort(Comparator.comparing(OutboxMessage::getId));
+
+        List<OutboxMessage> batch = coalesce(locked);
+        for (OutboxMessage message : batch) {
+            message.setStatus(OutboxStatus.SENDING);
+            message.setClaimedAt(now);
+        }
+        return new Claim(batch, locked.size() - batch.size());
+    }
+
+    private void markOutcome(List<Long> acked, Map<Long, String> failures) {
+        List<Long> ids = new ArrayList<>(acked);
+        ids.addAll(failures.keySet());
+        if (ids.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (OutboxMessage message : outboxMessageRepository.findAllById(ids)) {
+            if (message.getStatus() != OutboxStatus.SENDING) {
+                continue;
+            }
+            message.setAttempts(message.getAttempts() + 1);
+            String failure = failures.get(message.getId());
+            if (failure == null) {
+                message.setStatus(OutboxStatus.SENT);
+                message.setSentAt(now);
+            } else {
+                markFailed(message, failure);
+            }
+        }
+    }
+
+    /**
+     * Trong batch (đã sắp theo id), với mỗi coalesceKey chỉ giữ tin mới nhất;
+     * các tin cũ hơn được đánh dấu COALESCED và không gửi.
+     */
+    private List<OutboxMessage> coalesce(List<OutboxMessage> locked) {
+        Map<String, OutboxMessage> latestByKey = new HashMap<>();
+        for (OutboxMessage message : locked) {
+            if (message.getCoalesceKey() != null) {
+                latestByKey.put(message.getCoalesceKey(), message);
+            }
+        }
+        if (latestByKey.isEmpty()) {
+            return locked;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxMessage> batch = new ArrayList<>(locked.size());
+        int coalesced = 0;
+        for (OutboxMessage message : locked) {
+            if (message.getCoalesceKey() == null || latestByKey.get(message.getCoalesceKey()) == message) {
+                batch.add(message);
+            } else {
+                message.setStatus(OutboxStatus.COALESCED);
+                message.setSentAt(now);
+                coalesced++;
+            }
+        }
+        meterRegistry.counter("wallet.outbox.coalesced").increment(coalesced);
+        return batch;
+    }
+
+    @Override
+    @Transactional
+    public int purgeSentMessages() {
+        return outboxMessageRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays), 10000);
+    }
+
+    private Message toAmqpMessage(OutboxMessage message) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        // messageId cố định theo dòng outbox để consumer có thể khử trùng khi relay gửi lại
+        properties.setMessageId("outbox-" + message.getId());
+        if (message.getPayloadType() != null) {
+            properties.setHeader(TYPE_ID_HEADER, message.getPayloadType());
+        }
+        return new Message(message.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private void markFailed(OutboxMessage message, String reason) {
+        message.setLastError(reason.length() > OutboxMessage.MAX_ERROR_LENGTH
+                ? reason.substring(0, OutboxMessage.MAX_ERROR_LENGTH) : reason);
+        meterRegistry.counter("wallet.outbox.failed").increment();
+        if (message.getAttempts() >= maxAttempts) {
+            message.setStatus(OutboxStatus.PARKED);
+            meterRegistry.counter("wallet.outbox.parked").increment();
+            log.error("Outbox {} gửi lỗi {} lần, chuyển sang PARKED: {}", message.getId(), message.getAttempts(), reason);
+        } else {
+            message.setStatus(OutboxStatus.PENDING);
+        }
+    }
+
+    private record Claim(List<OutboxMessage> batch, int coalesced) {
+    }
+}
@@ -1,7 +1,5 @@
 package com.carbontc.walletservice.service.Impl;
 
-import com.carbontc.walletservice.config.RabbitMQConfig;
-import com.carbontc.walletservice.dto.event.BalanceUpdateCommand;
 import com.carbontc.walletservice.entity.EWallet;
 import com.carbontc.walletservice.entity.Payment;
 import com.carbontc.walletservice.entity.TransactionLog;
@@ -9,11 +7,11 @@ import com.carbontc.walletservice.exception.BusinessException;
 import com.carbontc.walletservice.repository.EWalletRepository;
 import com.carbontc.walletservice.repository.PaymentRepository;
 import com.carbontc.walletservice.repository.TransactionLogRepository;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
 import com.carbontc.walletservice.service.PaymentService;
 import com.carbontc.walletservice.service.VNPayService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,7 +27,7 @@ public class PaymentServiceImpl implements PaymentService {
     private final EWalletRepository eWalletRepository;
     private final TransactionLogRepository transactionLogRepository;
     private final VNPayService vnPayService;
-    private final RabbitTemplate rabbitTemplate;
+    private final BalanceUpdatePublisher balanceUpdatePublisher;
     private final PaymentRepository paymentRepository;
 
     @Override
@@ -101,21 +99,15 @@ public class PaymentServiceImpl implements PaymentService {
             EWallet eWallet = eWalletRepository.findById(log.getWallet().getWalletId())
                     .orElseThrow(() -> new BusinessException("Ví không tồn tại"));
             eWallet.setBalance(eWallet.getBalance().add(log.getAmount()));
-            EWallet savedWallet = eWalletRepository.save(eWallet);
+            // Flush ngay để version (@Version) trong BalanceUpdateCommand là giá trị sau khi ghi
+            EWallet savedWallet = eWalletRepository.saveAndFlush(eWallet);
 
             log.setStatus("SUCCESS");
             log.setDescription("Nạp tiền thành công qua VNPay");
             transactionLogRepository.save(log);
 
-            BalanceUpdateCommand event = new BalanceUpdateCommand();
-            event.setUserId(savedWallet.getUserId());
-            event.setNewTotalBalance(savedWallet.getBalance()); // Gửi số dư MỚI NHẤT
-
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.BALANCE_EXCHANGE,
-                    RabbitMQConfig.BALANCE_UPDATE_ROUTING_KEY,
-                    event
-            );
+            // Ghi vào outbox: chỉ gửi khi nạp tiền commit thành công
+            balanceUpdatePublisher.publish(savedWallet);
 
             Payment payment = new Payment();
             payment.setWallet(eWallet); // Gán với EWallet
@@ -9,15 +9,14 @@ import com.carbontc.walletservice.repository.EWalletRepository;
 import com.carbontc.walletservice.repository.TransactionFeeRepository;
 import com.carbontc.walletservice.service.EWalletService;
 import com.carbontc.walletservice.service.TransactionFeeService;
-import jakarta.persistence.EntityNotFoundException;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.UUID;
 
 @Slf4j
 @Service
@@ -30,6 +29,8 @@ public class TransactionFeeServiceImpl implements TransactionFeeService {
 
     private final EWalletService eWalletService;
 
+    private final TransactionRetryExecutor transactionRetryExecutor;
+
     @Override
     public void recordFee(String transactionId, BigDecimal feeAmount, FeeType feeType) {
         TransactionFee transactionFee = new TransactionFee();
@@ -41,32 +42,32 @@ public class TransactionFeeServiceImpl implements TransactionFeeService {
         transactionFeeRepository.save(transactionFee);
     }
 
+    /**
+     * Nhận phí, cộng vào ví admin và ghi log trong cùng 1 transaction: lỗi ở bất kỳ bước nào
+     * thì phí quay về PENDING_WITHDRAWAL, không có chuyện tiền đã vào ví mà phí chưa đánh dấu.
+     */
     @Override
     public BigDecimal withdrawPendingFeeToAdmin(String adminId) throws BusinessException {
+        return transactionRetryExecutor.execute("withdrawPendingFee", () -> doWithdrawPendingFee(adminId));
+    }
 
+    private BigDecimal doWithdrawPendingFee(String adminId) throws BusinessException {
         EWallet adminWallet = eWalletRepository.findByUserId(adminId)
                 .orElseThrow(() -> new BusinessException("Không tìm thấy ví admin"));
 
-
-        List<TransactionFee> transactionFees = transactionFeeRepository.findByFeeStatus(FeeStatus.PENDING_WITHDRAWAL);
-
-        if (transactionFees.isEmpty()) {
+        String withdrawalId = UUID.randomUUID().toString();
+        int claimed = transactionFeeRepository.claimPendingFees(withdrawalId, LocalDateTime.now());
+        if (claimed == 0) {
             log.info("Không có phí nào chờ rút");
             return BigDecimal.ZERO;
         }
 
-        BigDecimal totalFee = transactionFees.stream()
-                .map(TransactionFee::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal totalFee = transactionFeeRepository.sumByWithdrawalId(withdrawalId);
 
+        // deposit tham gia transaction hiện tại (REQUIRED)
         eWalletService.deposit(adminWallet.getWalletId(), totalFee);
 
-        for (TransactionFee transactionFee : transactionFees) {
-            transactionFee.setFeeStatus(FeeStatus.WITHDRAWN);
-        }
-        transactionFeeRepository.saveAll(transactionFees);
-        log.info("Đã rút thành công tiền về ví admin",totalFee,adminId);
-
+        log.info("Đã rút {} khoản phí ({} VND) về ví admin {} - lượt rút {}", claimed, totalFee, adminId, withdrawalId);
         return totalFee;
     }
 }
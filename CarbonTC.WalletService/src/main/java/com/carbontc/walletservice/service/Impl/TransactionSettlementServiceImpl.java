@@ -0,0 +1,77 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import com.carbontc.walletservice.dto.request.CreditTransferRequestForConsumer;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.entity.status.FeeType;
+import com.carbontc.walletservice.entity.status.TransferStatus;
+import com.carbontc.walletservice.entity.status.TransferType;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.ProcessedEventRepository;
+import com.carbontc.walletservice.service.CarbonWalletsService;
+import com.carbontc.walletservice.service.CertificateService;
+import com.carbontc.walletservice.service.EWalletService;
+import com.carbontc.walletservice.service.TransactionFeeService;
+import com.carbontc.walletservice.service.TransactionSettlementService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Service
+@RequiredArgsConstructor
+public class TransactionSettlementServiceImpl implements TransactionSettlementService {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionSettlementServiceImpl.class);
+
+    private final EWalletService eWalletService;
+    private final CarbonWalletsService carbonWalletsService;
+    private final TransactionFeeService transactionFeeService;
+    private final CertificateService certificateService;
+    private final ProcessedEventRepository processedEventRepository;
+
+    @Override
+    public Certificate settle(TransactionCreatedEvent event) throws BusinessException {
+        // 0. Đánh dấu đã xử lý ngay đầu transaction - rollback thì dấu này cũng mất
+        if (processedEventRepository.markProcessed(event.getTransactionId(), "TRANSACTION_CREATED", LocalDateTime.now()) == 0) {
+            return null;
+        }
+
+        // 1. Tìm ví
+        EWallet buyerEwallet = eWalletService.findWalletByUserId(event.getBuyerUserId());
+        EWallet sellerEwallet = eWalletService.findWalletByUserId(event.getSellerUserId());
+
+        // 2. Lấy phí từ event (Logic này đúng nếu Marketplace tính phí)
+        BigDecimal platformFee = event.getPlatformFee();
+        BigDecimal amountSellerReceives = event.getMoneyAmount().subtract(platformFee);
+
+        log.info("Giao dịch {}: Tổng tiền {}, Phí {}, Người bán nhận {}",
+                event.getTransactionId(), event.getMoneyAmount(), platformFee, amountSellerReceives);
+
+        String debitDesc = "Thanh toán cho giao dịch " + event.getTransactionId();
+        eWalletService.debit(buyerEwallet.getWalletId(), event.getMoneyAmount(), debitDesc);
+
+        String creditDesc = "Nhận tiền từ giao dịch " + event.getTransactionId();
+        eWalletService.credit(sellerEwallet.getWalletId(), amountSellerReceives, creditDesc);
+
+        // 5. Chuyển tín chỉ
+        CreditTransferRequestForConsumer transferRequest = new CreditTransferRequestForConsumer();
+        transferRequest.setToUserId(event.getBuyerUserId());
+        transferRequest.setAmount(event.getCreditAmount());
+        transferRequest.setTransferType(TransferType.SALE);
+        transferRequest.setReferenceId(event.getTransactionId());
+        transferRequest.setTotalPrice(event.getMoneyAmount());
+        transferRequest.setStatus(TransferStatus.COMPLETED);
+        carbonWalletsService.transferCredits(event.getSellerUserId(), transferRequest);
+
+        // 6. Ghi nhận phí giao dịch
+        transactionFeeService.recordFee(event.getTransactionId(), platformFee, FeeType.PLATFORM_FEE);
+
+        // 7. Ghi metadata chứng nhận, PDF render sau khi commit (không giữ khoá ví trong lúc render/upload)
+        return certificateService.requestCertificate(event.getTransactionId(), event.getBuyerUserId(), event.getCreditAmount());
+    }
+}
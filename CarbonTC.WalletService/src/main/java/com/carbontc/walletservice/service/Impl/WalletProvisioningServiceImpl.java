@@ -0,0 +1,43 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.WalletProvisioningRepository;
+import com.carbontc.walletservice.service.WalletProvisioningService;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+@Service
+@RequiredArgsConstructor
+public class WalletProvisioningServiceImpl implements WalletProvisioningService {
+
+    private static final String DEFAULT_CURRENCY = "VND";
+
+    private final WalletProvisioningRepository walletProvisioningRepository;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+
+    @Override
+    public int provisionWallets(Collection<String> userIds) throws BusinessException {
+        // Sắp xếp để các batch chạy song song khoá index theo cùng thứ tự, tránh deadlock
+        List<String> distinct = userIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+        if (distinct.isEmpty()) {
+            return 0;
+        }
+
+        return transactionRetryExecutor.execute("provisionWallets", () -> {
+            LocalDateTime now = LocalDateTime.now();
+            walletProvisioningRepository.insertEWalletsIgnoringExisting(distinct, DEFAULT_CURRENCY, now);
+            walletProvisioningRepository.insertCarbonWalletsIgnoringExisting(distinct, now);
+            return distinct.size();
+        });
+    }
+}
@@ -0,0 +1,25 @@
+package com.carbontc.walletservice.service;
+
+public interface OutboxService {
+
+    /**
+     * Ghi tin nhắn vào outbox trong transaction hiện tại (hoặc transaction mới nếu chưa có).
+     * Tin chỉ được gửi lên RabbitMQ sau khi transaction commit.
+     */
+    void enqueue(String exchange, String routingKey, Object payload);
+
+    /**
+     * Như enqueue, nhưng các tin PENDING cùng coalesceKey chỉ gửi tin mới nhất
+     * (dùng cho tin mang trạng thái toàn phần, ví dụ số dư ví). Tin được giữ lại
+     * tối đa coalesce-window-ms để gom các cập nhật liên tiếp.
+     */
+    void enqueueCoalesced(String exchange, String routingKey, String coalesceKey, Object payload);
+
+    /**
+     * Gửi 1 batch tin PENDING lên broker, chờ publisher confirm rồi đánh dấu SENT.
+     * @return số tin đã được broker xác nhận.
+     */
+    int relayBatch();
+
+    int purgeSentMessages();
+}
@@ -0,0 +1,16 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.exception.BusinessException;
+
+public interface TransactionSettlementService {
+
+    /**
+     * Thực hiện các bước tiền/tín chỉ/phí/chứng nhận của một giao dịch mua bán
+     * trong transaction hiện tại (caller chịu trách nhiệm mở transaction).
+     * Chứng nhận chỉ được ghi metadata (PENDING), PDF được render bất đồng bộ.
+     * @return chứng nhận đã tạo, hoặc null nếu giao dịch đã được xử lý trước đó.
+     */
+    Certificate settle(TransactionCreatedEvent event) throws BusinessException;
+}
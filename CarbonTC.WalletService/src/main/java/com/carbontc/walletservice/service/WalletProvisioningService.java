@@ -0,0 +1,15 @@
+package com.carbontc.walletservice.service;
+
+import com.carbontc.walletservice.exception.BusinessException;
+
+import java.util.Collection;
+
+public interface WalletProvisioningService {
+
+    /**
+     * Đảm bảo mỗi user có đủ ví tiền (EWallet) và ví Carbon, tạo cả 2 trong cùng 1 transaction.
+     * User đã có ví thì bỏ qua (idempotent nhờ unique key), không cần kiểm tra trước.
+     * @return số user (không trùng) đã xử lý.
+     */
+    int provisionWallets(Collection<String> userIds) throws BusinessException;
+}
@@ -0,0 +1,74 @@
+package com.carbontc.walletservice.util;
+
+import com.carbontc.walletservice.dto.response.CertificateResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache trong bộ nhớ cho chứng nhận vừa phát hành - người mua và kiểm toán tải lại rất nhiều
+ * lần ngay sau giao dịch.
+ * - bytes: PDF theo SHA-256 nội dung (Certificate.contentSha256), giới hạn theo tổng số MB
+ *   (Caffeine W-TinyLFU, tính trọng số theo độ dài). Render lại ra file mới thì hash mới,
+ *   nên bản cũ ở mọi replica tự hết được dùng mà không cần invalidate.
+ * - lookups: kết quả getCertificateByTransactionId, giới hạn theo số phần tử
+ * Hit/miss/eviction xem qua /actuator/metrics/cache.gets, cache.evictions, cache.eviction.weight
+ * với tag cache=certificate.bytes hoặc certificate.lookups.
+ */
+@Component
+public class CertificateCache {
+
+    private final Cache<String, byte[]> bytes;
+    private final Cache<String, CertificateResponse> lookups;
+    private final int maxEntryBytes;
+
+    public CertificateCache(MeterRegistry meterRegistry,
+                            @Value("${wallet-config.certificate.cache.max-size-mb:64}") long maxSizeMb,
+                            @Value("${wallet-config.certificate.cache.max-entry-kb:1024}") int maxEntryKb,
+                            @Value("${wallet-config.certificate.cache.lookup-max-size:10000}") long lookupMaxSize) {
+        this.maxEntryBytes = maxEntryKb * 1024;
+        this.bytes = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                .weigher((String hash, byte[] pdf) -> pdf.length)
+                .recordStats()
+                .build();
+        this.lookups = Caffeine.newBuilder()
+                .maximumSize(lookupMaxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, bytes, "certificate.bytes");
+        CaffeineCacheMetrics.monitor(meterRegistry, lookups, "certificate.lookups");
+    }
+
+    public byte[] getBytes(String contentSha256) {
+        return contentSha256 != null ? bytes.getIfPresent(contentSha256) : null;
+    }
+
+    /**
+     * Bỏ qua file quá lớn để một file không đẩy hết các file khác ra khỏi cache.
+     */
+    public void putBytes(String contentSha256, byte[] pdfBytes) {
+        if (contentSha256 != null && pdfBytes != null && pdfBytes.length <= maxEntryBytes) {
+            bytes.put(contentSha256, pdfBytes);
+        }
+    }
+
+    public boolean isCacheable(long contentLength) {
+        return contentLength >= 0 && contentLength <= maxEntryBytes;
+    }
+
+    public CertificateResponse getLookup(String transactionId) {
+        return lookups.getIfPresent(transactionId);
+    }
+
+    public void putLookup(String transactionId, CertificateResponse response) {
+        lookups.put(transactionId, response);
+    }
+
+    public void evictLookup(String transactionId) {
+        lookups.invalidate(transactionId);
+    }
+}
@@ -0,0 +1,196 @@
+package com.carbontc.walletservice.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index trong bộ nhớ của mọi uniqueHash đã phát hành, để xác minh chứng nhận không cần hỏi DB.
+ * uniqueHash là UUID nên lưu gọn thành 2 long + hạn dùng (epoch giây) trong bảng băm địa chỉ mở
+ * (~40 byte/chứng nhận, so với hơn 100 byte nếu để trong HashMap<String, ...>).
+ * - table: bảng bất biến, đọc không khoá; compact() dựng bảng mới rồi thay bằng 1 phép gán volatile
+ * - recent: chứng nhận mới thêm từ lúc compact gần nhất
+ */
+@Component
+public class CertificateHashIndex {
+
+    /** Không tìm thấy trong index. */
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+    /** Chứng nhận không có hạn dùng. */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final double LOAD_FACTOR = 0.6;
+
+    private volatile Table table = Table.build(new long[0], new long[0], new long[0], 0);
+    private final Map<UUID, Long> recent = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public CertificateHashIndex(MeterRegistry meterRegistry) {
+        Gauge.builder("wallet.certificates.verify.index.size", this, CertificateHashIndex::size)
+                .description("Số uniqueHash đang nằm trong index xác minh")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return hạn dùng (epoch giây), NO_EXPIRY, hoặc NOT_FOUND.
+     */
+    public long lookup(UUID hash) {
+        Long expiry = recent.get(hash);
+        if (expiry != null) {
+            return expiry;
+        }
+        return table.get(hash.getMostSignificantBits(), hash.getLeastSignificantBits());
+    }
+
+    public void add(String uniqueHash, LocalDateTime expiryDate) {
+        UUID hash = parse(uniqueHash);
+        if (hash == null) {
+            return;
+        }
+        long expiry = expiryDate == null ? NO_EXPIRY : expiryDate.atZone(ZoneId.systemDefault()).toEpochSecond();
+        // Lần nạp bổ sung đọc lại cả khoảng overlap: phần tử đã có thì bỏ qua
+        if (lookup(hash) != expiry) {
+            recent.put(hash, expiry);
+        }
+    }
+
+    public int pendingSize() {
+        return recent.size();
+    }
+
+    public long size() {
+        return (long) table.size + recent.size();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * Gộp recent vào một bảng mới. Chỉ luồng nạp index gọi; người đọc vẫn thấy đủ dữ liệu
+     * trong suốt quá trình vì phần tử chỉ bị xoá khỏi recent sau khi đã nằm trong bảng mới.
+     */
+    public synchronized void compact() {
+        Map<UUID, Long> folded = Map.copyOf(recent);
+        if (folded.isEmpty()) {
+            return;
+        }
+        Table current = table;
+        int maxSize = current.size + folded.size();
+        long[] hi = new long[maxSize];
+        long[] lo = new long[maxSize];
+        long[] expiry = new long[maxSize];
+        int n = current.copyTo(hi, lo, expiry);
+        for (Map.Entry<UUID, Long> entry : folded.entrySet()) {
+            hi[n] = entry.getKey().getMostSignificantBits();
+            lo[n] = entry.getKey().getLeastSignificantBits();
+            expiry[n] = entry.getValue();
+            n++;
+        }
+        table = Table.build(hi, lo, expiry, n);
+        // Chỉ xoá đúng cặp đã gộp: phần tử được add lại với hạn dùng khác trong lúc compact vẫn ở lại recent
+        folded.forEach((hash, foldedExpiry) -> recent.remove(hash, foldedExpiry));
+    }
+
+    /**
+     * Chỉ nhận UUID dạng chuẩn 36 ký tự (không phân biệt hoa thường); chuỗi khác chắc chắn không tồn tại.
+     */
+    public static UUID parse(String uniqueHash) {
+        if (uniqueHash == null || uniqueHash.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(uniqueHash);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Table {
+        final long[] hi;
+        final long[] lo;
+        final long[] expiry;
+        final boolean[] used;
+        final int mask;
+        final int size;
+
+        private Table(int capacity) {
+            hi = new long[capacity];
+            lo = new long[capacity];
+            expiry = new long[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        private Table(Table slots, int size) {
+            hi = slots.hi;
+            lo = slots.lo;
+            expiry = slots.expiry;
+            used = slots.used;
+            mask = slots.mask;
+            this.size = size;
+        }
+
+        static Table build(long[] hi, long[] lo, long[] expiry, int n) {
+            int capacity = Integer.highestOneBit(Math.max(16, (int) Math.ceil(n / LOAD_FACTOR)) - 1) << 1;
+            Table slots = new Table(capacity);
+            int size = 0;
+            for (int i = 0; i < n; i++) {
+                int slot = slots.find(hi[i], lo[i]);
+                if (!slots.used[slot]) {
+                    slots.used[slot] = true;
+                    slots.hi[slot] = hi[i];
+                    slots.lo[slot] = lo[i];
+                    size++;
+                }
+                slots.expiry[slot] = expiry[i];
+            }
+            return new Table(slots, size);
+        }
+
+        long get(long keyHi, long keyLo) {
+            int slot = find(keyHi, keyLo);
+            return used[slot] ? expiry[slot] : NOT_FOUND;
+        }
+
+        int copyTo(long[] toHi, long[] toLo, long[] toExpiry) {
+            int n = 0;
+            for (int slot = 0; slot <= mask; slot++) {
+                if (used[slot]) {
+                    toHi[n] = hi[slot];
+                    toLo[n] = lo[slot];
+                    toExpiry[n] = expiry[slot];
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        // Dò tuyến tính: trả về ô chứa khoá hoặc ô trống đầu tiên
+        private int find(long keyHi, long keyLo) {
+            int slot = mix(keyHi ^ keyLo) & mask;
+            while (used[slot] && (hi[slot] != keyHi || lo[slot] != keyLo)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.carbontc.walletservice.util;
+
+import com.carbontc.walletservice.entity.Certificate;
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.colors.DeviceRgb;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Canvas;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.borders.Border;
+import com.itextpdf.layout.element.*;
+import com.itextpdf.layout.properties.HorizontalAlignment;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import com.itextpdf.layout.renderer.DrawContext;
+import com.itextpdf.layout.renderer.IRenderer;
+import com.itextpdf.layout.renderer.ParagraphRenderer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Vẽ PDF chứng nhận. Font và logo chỉ đọc 1 lần lúc khởi động rồi dùng lại cho mọi lần render
+ * (FontProgram/ImageData chỉ đọc, dùng chung giữa các thread được); PdfFont gắn với từng
+ * PdfDocument nên vẫn tạo mới cho mỗi chứng nhận.
+ * Chế độ template (wallet-config.certificate.render-mode=template): khung tĩnh được vẽ 1 lần,
+ * mỗi chứng nhận chỉ mở lại PDF khung và điền 6 giá trị vào đúng vị trí.
+ */
+@Component
+public class CertificatePdfRenderer {
+
+    private static final Logger log = LoggerFactory.getLogger(CertificatePdfRenderer.class);
+
+    private static final String REGULAR_FONT = "classpath:fonts/NotoSans-Italic-VariableFont_wdth,wght.ttf";
+    private static final String BOLD_FONT = "classpath:fonts/NotoSans-VariableFont_wdth,wght.ttf";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private static final List<String> FIELD_LABELS = List.of(
+            "Mã giao dịch:", "Người sở hữu:", "Số lượng tín chỉ:", "Ngày phát hành:", "Mã xác thực:", "Số serial:");
+    private static final float VALUE_FONT_SIZE = 11;
+    private static final float AREA_SLACK = 8;
+    // Giữ chỗ 1 dòng cho ô giá trị trong template
+    private static final String TEMPLATE_PLACEHOLDER = "\u00A0";
+
+    private final ResourceLoader resourceLoader;
+    private final String logoLocation;
+    private final boolean templateMode;
+
+    private FontProgram regularFontProgram;
+    private FontProgram boldFontProgram;
+    private ImageData logoImage;
+
+    // Chế độ template: PDF khung đã vẽ sẵn + vị trí của từng ô giá trị trên trang 1
+    private byte[] templateBytes;
+    private Rectangle[] fieldAreas;
+
+    public CertificatePdfRenderer(ResourceLoader resourceLoader,
+                                  @Value("${wallet-config.certificate.logo-location:}") String logoLocation,
+                                  @Value("${wallet-config.certificate.render-mode:layout}") String renderMode) {
+        this.resourceLoader = resourceLoader;
+        this.logoLocation = logoLocation;
+        this.templateMode = "template".equalsIgnoreCase(renderMode);
+    }
+
+    @PostConstruct
+    public void loadAssets() {
+        try {
+            regularFontProgram = FontProgramFactory.createFont(readBytes(REGULAR_FONT));
+            boldFontProgram = FontProgramFactory.createFont(readBytes(BOLD_FONT));
+            log.info("Font tiếng Việt loaded successfully");
+        } catch (IOException e) {
+            log.warn("Không load được font, dùng mặc định: {}", e.getMessage());
+        }
+
+        logoImage = loadLogo();
+
+        if (templateMode) {
+            buildTemplate();
+        }
+    }
+
+    /**
+     * @return nội dung PDF, hoặc null nếu lỗi.
+     */
+    public byte[] render(Certificate cert) {
+        try {
+            return templateBytes != null ? stampTemplate(cert) : renderLayout(cert);
+        } catch (Exception e) {
+            log.error("Lỗi khi tạo PDF bytes cho cert hash {}: {}",
+                    cert.getUniqueHash(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Dựng toàn bộ layout cho từng chứng nhận
+    private byte[] renderLayout(Certificate cert) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * 1024);
+        PdfDocument pdf = new PdfDocument(new PdfWriter(baos));
+        Document document = new Document(pdf);
+        PdfFont font = createFont(regularFontProgram, StandardFonts.HELVETICA);
+        PdfFont fontBold = createFont(boldFontProgram, StandardFonts.HELVETICA_BOLD);
+        layout(document, font, fontBold, fieldValues(cert), null);
+        document.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Vẽ khung 1 lần (giá trị để trống) và ghi lại vị trí các ô giá trị.
+     * Lỗi thì quay về dựng layout cho từng chứng nhận.
+     */
+    private void buildTemplate() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * 1024);
+            PdfDocument pdf = new PdfDocument(new PdfWriter(baos));
+            Document document = new Document(pdf);
+            PdfFont font = createFont(regularFontProgram, StandardFonts.HELVETICA);
+            PdfFont fontBold = createFont(boldFontProgram, StandardFonts.HELVETICA_BOLD);
+            Rectangle[] areas = new Rectangle[FIELD_LABELS.size()];
+            layout(document, font, fontBold, Collections.nCopies(FIELD_LABELS.size(), TEMPLATE_PLACEHOLDER), areas);
+            document.close();
+
+            for (Rectangle area : areas) {
+                if (area == null) {
+                    throw new IllegalStateException("Không xác định được vị trí ô giá trị trong template");
+                }
+            }
+            fieldAreas = areas;
+            templateBytes = baos.toByteArray();
+            log.info("Đã dựng template chứng nhận ({} bytes)", templateBytes.length);
+        } catch (Exception e) {
+            log.warn("Không dựng được template chứng nhận, dùng chế độ layout: {}", e.getMessage());
+        }
+    }
+
+    // Mở template và chỉ điền 6 giá trị vào đúng vị trí đã ghi lại
+    private byte[] stampTemplate(Certificate cert) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(templateBytes.length + 8 * 1024);
+        PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(templateBytes)), new PdfWriter(baos));
+        PdfFont font = createFont(regularFontProgram, StandardFonts.HELVETICA);
+        PdfPage page = pdf.getFirstPage();
+        List<String> values = fieldValues(cert);
+        for (int i = 0; i < values.size(); i++) {
+            Rectangle area = fieldAreas[i];
+            String value = values.get(i);
+            // Giá trị dài hơn ô thì thu nhỏ cỡ chữ để vẫn nằm trên 1 dòng như khung đã vẽ
+            float width = font.getWidth(value, VALUE_FONT_SIZE);
+            float size = width > area.getWidth() ? VALUE_FONT_SIZE * area.getWidth() / width : VALUE_FONT_SIZE;
+            try (Canvas canvas = new Canvas(page, area)) {
+                // Vùng đã ghi lại không gồm margin của đoạn văn
+                canvas.add(valueParagraph(value, font, size).setMargin(0));
+            }
+        }
+        pdf.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Layout chung cho cả 2 chế độ. Khi fieldAreas khác null thì ghi lại vị trí của
+     * đoạn văn chứa từng giá trị (để stamp sau này).
+     */
+    private void layout(Document document, PdfFont font, PdfFont fontBold, List<String> values, Rectangle[] fieldAreas) {
+        document.setFont(font);
+
+        if (logoImage != null) {
+            Image logo = new Image(logoImage);
+            logo.setWidth(80);
+            logo.setFixedPosition(50, 750); // Vị trí góc trên bên trái
+            document.add(logo);
+        }
+
+        document.add(new Paragraph("\n"));
+
+        Paragraph title = new Paragraph("GIẤY CHỨNG NHẬN")
+                .setFont(fontBold).setFontSize(24).setTextAlignment(TextAlignment.CENTER)
+                .setBold().setFontColor(ColorConstants.DARK_GRAY)
+                .setMarginTop(50);
+        document.add(title);
+
+        Paragraph subtitle = new Paragraph("BÙ ĐẮP CARBON")
+                .setFont(fontBold).setFontSize(20).setTextAlignment(TextAlignment.CENTER)
+                .setBold().setFontColor(new DeviceRgb(34, 139, 34));
+        document.add(subtitle);
+
+        Table table = new Table(new float[]{200f, 300f});
+        for (int i = 0; i < FIELD_LABELS.size(); i++) {
+            Paragraph value = valueParagraph(values.get(i), font, VALUE_FONT_SIZE);
+            if (fieldAreas != null) {
+                value.setNextRenderer(new FieldCapturingRenderer(value, fieldAreas, i));
+            }
+            addTableRow(table, FIELD_LABELS.get(i), value, fontBold);
+        }
+        document.add(table);
+
+        document.add(new Paragraph("\n"));
+
+        Table signatureTable = new Table(1);
+        signatureTable.setWidth(UnitValue.createPercentValue(50)); // Chiếm 50% chiều rộng trang
+        signatureTable.setHorizontalAlignment(HorizontalAlignment.RIGHT); // Đẩy bảng sang phải
+
+        // Cell chứa chữ ký
+        Cell issuerCell = new Cell()
+                .add(new Paragraph("Người đại diện")
+                        .setFont(fontBold).setBold().setTextAlignment(TextAlignment.CENTER))
+                .add(new Paragraph("\n\n\n"))
+                .add(new Paragraph("_____________________")
+                        .setTextAlignment(TextAlignment.CENTER))
+                .add(new Paragraph("Carbon Trading Company")
+                        .setFont(font).setFontSize(10).setTextAlignment(TextAlignment.CENTER))
+                .setBorder(Border.NO_BORDER); // Bỏ viền
+
+        signatureTable.addCell(issuerCell);
+        document.add(signatureTable);
+
+        Paragraph commitment = new Paragraph(
+                "Chứng nhận này xác nhận rằng người sở hữu đã đóng góp vào việc " +
+                        "bảo vệ môi trường thông qua việc bù đắp lượng khí thải carbon tương ứng. " +
+                        "Chứng nhận được phát hành bởi Carbon Trading Company và có giá trị pháp lý.")
+                .setFont(font)
+                .setFontSize(11)
+                .setTextAlignment(TextAlignment.JUSTIFIED)
+                .setItalic()
+                .setMarginTop(20)
+                .setMarginBottom(30)
+                .setFontColor(ColorConstants.DARK_GRAY);
+        document.add(commitment);
+    }
+
+    private static List<String> fieldValues(Certificate cert) {
+        return List.of(
+                cert.getTransactionId(),
+                cert.getBuyerId(),
+                cert.getCreditAmount() + " kg CO₂",
+                cert.getIssuedAt().format(DATE_FORMATTER),
+                cert.getUniqueHash(),
+                cert.getCertificateNumber());
+    }
+
+    private static Paragraph valueParagraph(String value, PdfFont font, float fontSize) {
+        return new Paragraph(value)
+                .setFont(font)
+                .setFontSize(fontSize);
+    }
+
+    // PdfFont giữ trạng thái subset theo từng document, không dùng chung được
+    private static PdfFont createFont(FontProgram program, String standardFallback) throws IOException {
+        if (program != null) {
+            return PdfFontFactory.createFont(program, PdfEncodings.IDENTITY_H);
+        }
+        return PdfFontFactory.createFont(standardFallback);
+    }
+
+    private void addTableRow(Table table, String label, Paragraph value, PdfFont fontBold) {
+        Cell labelCell = new Cell()
+                .add(new Paragraph(label)
+                        .setFont(fontBold)
+                        .setBold()
+                        .setFontSize(11))
+                .setBorder(Border.NO_BORDER)
+                .setPaddingBottom(8);
+
+        Cell valueCell = new Cell()
+                .add(value)
+                .setBorder(Border.NO_BORDER)
+                .setPaddingBottom(8);
+
+        table.addCell(labelCell);
+        table.addCell(valueCell);
+    }
+
+    /**
+     * Logo chỉ đọc từ classpath:/file: (không tải qua mạng lúc khởi động).
+     * Không cấu hình thì vẽ chứng nhận không có logo; đã cấu hình mà thiếu/hỏng file thì dừng khởi động.
+     */
+    private ImageData loadLogo() {
+        if (logoLocation.isBlank()) {
+            log.info("Chưa cấu hình wallet-config.certificate.logo-location, chứng nhận không có logo");
+            return null;
+        }
+        if (!logoLocation.startsWith("classpath:") && !logoLocation.startsWith("file:")) {
+            throw new IllegalStateException("wallet-config.certificate.logo-location phải là classpath: hoặc file:, nhận được: " + logoLocation);
+        }
+        Resource logo = resourceLoader.getResource(logoLocation);
+        if (!logo.exists()) {
+            throw new IllegalStateException("Không tìm thấy logo chứng nhận tại " + logoLocation);
+        }
+        try {
+            return ImageDataFactory.create(readBytes(logoLocation));
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Không đọc được logo chứng nhận tại " + logoLocation, e);
+        }
+    }
+
+    private byte[] readBytes(String location) throws IOException {
+        try (InputStream in = resourceLoader.getResource(location).getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Ghi lại vùng đã vẽ của đoạn văn giá trị thứ index khi dựng template
+    private static class FieldCapturingRenderer extends ParagraphRenderer {
+        private final Rectangle[] fieldAreas;
+        private final int index;
+
+        FieldCapturingRenderer(Paragraph paragraph, Rectangle[] fieldAreas, int index) {
+            super(paragraph);
+            this.fieldAreas = fieldAreas;
+            this.index = index;
+        }
+
+        @Override
+        public void draw(DrawContext drawContext) {
+            super.draw(drawContext);
+            // Nới thêm phía dưới (không làm dịch chữ vì Canvas căn từ trên xuống) để khỏi hụt do làm tròn
+            Rectangle area = getOccupiedAreaBBox();
+            fieldAreas[index] = new Rectangle(area.getX(), area.getY() - AREA_SLACK, area.getWidth(), area.getHeight() + AREA_SLACK);
+        }
+
+        @Override
+        public IRenderer getNextRenderer() {
+            return new FieldCapturingRenderer((Paragraph) modelElement, fieldAreas, index);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.carbontc.walletservice.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Sinh số serial chứng nhận kiểu Snowflake, không khoá:
+ * 41 bit mili giây kể từ 2024-01-01 | 10 bit node id | 12 bit bộ đếm trong mili giây.
+ * Trạng thái (mili giây, bộ đếm) nằm trong một AtomicLong và chỉ tăng: bộ đếm tràn thì mượn
+ * mili giây kế tiếp, đồng hồ lùi thì tiếp tục từ giá trị cũ, nên không trùng giữa các luồng.
+ * Giữa các replica, mỗi instance cần một node id riêng (WALLET_NODE_ID); thiếu thì dừng khởi động,
+ * trừ khi bật allow-hostname-node-id (chỉ dùng khi chạy 1 instance/dev).
+ */
+@Component
+public class CertificateSerialGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(CertificateSerialGenerator.class);
+
+    public static final String PREFIX = "CTC-";
+
+    static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+
+    // (mili giây kể từ EPOCH << SEQUENCE_BITS) | bộ đếm
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public CertificateSerialGenerator(@Value("${wallet-config.certificate.serial.node-id:-1}") long nodeId,
+                                      @Value("${wallet-config.certificate.serial.allow-hostname-node-id:false}") boolean allowHostnameNodeId) {
+        this(resolveNodeId(nodeId, allowHostnameNodeId), System::currentTimeMillis);
+    }
+
+    CertificateSerialGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("node-id phải trong khoảng 0.." + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        while (true) {
+            long prev = state.get();
+            long next = Math.max((clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS, prev + 1);
+            if (state.compareAndSet(prev, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public String nextSerial() {
+        return PREFIX + nextId();
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    static long resolveNodeId(long configured, boolean allowHostnameNodeId) {
+        if (configured >= 0) {
+            return configured;
+        }
+        if (!allowHostnameNodeId) {
+            // Hash hostname về 1024 giá trị: 2 replica rất dễ trùng node id và sinh trùng serial
+            throw new IllegalStateException("Chưa cấu hình wallet-config.certificate.serial.node-id (WALLET_NODE_ID): "
+                    + "mỗi replica cần một node id riêng 0.." + MAX_NODE_ID
+                    + ". Chỉ chạy 1 instance thì đặt wallet-config.certificate.serial.allow-hostname-node-id=true");
+        }
+        return nodeIdFromHostname();
+    }
+
+    // Chỉ cho 1 instance/dev: suy từ hostname, nhiều replica có thể trùng (unique key chặn serial trùng)
+    private static long nodeIdFromHostname() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = String.valueOf(ProcessHandle.current().pid());
+        }
+        long derived = Math.floorMod(host.hashCode(), MAX_NODE_ID + 1);
+        log.warn("Chưa cấu hình wallet-config.certificate.serial.node-id, dùng node id {} suy từ hostname {}", derived, host);
+        return derived;
+    }
+}
@@ -0,0 +1,164 @@
+package com.carbontc.walletservice.util;
+
+import com.carbontc.walletservice.exception.BusinessException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chạy một đoạn nghiệp vụ trong transaction riêng và tự chạy lại khi MySQL báo deadlock
+ * (1213), hết thời gian chờ khoá (1205) hoặc khi khoá lạc quan (@Version) phát hiện xung đột,
+ * với backoff có jitter. Mỗi lần chạy lại callback đọc lại dữ liệu mới nhất rồi áp dụng lại.
+ * Nếu đã có transaction bên ngoài thì chỉ tham gia vào đó, vì transaction đã bị MySQL
+ * rollback thì không thể thử lại từ bên trong - tầng ngoài cùng sẽ quyết định retry.
+ */
+@Component
+public class TransactionRetryExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionRetryExecutor.class);
+
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T doInTransaction() throws BusinessException;
+    }
+
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final WalletConflictTracker walletConflictTracker;
+
+    @Value("${wallet-config.tx-retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${wallet-config.tx-retry.initial-backoff-ms:20}")
+    private long initialBackoffMs;
+
+    @Value("${wallet-config.tx-retry.max-backoff-ms:500}")
+    private long maxBackoffMs;
+
+    public TransactionRetryExecutor(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                    WalletConflictTracker walletConflictTracker) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.walletConflictTracker = walletConflictTracker;
+    }
+
+    public <T> T execute(String operation, TransactionCallback<T> callback) throws BusinessException {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return callback.doInTransaction();
+        }
+
+        int attempt = 1;
+        while (true) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    try {
+                        return callback.doInTransaction();
+                    } catch (BusinessException e) {
+                        // Bọc lại để TransactionTemplate rollback như rollbackFor = BusinessException.class
+                        throw new BusinessExceptionWrapper(e);
+                    }
+                });
+            } catch (BusinessExceptionWrapper e) {
+                throw e.getBusinessException();
+            } catch (RuntimeException e) {
+                if (isLockConflict(e)) {
+                    counter("wallet.tx.deadlocks", operation).increment();
+                } else if (isOptimisticConflict(e)) {
+                    walletConflictTracker.record(operation, e);
+                } else {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    log.error("[{}] Vẫn xung đột sau {} lần thử, bỏ cuộc", operation, attempt);
+                    throw e;
+                }
+                counter("wallet.tx.retries", operation).increment();
+                long backoff = backoffMillis(attempt);
+                log.warn("[{}] Xung đột khoá ở lần thử {} ({}), thử lại sau {} ms",
+                        operation, attempt, e.getClass().getSimpleName(), backoff);
+                sleep(backoff);
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Deadlock hoặc lock wait timeout của MySQL (kể cả khi Hibernate/Spring đã bọc lại).
+     */
+    public static boolean isLockConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof PessimisticLockingFailureException) {
+                return true;
+            }
+            if (t instanceof SQLException sqlException) {
+                int code = sqlException.getErrorCode();
+                if (code == MYSQL_DEADLOCK || code == MYSQL_LOCK_WAIT_TIMEOUT) {
+                    return true;
+                }
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Xung đột version (@Version) - có người khác đã ghi ví này sau khi mình đọc.
+     */
+    public static boolean isOptimisticConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockingFailureException || t instanceof OptimisticLockException) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    // Exponential backoff + full jitter để các transaction đụng nhau không cùng thử lại một lúc
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(initialBackoffMs, Math.max(initialBackoffMs, ceiling) + 1);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bị ngắt khi chờ retry transaction", ie);
+        }
+    }
+
+    private Counter counter(String name, String operation) {
+        return meterRegistry.counter(name, "operation", operation);
+    }
+
+    private static class BusinessExceptionWrapper extends RuntimeException {
+        BusinessExceptionWrapper(BusinessException cause) {
+            super(cause);
+        }
+
+        BusinessException getBusinessException() {
+            return (BusinessException) getCause();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.carbontc.walletservice.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đếm số lần xung đột khoá lạc quan theo từng ví để tìm "ví nóng".
+ * Micrometer chỉ gắn tag theo loại entity (tránh bùng nổ số series),
+ * còn top ví xung đột nhiều nhất xem qua actuator: GET /actuator/walletconflicts
+ */
+@Component
+@Endpoint(id = "walletconflicts")
+@RequiredArgsConstructor
+public class WalletConflictTracker {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, LongAdder> conflictsByWallet = new ConcurrentHashMap<>();
+
+    @Value("${wallet-config.tx-retry.max-tracked-wallets:10000}")
+    private int maxTrackedWallets;
+
+    public void record(String operation, Throwable e) {
+        String entity = "unknown";
+        Object identifier = null;
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ObjectOptimisticLockingFailureException ex) {
+                entity = simpleName(ex.getPersistentClassName());
+                identifier = ex.getIdentifier();
+                break;
+            }
+            if (t instanceof OptimisticLockException ex && ex.getEntity() != null) {
+                entity = ex.getEntity().getClass().getSimpleName();
+                break;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+
+        meterRegistry.counter("wallet.tx.optimistic_conflicts", "operation", operation, "entity", entity).increment();
+
+        if (identifier != null) {
+            String key = entity + "#" + identifier;
+            LongAdder adder = conflictsByWallet.get(key);
+            if (adder == null && conflictsByWallet.size() < maxTrackedWallets) {
+                adder = conflictsByWallet.computeIfAbsent(key, k -> new LongAdder());
+            }
+            if (adder != null) {
+                adder.increment();
+            }
+        }
+    }
+
+    @ReadOperation
+    public Map<String, Long> hotWallets() {
+        Map<String, Long> top = new LinkedHashMap<>();
+        conflictsByWallet.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> entry) -> entry.getValue().sum()).reversed())
+                .limit(20)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue().sum()));
+        return top;
+    }
+
+    private static String simpleName(String className) {
+        if (className == null) {
+            return "unknown";
+        }
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.carbontc.walletservice.config;
+
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.entity.TransactionLog;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import com.carbontc.walletservice.repository.TransactionLogRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * So sánh saveAll các dòng sổ cái (transaction_logs, id SEQUENCE pooled) khi bật và tắt JDBC batch
+ * (hibernate.jdbc.batch_size của session: 50 như cấu hình chạy thật, và 1 = mỗi dòng 1 câu INSERT).
+ * Không chạy trong build thường, bật bằng:
+ * mvn test -Dbenchmark=true -Dtest=LedgerBatchInsertBenchmarkTest
+ * (tuỳ chọn -Dbenchmark.rows, -Dbenchmark.rounds). Kết quả in ra log: số dòng/giây của từng chế độ.
+ * Chạy trên H2 nên chỉ đo phần Hibernate/JDBC; trên MySQL có rewriteBatchedStatements chênh lệch lớn hơn nhiều.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LedgerBatchInsertBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerBatchInsertBenchmarkTest.class);
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 20_000);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 3);
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @Autowired
+    private TransactionLogRepository transactionLogRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void compareSaveAllWithAndWithoutJdbcBatching() {
+        EWallet wallet = newWallet();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // Chạy nháp để JIT/pool kết nối ấm lên, không tính vào kết quả
+        insert(transactionTemplate, wallet, BATCH_SIZE);
+        insert(transactionTemplate, wallet, 1);
+
+        long batchedNanos = 0;
+        long unbatchedNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            batchedNanos += insert(transactionTemplate, wallet, BATCH_SIZE);
+            unbatchedNanos += insert(transactionTemplate, wallet, 1);
+        }
+
+        double batched = rowsPerSecond(batchedNanos);
+        double unbatched = rowsPerSecond(unbatchedNanos);
+        log.info("Benchmark saveAll {} dòng transaction_logs x {} lượt:", ROWS, ROUNDS);
+        log.info(String.format("%-12s %14s", "batch_size", "rows/s"));
+        log.info(String.format("%-12d %14.0f", BATCH_SIZE, batched));
+        log.info(String.format("%-12d %14.0f", 1, unbatched));
+        log.info(String.format("Bật batch nhanh gấp %.2f lần", batched / unbatched));
+
+        assertEquals((long) ROWS * (2 + 2L * ROUNDS),
+                transactionLogRepository.findByWallet_WalletIdOrderByCreatedAtDesc(wallet.getWalletId()).size());
+    }
+
+    private long insert(TransactionTemplate transactionTemplate, EWallet wallet, int jdbcBatchSize) {
+        List<TransactionLog> logs = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            TransactionLog entry = new TransactionLog();
+            entry.setWallet(wallet);
+            entry.setAmount(BigDecimal.ONE);
+            entry.setType("CREDIT");
+            entry.setStatus("SUCCESS");
+            entry.setDescription("benchmark");
+            logs.add(entry);
+        }
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+            transactionLogRepository.saveAll(logs);
+        });
+        return System.nanoTime() - start;
+    }
+
+    private static double rowsPerSecond(long nanos) {
+        return (double) ROWS * ROUNDS * 1_000_000_000L / nanos;
+    }
+
+    private EWallet newWallet() {
+        EWallet wallet = new EWallet();
+        wallet.setUserId(UUID.randomUUID().toString());
+        wallet.setBalance(BigDecimal.ZERO);
+        wallet.setCurrency("VND");
+        wallet.setUpdatedAt(LocalDateTime.now());
+        return eWalletRepository.save(wallet);
+    }
+}
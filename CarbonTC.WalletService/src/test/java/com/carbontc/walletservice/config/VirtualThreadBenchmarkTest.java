@@ -0,0 +1,160 @@
+package com.carbontc.walletservice.config;
+
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
+import com.carbontc.walletservice.service.EWalletService;
+import com.carbontc.walletservice.service.Impl.EWalletServiceImpl;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * So sánh virtual thread với platform thread trên cùng tải giống listener: mỗi tác vụ chờ 1 lời gọi
+ * ra ngoài (giả lập ListingService/Cloudinary bằng sleep) rồi cộng tiền vào ví trên DB (pool Hikari 20).
+ * Không chạy trong build thường, bật bằng:
+ * mvn test -Dbenchmark=true -Dtest=VirtualThreadBenchmarkTest
+ * (tuỳ chọn -Dbenchmark.tasks, -Dbenchmark.remote-ms, -Dbenchmark.concurrency=20,200).
+ * Kết quả in ra log: thông lượng, độ trễ p50/p99, số thread hệ điều hành cao nhất
+ * và số lần virtual thread bị ghim (jdk.VirtualThreadPinned).
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({EWalletServiceImpl.class, ModelMapperConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VirtualThreadBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadBenchmarkTest.class);
+
+    private static final int TASKS = Integer.getInteger("benchmark.tasks", 2000);
+    private static final long REMOTE_MS = Long.getLong("benchmark.remote-ms", 20);
+    private static final int WALLETS = 50;
+
+    @Autowired
+    private EWalletService eWalletService;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @MockitoBean
+    private BalanceUpdatePublisher balanceUpdatePublisher;
+
+    record Result(String mode, int concurrency, long elapsedMs, double throughput,
+                  long p50Ms, long p99Ms, int peakThreads, long pinned) {
+    }
+
+    @Test
+    void compareVirtualAndPlatformThreads() throws Exception {
+        List<Integer> concurrencyLevels = Arrays.stream(System.getProperty("benchmark.concurrency", "20,200").split(","))
+                .map(String::trim).map(Integer::valueOf).toList();
+        List<Long> walletIds = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(newWallet().getWalletId());
+        }
+
+        // Chạy nháp 1 lượt để JIT/pool kết nối ấm lên, không tính vào kết quả
+        run("warmup", Executors.newFixedThreadPool(20), 20, walletIds);
+
+        List<Result> results = new ArrayList<>();
+        for (int concurrency : concurrencyLevels) {
+            results.add(run("platform", Executors.newFixedThreadPool(concurrency), concurrency, walletIds));
+            results.add(run("virtual", Executors.newVirtualThreadPerTaskExecutor(), concurrency, walletIds));
+        }
+
+        log.info("Benchmark {} tác vụ, lời gọi ngoài {} ms, {} ví:", TASKS, REMOTE_MS, WALLETS);
+        log.info(String.format("%-9s %11s %10s %12s %8s %8s %12s %7s",
+                "mode", "concurrency", "elapsed ms", "tasks/s", "p50 ms", "p99 ms", "peak threads", "pinned"));
+        for (Result r : results) {
+            log.info(String.format("%-9s %11d %10d %12.1f %8d %8d %12d %7d",
+                    r.mode(), r.concurrency(), r.elapsedMs(), r.throughput(), r.p50Ms(), r.p99Ms(), r.peakThreads(), r.pinned()));
+        }
+
+        // Mọi lượt cộng đều phải vào ví (không mất cập nhật vì chạy song song)
+        BigDecimal total = walletIds.stream()
+                .map(id -> eWalletRepository.findById(id).orElseThrow().getBalance())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, total.compareTo(BigDecimal.valueOf((long) TASKS * (1 + 2L * concurrencyLevels.size()))));
+    }
+
+    // concurrency giới hạn số tác vụ chạy cùng lúc giống số consumer của listener container
+    private Result run(String mode, ExecutorService executor, int concurrency, List<Long> walletIds) throws Exception {
+        Semaphore inFlight = new Semaphore(concurrency);
+        long[] latenciesNanos = new long[TASKS];
+        AtomicLong pinned = new AtomicLong();
+        int threadsBefore = Thread.activeCount();
+        int peakThreads = threadsBefore;
+
+        try (RecordingStream pinning = new RecordingStream(); executor) {
+            pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(1));
+            pinning.onEvent("jdk.VirtualThreadPinned", event -> pinned.incrementAndGet());
+            pinning.startAsync();
+
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                int task = i;
+                inFlight.acquire();
+                futures.add(executor.submit(() -> {
+                    long taskStart = System.nanoTime();
+                    try {
+                        Thread.sleep(REMOTE_MS);
+                        eWalletService.credit(walletIds.get(task % walletIds.size()), BigDecimal.ONE, "benchmark");
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        latenciesNanos[task] = System.nanoTime() - taskStart;
+                        inFlight.release();
+                    }
+                }));
+                peakThreads = Math.max(peakThreads, Thread.activeCount());
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            Arrays.sort(latenciesNanos);
+            long elapsedMs = Duration.ofNanos(elapsedNanos).toMillis();
+            return new Result(mode, concurrency, elapsedMs, TASKS * 1_000_000_000.0 / elapsedNanos,
+                    Duration.ofNanos(latenciesNanos[TASKS / 2]).toMillis(),
+                    Duration.ofNanos(latenciesNanos[(int) (TASKS * 0.99)]).toMillis(),
+                    peakThreads - threadsBefore, pinned.get());
+        }
+    }
+
+    private EWallet newWallet() {
+        EWallet wallet = new EWallet();
+        wallet.setUserId(UUID.randomUUID().toString());
+        wallet.setBalance(BigDecimal.ZERO);
+        wallet.setCurrency("VND");
+        wallet.setUpdatedAt(LocalDateTime.now());
+        return eWalletRepository.save(wallet);
+    }
+}
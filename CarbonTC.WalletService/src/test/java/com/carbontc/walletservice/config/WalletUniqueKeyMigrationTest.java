@@ -0,0 +1,115 @@
+package com.carbontc.walletservice.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DB cũ (trước khi có unique key) có thể chứa ví trùng: ví rỗng được dọn,
+ * ví trùng có dữ liệu làm khởi động thất bại thay vì âm thầm chạy không có key.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(WalletUniqueKeyMigration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WalletUniqueKeyMigrationTest {
+
+    @Autowired
+    private WalletUniqueKeyMigration migration;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void dropUniqueKeys() {
+        // Giả lập schema cũ: Hibernate (create-drop) đã tạo sẵn key
+        jdbcTemplate.execute("ALTER TABLE e_wallets DROP CONSTRAINT IF EXISTS uk_e_wallets_user_id");
+        jdbcTemplate.execute("ALTER TABLE carbon_wallets DROP CONSTRAINT IF EXISTS uk_carbon_wallets_owner_id");
+    }
+
+    @AfterEach
+    void restoreUniqueKeys() {
+        jdbcTemplate.update("DELETE FROM transaction_logs");
+        jdbcTemplate.update("DELETE FROM e_wallets");
+        jdbcTemplate.update("DELETE FROM carbon_wallets");
+        migration.afterSingletonsInstantiated();
+    }
+
+    @Test
+    void emptyDuplicatesAreRemovedAndKeyIsCreated() {
+        long first = insertEWallet("u-1", 0);
+        long used = insertEWallet("u-1", 250);
+        insertEWallet("u-1", 0);
+        insertCarbonWallet("u-1", 0);
+        insertCarbonWallet("u-1", 0);
+        insertEWallet("u-2", 0);
+
+        migration.afterSingletonsInstantiated();
+
+        // Giữ ví có số dư, không phải ví tạo sớm nhất
+        assertEquals(List.of(used), walletIds("e_wallets", "user_id", "u-1"));
+        assertTrue(first < used);
+        assertEquals(1, walletIds("carbon_wallets", "owner_id", "u-1").size());
+        assertEquals(1, walletIds("e_wallets", "user_id", "u-2").size());
+        assertThrows(DataIntegrityViolationException.class, () -> insertEWallet("u-2", 0));
+        assertThrows(DataIntegrityViolationException.class, () -> insertCarbonWallet("u-1", 0));
+    }
+
+    @Test
+    void walletReferencedByHistoryIsKept() {
+        long withHistory = insertEWallet("u-3", 0);
+        insertEWallet("u-3", 0);
+        jdbcTemplate.update("INSERT INTO transaction_logs (id, wallet_id, amount, type, status, created_at) VALUES (1, ?, 10, 'DEPOSIT', 'SUCCESS', CURRENT_TIMESTAMP)",
+                withHistory);
+
+        migration.afterSingletonsInstantiated();
+
+        assertEquals(List.of(withHistory), walletIds("e_wallets", "user_id", "u-3"));
+    }
+
+    @Test
+    void duplicatesWithDataFailLoudlyAndChangeNothing() {
+        insertEWallet("u-4", 100);
+        insertEWallet("u-4", 200);
+        insertEWallet("u-5", 0);
+        insertEWallet("u-5", 0);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, migration::afterSingletonsInstantiated);
+
+        assertTrue(ex.getMessage().contains("u-4"));
+        assertEquals(2, walletIds("e_wallets", "user_id", "u-4").size());
+        assertEquals(2, walletIds("e_wallets", "user_id", "u-5").size());
+    }
+
+    private long insertEWallet(String userId, long balance) {
+        jdbcTemplate.update("INSERT INTO e_wallets (user_id, balance, currency, updated_at, version) VALUES (?, ?, 'VND', CURRENT_TIMESTAMP, 0)",
+                userId, balance);
+        return jdbcTemplate.queryForObject("SELECT MAX(wallet_id) FROM e_wallets", Long.class);
+    }
+
+    private void insertCarbonWallet(String ownerId, long balance) {
+        jdbcTemplate.update("INSERT INTO carbon_wallets (owner_id, balance, total_earned, last_updated, version) VALUES (?, ?, 0, CURRENT_TIMESTAMP, 0)",
+                ownerId, balance);
+    }
+
+    private List<Long> walletIds(String table, String column, String userId) {
+        return jdbcTemplate.queryForList("SELECT wallet_id FROM " + table + " WHERE " + column + " = ? ORDER BY wallet_id",
+                Long.class, userId);
+    }
+}
@@ -0,0 +1,99 @@
+package com.carbontc.walletservice.consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Barrier giữa 2 partition trên DB thật: partition phụ chỉ đi tiếp sau khi partition chính xử lý xong event,
+ * và partition chính chỉ xử lý khi partition phụ đã tới. Quá hạn thì không bên nào xử lý tiếp mất thứ tự.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PartitionBarrier.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {
+        "wallet-config.partitioning.barrier-timeout-ms=300",
+        "wallet-config.partitioning.barrier-poll-ms=5"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PartitionBarrierTest {
+
+    @Autowired
+    private PartitionBarrier partitionBarrier;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void secondaryPartitionWaitsForPrimaryAndPrimaryWaitsForArrival() throws Exception {
+        double timeoutsBefore = timeouts();
+        String barrierId = UUID.randomUUID().toString();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> primary = CompletableFuture.runAsync(() -> {
+            partitionBarrier.awaitArrivals(barrierId, List.of(5));
+            order.add("event");
+            partitionBarrier.complete(barrierId);
+        });
+        // Partition phụ tới muộn: partition chính phải đứng chờ
+        Thread.sleep(50);
+        order.add("before-marker");
+        CompletableFuture<Void> secondary = CompletableFuture.runAsync(() -> {
+            partitionBarrier.arriveAndAwaitCompletion(barrierId, 5);
+            order.add("after-marker");
+        });
+
+        CompletableFuture.allOf(primary, secondary).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("before-marker", "event", "after-marker"), order);
+        assertEquals(timeoutsBefore, timeouts());
+    }
+
+    @Test
+    void missingPartnerSendsEventToParkingLotInsteadOfProcessingOutOfOrder() {
+        double timeoutsBefore = timeouts();
+
+        assertThrows(NonRetryableMessageException.class,
+                () -> partitionBarrier.awaitArrivals(UUID.randomUUID().toString(), List.of(1, 2)));
+
+        assertEquals(timeoutsBefore + 1, timeouts());
+    }
+
+    @Test
+    void secondaryPartitionKeepsWaitingPastTimeoutUntilPrimaryCompletes() throws Exception {
+        double timeoutsBefore = timeouts();
+        String barrierId = UUID.randomUUID().toString();
+
+        CompletableFuture<Void> secondary = CompletableFuture.runAsync(() -> partitionBarrier.arriveAndAwaitCompletion(barrierId, 3));
+        // Quá 2 lần timeout mà partition chính chưa xong: partition phụ vẫn phải đứng chờ
+        Thread.sleep(700);
+        assertFalse(secondary.isDone());
+
+        partitionBarrier.complete(barrierId);
+        secondary.get(5, TimeUnit.SECONDS);
+        assertTrue(timeouts() >= timeoutsBefore + 2);
+    }
+
+    private double timeouts() {
+        return meterRegistry.counter("wallet.partition.barrier.timeouts").count();
+    }
+}
@@ -0,0 +1,163 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Router chế độ partition: giao dịch được chia theo cả người mua lẫn người bán,
+ * và cả batch được gửi hết rồi mới chờ publisher confirm.
+ */
+class PartitionRouterServiceTest {
+
+    private static final int PARTITIONS = 8;
+    // "a" và "b" rơi vào 2 partition khác nhau (hash 97 và 98)
+    private static final String BUYER = "a";
+    private static final String SELLER = "b";
+
+    private final MessageConverter messageConverter = new RabbitMQConfig().jsonMessageConverter();
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final List<Message> sent = new ArrayList<>();
+    private final List<CorrelationData> correlations = new ArrayList<>();
+
+    private boolean completeOnSend;
+    private boolean ackOnSend;
+
+    private PartitionRouterService router;
+
+    @BeforeEach
+    void setUp() {
+        router = new PartitionRouterService(rabbitTemplate, messageConverter);
+        ReflectionTestUtils.setField(router, "partitions", PARTITIONS);
+        ReflectionTestUtils.setField(router, "confirmTimeoutMs", 200L);
+        assertNotEquals(PartitionRouterService.partitionOf(BUYER, PARTITIONS),
+                PartitionRouterService.partitionOf(SELLER, PARTITIONS));
+    }
+
+    @Test
+    void transactionTouchingTwoPartitionsGoesToLowestWithBarrierMarkerOnTheOther() {
+        ackEverySend(true);
+
+        router.routeTransactions(List.of(toMessage(transaction("tx-1", BUYER, SELLER))));
+
+        int buyerPartition = PartitionRouterService.partitionOf(BUYER, PARTITIONS);
+        int sellerPartition = PartitionRouterService.partitionOf(SELLER, PARTITIONS);
+        assertEquals(2, sent.size());
+
+        MessageProperties event = sent.get(0).getMessageProperties();
+        MessageProperties marker = sent.get(1).getMessageProperties();
+        String barrierId = event.getHeader(PartitionRouterService.BARRIER_ID_HEADER);
+        assertNotNull(barrierId);
+        assertEquals(Math.min(buyerPartition, sellerPartition), (int) event.getHeader(PartitionRouterService.PARTITION_HEADER));
+        assertEquals(String.valueOf(Math.max(buyerPartition, sellerPartition)),
+                event.getHeader(PartitionRouterService.BARRIER_PARTITIONS_HEADER));
+        assertNull(event.getHeader(PartitionRouterService.BARRIER_MARKER_HEADER));
+
+        assertEquals(barrierId, marker.getHeader(PartitionRouterService.BARRIER_ID_HEADER));
+        assertEquals(Boolean.TRUE, marker.getHeader(PartitionRouterService.BARRIER_MARKER_HEADER));
+        assertEquals(Math.max(buyerPartition, sellerPartition), (int) marker.getHeader(PartitionRouterService.PARTITION_HEADER));
+    }
+
+    @Test
+    void transactionInsideOnePartitionHasNoBarrier() {
+        ackEverySend(true);
+
+        router.routeTransactions(List.of(toMessage(transaction("tx-1", BUYER, BUYER))));
+
+        assertEquals(1, sent.size());
+        assertNull(sent.get(0).getMessageProperties().getHeader(PartitionRouterService.BARRIER_ID_HEADER));
+    }
+
+    @Test
+    void wholeBatchIsSentBeforeWaitingForConfirms() {
+        // Không confirm tin nào: nếu chờ từng tin thì chỉ tin đầu được gửi trước khi hết thời gian
+        recordSends();
+
+        assertThrows(AmqpException.class, () -> router.routeTransactions(List.of(
+                toMessage(transaction("tx-1", BUYER, BUYER)),
+                toMessage(transaction("tx-2", SELLER, SELLER)),
+                toMessage(transaction("tx-3", BUYER, SELLER)))));
+
+        assertEquals(4, sent.size());
+        assertEquals(4, correlations.size());
+    }
+
+    @Test
+    void nackFailsTheBatchSoItIsRedelivered() {
+        ackEverySend(false);
+
+        AmqpException ex = assertThrows(AmqpException.class,
+                () -> router.routeTransactions(List.of(toMessage(transaction("tx-1", BUYER, SELLER)))));
+        assertTrue(ex.getMessage().contains("từ chối"));
+    }
+
+    // Broker trả confirm ngay khi nhận tin
+    private void ackEverySend(boolean ack) {
+        recordSends();
+        completeOnSend = true;
+        ackOnSend = ack;
+    }
+
+    private void recordSends() {
+        doAnswer(invocation -> {
+            Object payload = invocation.getArgument(2);
+            MessagePostProcessor postProcessor = invocation.getArgument(3);
+            record(postProcessor.postProcessMessage(messageConverter.toMessage(payload, new MessageProperties())),
+                    invocation.getArgument(4));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.PARTITION_EXCHANGE), anyString(), any(Object.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        doAnswer(invocation -> {
+            record(invocation.getArgument(2), invocation.getArgument(3));
+            return null;
+        }).when(rabbitTemplate).send(eq(RabbitMQConfig.PARTITION_EXCHANGE), anyString(), any(Message.class),
+                any(CorrelationData.class));
+    }
+
+    private void record(Message message, CorrelationData correlation) {
+        sent.add(message);
+        correlations.add(correlation);
+        if (completeOnSend) {
+            correlation.getFuture().complete(new CorrelationData.Confirm(ackOnSend, ackOnSend ? null : "từ chối"));
+        }
+    }
+
+    private Message toMessage(Object event) {
+        return messageConverter.toMessage(event, new MessageProperties());
+    }
+
+    private static TransactionCreatedEvent transaction(String id, String buyer, String seller) {
+        TransactionCreatedEvent event = new TransactionCreatedEvent();
+        event.setTransactionId(id);
+        event.setBuyerUserId(buyer);
+        event.setSellerUserId(seller);
+        event.setMoneyAmount(BigDecimal.TEN);
+        event.setCreditAmount(BigDecimal.ONE);
+        return event;
+    }
+}
@@ -0,0 +1,306 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.config.ModelMapperConfig;
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.CreditIssuedEvent;
+import com.carbontc.walletservice.dto.event.TransactionCompletedEvent;
+import com.carbontc.walletservice.dto.event.TransactionCreatedEvent;
+import com.carbontc.walletservice.entity.CarbonWallets;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.CarbonWalletsRepository;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import com.carbontc.walletservice.repository.ProcessedEventRepository;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
+import com.carbontc.walletservice.service.CertificateService;
+import com.carbontc.walletservice.service.OutboxService;
+import com.carbontc.walletservice.service.WalletProvisioningService;
+import com.carbontc.walletservice.service.Impl.CarbonWalletsServiceImpl;
+import com.carbontc.walletservice.service.Impl.EWalletServiceImpl;
+import com.carbontc.walletservice.service.Impl.TransactionFeeServiceImpl;
+import com.carbontc.walletservice.service.Impl.TransactionSettlementServiceImpl;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
+import com.carbontc.walletservice.util.WalletConflictTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Listener batch chạy thật trên DB: event lỗi không được làm mất các event hợp lệ cùng batch.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({RabbitMQBatchConsumerService.class, RabbitMQConsumerService.class, TransactionSettlementServiceImpl.class,
+        EWalletServiceImpl.class, CarbonWalletsServiceImpl.class, TransactionFeeServiceImpl.class,
+        TransactionRetryExecutor.class, WalletConflictTracker.class, SimpleMeterRegistry.class,
+        ModelMapperConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RabbitMQBatchConsumerServiceTest {
+
+    private static final AtomicLong CERTIFICATE_IDS = new AtomicLong();
+
+    @Autowired
+    private RabbitMQBatchConsumerService batchConsumerService;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @Autowired
+    private CarbonWalletsRepository carbonWalletsRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @MockitoBean
+    private CertificateService certificateService;
+
+    @MockitoBean
+    private BalanceUpdatePublisher balanceUpdatePublisher;
+
+    @MockitoBean
+    private WalletProvisioningService walletProvisioningService;
+
+    @MockitoBean
+    private TieredRetryMessageRecoverer tieredRetryMessageRecoverer;
+
+    @Autowired
+    private MessageConverter messageConverter;
+
+    @TestConfiguration
+    static class MessageConverterConfig {
+        @Bean
+        MessageConverter jsonMessageConverter() {
+            return new RabbitMQConfig().jsonMessageConverter();
+        }
+    }
+
+    @BeforeEach
+    void stubCertificates() throws Exception {
+        when(certificateService.requestCertificate(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            Certificate certificate = new Certificate();
+            certificate.setCertificateId(CERTIFICATE_IDS.incrementAndGet());
+            certificate.setTransactionId(invocation.getArgument(0));
+            certificate.setUniqueHash(UUID.randomUUID().toString());
+            certificate.setStatus(CertificateStatus.PENDING);
+            return certificate;
+        });
+    }
+
+    @Test
+    void insufficientBalanceEventDoesNotRollBackTheRestOfTheBatch() {
+        String seller = newUser("0", "100");
+        String richBuyer1 = newUser("100000", "0");
+        String poorBuyer = newUser("10", "0");
+        String richBuyer2 = newUser("100000", "0");
+
+        TransactionCreatedEvent good1 = event(richBuyer1, seller);
+        TransactionCreatedEvent bad = event(poorBuyer, seller);
+        TransactionCreatedEvent good2 = event(richBuyer2, seller);
+
+        batchConsumerService.handleTransactionBatch(List.of(good1, bad, good2));
+
+        // 2 giao dịch hợp lệ đã commit
+        assertMoney(richBuyer1, "50000");
+        assertMoney(richBuyer2, "50000");
+        assertMoney(seller, "95000");
+        assertCredits(richBuyer1, "10");
+        assertCredits(richBuyer2, "10");
+        assertCredits(seller, "80");
+        // giao dịch thiếu tiền không để lại gì, kể cả dấu đã xử lý
+        assertMoney(poorBuyer, "10");
+        assertCredits(poorBuyer, "0");
+        assertFalse(processedEventRepository.existsById(bad.getTransactionId()));
+
+        Map<String, String> statusByTransaction = publishedOutcomes();
+        assertEquals(Map.of(
+                good1.getTransactionId(), "COMPLETED",
+                bad.getTransactionId(), "FAILED",
+                good2.getTransactionId(), "COMPLETED"), statusByTransaction);
+        assertEquals(1.0, meterRegistry.counter("wallet.transaction.batch.fallbacks").count());
+    }
+
+    @Test
+    void healthyBatchCommitsOnceWithoutFallback() {
+        String seller = newUser("0", "100");
+        String buyer1 = newUser("100000", "0");
+        String buyer2 = newUser("100000", "0");
+        TransactionCreatedEvent first = event(buyer1, seller);
+        TransactionCreatedEvent second = event(buyer2, seller);
+
+        batchConsumerService.handleTransactionBatch(List.of(first, second));
+        // Giao lại cùng batch (redelivery): không trừ tiền lần 2
+        batchConsumerService.handleTransactionBatch(List.of(first, second));
+
+        assertMoney(buyer1, "50000");
+        assertMoney(buyer2, "50000");
+        assertEquals(Map.of(first.getTransactionId(), "COMPLETED", second.getTransactionId(), "COMPLETED"),
+                publishedOutcomes());
+        assertEquals(0.0, meterRegistry.counter("wallet.transaction.batch.fallbacks").count());
+    }
+
+    @Test
+    void creditsForMissingWalletGoToRetryInsteadOfBeingDropped() throws Exception {
+        String owner = newUser("0", "0");
+        Message known = creditMessage(owner, "25");
+        Message unknown = creditMessage("user-" + UUID.randomUUID(), "40");
+
+        batchConsumerService.handleCreditIssuedBatch(List.of(known, unknown));
+
+        assertCredits(owner, "25");
+        ArgumentCaptor<Throwable> cause = ArgumentCaptor.forClass(Throwable.class);
+        verify(tieredRetryMessageRecoverer).recover(same(unknown), cause.capture());
+        assertInstanceOf(BusinessException.class, cause.getValue());
+        verify(tieredRetryMessageRecoverer, never()).recover(same(known), any(Throwable.class));
+    }
+
+    @Test
+    void failedRepublishRedeliversTheBatchWithoutCreditingTwice() throws Exception {
+        String owner = newUser("0", "0");
+        Message known = creditMessage(owner, "25");
+        Message unknown = creditMessage("user-" + UUID.randomUUID(), "40");
+        doThrow(new ImmediateRequeueAmqpException("không có confirm"))
+                .when(tieredRetryMessageRecoverer).recover(same(unknown), any(Throwable.class));
+
+        assertThrows(ImmediateRequeueAmqpException.class,
+                () -> batchConsumerService.handleCreditIssuedBatch(List.of(known, unknown)));
+        // Tin lỗi chỉ được chuyển đi sau commit, 1 lần dù executor có chạy lại transaction
+        verify(tieredRetryMessageRecoverer).recover(same(unknown), any(Throwable.class));
+        assertCredits(owner, "25");
+
+        // Cả batch được giao lại: tín chỉ đã cộng không bị cộng lần 2
+        doNothing().when(tieredRetryMessageRecoverer).recover(same(unknown), any(Throwable.class));
+        batchConsumerService.handleCreditIssuedBatch(List.of(known, unknown));
+
+        assertCredits(owner, "25");
+        verify(tieredRetryMessageRecoverer, times(2)).recover(same(unknown), any(Throwable.class));
+    }
+
+    @Test
+    void malformedAndIncompleteCreditMessagesAreParkedOneByOne() throws Exception {
+        String owner = newUser("0", "0");
+        Message known = creditMessage(owner, "25");
+        Message withoutAmount = creditMessage(owner, null);
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue(RabbitMQConfig.CREDIT_QUEUE);
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message garbage = new Message("{not json".getBytes(StandardCharsets.UTF_8), properties);
+
+        batchConsumerService.handleCreditIssuedBatch(List.of(garbage, known, withoutAmount));
+
+        assertCredits(owner, "25");
+        verify(tieredRetryMessageRecoverer).recover(same(garbage), any(NonRetryableMessageException.class));
+        verify(tieredRetryMessageRecoverer).recover(same(withoutAmount), any(NonRetryableMessageException.class));
+        verify(tieredRetryMessageRecoverer, never()).recover(same(known), any(Throwable.class));
+    }
+
+    private Message creditMessage(String ownerUserId, String amount) {
+        CreditIssuedEvent event = new CreditIssuedEvent();
+        event.setOwnerUserId(ownerUserId);
+        event.setCreditAmount(amount == null ? null : new BigDecimal(amount));
+        event.setReferenceId(UUID.randomUUID().toString());
+        event.setIssuedAt(OffsetDateTime.now());
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue(RabbitMQConfig.CREDIT_QUEUE);
+        return messageConverter.toMessage(event, properties);
+    }
+
+    private Map<String, String> publishedOutcomes() {
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(outboxService, atLeastOnce()).enqueue(eq(RabbitMQConfig.TRANSACTION_EXCHANGE), anyString(), payloads.capture());
+        // toMap báo lỗi nếu một giao dịch được báo kết quả 2 lần
+        return payloads.getAllValues().stream()
+                .map(TransactionCompletedEvent.class::cast)
+                .collect(Collectors.toMap(TransactionCompletedEvent::getTransactionId, TransactionCompletedEvent::getStatus));
+    }
+
+    private TransactionCreatedEvent event(String buyer, String seller) {
+        return TransactionCreatedEvent.builder()
+                .transactionId(UUID.randomUUID().toString())
+                .buyerUserId(buyer)
+                .sellerUserId(seller)
+                .moneyAmount(new BigDecimal("50000"))
+                .platformFee(new BigDecimal("2500"))
+                .creditAmount(BigDecimal.TEN)
+                .createdAt(OffsetDateTime.now())
+                .build();
+    }
+
+    private String newUser(String money, String credits) {
+        String userId = "user-" + UUID.randomUUID();
+        EWallet wallet = new EWallet();
+        wallet.setUserId(userId);
+        wallet.setCurrency("VND");
+        wallet.setBalance(new BigDecimal(money));
+        wallet.setUpdatedAt(LocalDateTime.now());
+        eWalletRepository.save(wallet);
+
+        CarbonWallets carbonWallet = new CarbonWallets();
+        carbonWallet.setOwnerId(userId);
+        carbonWallet.setBalance(new BigDecimal(credits));
+        carbonWallet.setTotalEarned(new BigDecimal(credits));
+        carbonWallet.setLastUpdated(LocalDateTime.now());
+        carbonWalletsRepository.save(carbonWallet);
+        return userId;
+    }
+
+    private void assertMoney(String userId, String expected) {
+        EWallet wallet = eWalletRepository.findByUserId(userId).orElseThrow();
+        assertEquals(0, wallet.getBalance().compareTo(new BigDecimal(expected)), userId);
+    }
+
+    private void assertCredits(String userId, String expected) {
+        CarbonWallets wallet = carbonWalletsRepository.findByOwnerId(userId).orElseThrow();
+        assertEquals(0, wallet.getBalance().compareTo(new BigDecimal(expected)), userId);
+    }
+}
@@ -0,0 +1,135 @@
+package com.carbontc.walletservice.consumer;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class TieredRetryMessageRecovererTest {
+
+    private RabbitTemplate rabbitTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private TieredRetryMessageRecoverer recoverer;
+    // routing key của từng lần gửi, theo thứ tự
+    private final List<String> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        recoverer = new TieredRetryMessageRecoverer(rabbitTemplate, meterRegistry);
+        ReflectionTestUtils.setField(recoverer, "retryDelaysMs", new long[]{5000, 30000, 300000});
+        ReflectionTestUtils.setField(recoverer, "confirmTimeoutMs", 200L);
+        ReflectionTestUtils.setField(recoverer, "publishAttempts", 3);
+        brokerAcks();
+    }
+
+    @Test
+    void failedMessageEscalatesThroughRetryTiersThenParks() {
+        Message message = message(RabbitMQConfig.CREDIT_QUEUE, "a");
+
+        for (int i = 0; i < 4; i++) {
+            recoverer.recover(message, new IllegalStateException("lỗi"));
+        }
+
+        assertEquals(List.of(
+                RabbitMQConfig.retryQueueName(RabbitMQConfig.CREDIT_QUEUE, 1),
+                RabbitMQConfig.retryQueueName(RabbitMQConfig.CREDIT_QUEUE, 2),
+                RabbitMQConfig.retryQueueName(RabbitMQConfig.CREDIT_QUEUE, 3),
+                RabbitMQConfig.parkingLotQueueName(RabbitMQConfig.CREDIT_QUEUE)), sent);
+        assertEquals(RabbitMQConfig.CREDIT_QUEUE,
+                message.getMessageProperties().getHeader(TieredRetryMessageRecoverer.ORIGINAL_QUEUE_HEADER));
+        assertEquals(1.0, recovered(RabbitMQConfig.CREDIT_QUEUE, "parked"));
+        assertEquals(3.0, recovered(RabbitMQConfig.CREDIT_QUEUE, "retry"));
+    }
+
+    @Test
+    void nonRetryableFailureGoesStraightToParkingLot() {
+        Message message = message(RabbitMQConfig.TRANSACTION_QUEUE, "a");
+
+        recoverer.recover(message, new RuntimeException("listener lỗi",
+                new NonRetryableMessageException("barrier quá hạn")));
+
+        assertEquals(List.of(RabbitMQConfig.parkingLotQueueName(RabbitMQConfig.TRANSACTION_QUEUE)), sent);
+    }
+
+    @Test
+    void messageWithUnknownQueueIsParkedInCatchAllInsteadOfDropped() {
+        Message message = new Message("{}".getBytes(StandardCharsets.UTF_8), new MessageProperties());
+
+        recoverer.recover(message, new IllegalStateException("lỗi"));
+
+        assertEquals(List.of(RabbitMQConfig.UNKNOWN_QUEUE_PARKING_LOT), sent);
+        assertEquals(1.0, recovered("unknown", "parked"));
+    }
+
+    @Test
+    void batchResendsOnlyNackedMessagesAndRequeuesWhenBrokerKeepsRefusing() {
+        Message first = message(RabbitMQConfig.CREDIT_QUEUE, "first");
+        Message second = message(RabbitMQConfig.CREDIT_QUEUE, "second");
+        Message third = message(RabbitMQConfig.CREDIT_QUEUE, "third");
+        // Tin thứ 2 bị nack 1 lần rồi mới được nhận
+        AtomicInteger secondNacks = new AtomicInteger(1);
+        brokerReplies(body -> !body.equals("second") || secondNacks.getAndDecrement() <= 0);
+
+        recoverer.recover(List.of(first, second, third), new IllegalStateException("lỗi batch"));
+
+        // Tin đã được xác nhận không bị gửi lại
+        assertEquals(4, sent.size());
+        assertEquals(3.0, recovered(RabbitMQConfig.CREDIT_QUEUE, "retry"));
+
+        sent.clear();
+        brokerReplies(body -> !body.equals("second"));
+        assertThrows(ImmediateRequeueAmqpException.class,
+                () -> recoverer.recover(List.of(message(RabbitMQConfig.CREDIT_QUEUE, "x"),
+                        message(RabbitMQConfig.CREDIT_QUEUE, "second")), new IllegalStateException("lỗi batch")));
+        // "x" gửi 1 lần, "second" thử đủ publish-attempts lần
+        assertEquals(4, sent.size());
+    }
+
+    private void brokerAcks() {
+        brokerReplies(body -> true);
+    }
+
+    private void brokerReplies(Predicate<String> ack) {
+        doAnswer(invocation -> {
+            sent.add(invocation.getArgument(1));
+            Message message = invocation.getArgument(2);
+            CorrelationData correlation = invocation.getArgument(3);
+            boolean acked = ack.test(new String(message.getBody(), StandardCharsets.UTF_8));
+            correlation.getFuture().complete(new CorrelationData.Confirm(acked, acked ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).send(eq(RabbitMQConfig.DEAD_LETTER_EXCHANGE), anyString(), any(Message.class),
+                any(CorrelationData.class));
+    }
+
+    private double recovered(String queue, String outcome) {
+        return meterRegistry.counter("wallet.messages.recovered", "queue", queue, "outcome", outcome).count();
+    }
+
+    private static Message message(String queue, String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue(queue);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
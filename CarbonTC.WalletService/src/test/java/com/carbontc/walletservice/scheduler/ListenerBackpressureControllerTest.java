@@ -0,0 +1,149 @@
+package com.carbontc.walletservice.scheduler;
+
+import com.carbontc.walletservice.config.PartitionListenerConfigurer;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chuyển mức NORMAL -> THROTTLED -> PAUSED và hạ mức dần, với pool Hikari và registry giả lập.
+ */
+class ListenerBackpressureControllerTest {
+
+    private static final String PARTITION_LISTENER = PartitionListenerConfigurer.LISTENER_ID_PREFIX + "0";
+    private static final int MAX_POOL_SIZE = 20;
+    private static final int RECOVERY_CHECKS = 2;
+
+    private HikariPoolMXBean pool;
+    private SimpleMessageListenerContainer transactionListener;
+    private SimpleMessageListenerContainer partitionListener;
+    private SimpleMeterRegistry meterRegistry;
+    private ListenerBackpressureController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = mock(HikariPoolMXBean.class);
+        when(pool.getTotalConnections()).thenReturn(MAX_POOL_SIZE);
+        HikariDataSource hikari = mock(HikariDataSource.class);
+        when(hikari.getHikariPoolMXBean()).thenReturn(pool);
+        when(hikari.getMaximumPoolSize()).thenReturn(MAX_POOL_SIZE);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+        when(dataSource.unwrap(HikariDataSource.class)).thenReturn(hikari);
+
+        transactionListener = container(4, 250);
+        partitionListener = container(1, 20);
+        RabbitListenerEndpointRegistry registry = mock(RabbitListenerEndpointRegistry.class);
+        when(registry.getListenerContainer("transactionListener")).thenReturn(transactionListener);
+        when(registry.getListenerContainer(PARTITION_LISTENER)).thenReturn(partitionListener);
+        when(registry.getListenerContainerIds()).thenReturn(Set.of("transactionListener", PARTITION_LISTENER));
+
+        meterRegistry = new SimpleMeterRegistry();
+        controller = new ListenerBackpressureController(registry, dataSource, meterRegistry);
+        ReflectionTestUtils.setField(controller, "reservedConnections", 3);
+        ReflectionTestUtils.setField(controller, "acquireThrottleMs", 50.0);
+        ReflectionTestUtils.setField(controller, "acquirePauseMs", 500.0);
+        ReflectionTestUtils.setField(controller, "pauseAwaitingThreads", 5);
+        ReflectionTestUtils.setField(controller, "throttledPrefetch", 5);
+        ReflectionTestUtils.setField(controller, "recoveryChecks", RECOVERY_CHECKS);
+        ReflectionTestUtils.setField(controller, "normalPrefetch", 250);
+    }
+
+    @Test
+    void throttlingRestoresEachContainersOwnConsumersAndPrefetch() {
+        poolState(MAX_POOL_SIZE - 2, 1);
+        controller.evaluate();
+
+        assertEquals(1.0, level());
+        verify(transactionListener).setConcurrentConsumers(1);
+        verify(transactionListener).setPrefetchCount(5);
+        verify(partitionListener).setPrefetchCount(5);
+
+        poolState(2, 0);
+        controller.evaluate();
+        // Chưa đủ số lần đo pool rảnh liên tiếp: giữ nguyên mức
+        assertEquals(1.0, level());
+        controller.evaluate();
+
+        assertEquals(0.0, level());
+        verify(transactionListener).setConcurrentConsumers(4);
+        verify(transactionListener).setPrefetchCount(250);
+        // Partition listener trở về prefetch 20 của nó, không bị ghi đè bằng prefetch chung 250
+        verify(partitionListener).setPrefetchCount(20);
+        verify(partitionListener, never()).setPrefetchCount(250);
+    }
+
+    @Test
+    void saturatedPoolPausesListenersThenResumesThemOneLevelAtATime() {
+        poolState(MAX_POOL_SIZE, 6);
+        controller.evaluate();
+
+        assertEquals(2.0, level());
+        verify(transactionListener).stop(any(Runnable.class));
+        verify(partitionListener).stop(any(Runnable.class));
+
+        poolState(2, 0);
+        for (int i = 0; i < RECOVERY_CHECKS; i++) {
+            controller.evaluate();
+        }
+        assertEquals(1.0, level());
+        InOrder throttledRestart = inOrder(transactionListener);
+        throttledRestart.verify(transactionListener).setConcurrentConsumers(1);
+        throttledRestart.verify(transactionListener).start();
+
+        for (int i = 0; i < RECOVERY_CHECKS; i++) {
+            controller.evaluate();
+        }
+        assertEquals(0.0, level());
+        verify(transactionListener).setConcurrentConsumers(4);
+        verify(transactionListener).setPrefetchCount(250);
+        verify(partitionListener).setPrefetchCount(20);
+    }
+
+    @Test
+    void stoppedListenersOfUnusedModesAreLeftAlone() {
+        when(transactionListener.isRunning()).thenReturn(false);
+
+        poolState(MAX_POOL_SIZE - 2, 1);
+        controller.evaluate();
+
+        verify(transactionListener, never()).setConcurrentConsumers(anyInt());
+        verify(transactionListener, never()).setPrefetchCount(anyInt());
+        verify(partitionListener).setPrefetchCount(5);
+    }
+
+    private void poolState(int active, int awaiting) {
+        when(pool.getActiveConnections()).thenReturn(active);
+        when(pool.getThreadsAwaitingConnection()).thenReturn(awaiting);
+    }
+
+    private double level() {
+        return meterRegistry.get("wallet.listener.backpressure.level").gauge().value();
+    }
+
+    private static SimpleMessageListenerContainer container(int consumers, int prefetch) {
+        SimpleMessageListenerContainer container = mock(SimpleMessageListenerContainer.class);
+        when(container.isRunning()).thenReturn(true);
+        when(container.getActiveConsumerCount()).thenReturn(consumers);
+        ReflectionTestUtils.setField(container, "prefetchCount", prefetch);
+        return container;
+    }
+}
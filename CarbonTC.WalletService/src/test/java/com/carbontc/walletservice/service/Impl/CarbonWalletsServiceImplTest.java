@@ -0,0 +1,161 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.ModelMapperConfig;
+import com.carbontc.walletservice.dto.event.CreditIssuedEvent;
+import com.carbontc.walletservice.dto.request.CreditTransferRequestForConsumer;
+import com.carbontc.walletservice.entity.CarbonWallets;
+import com.carbontc.walletservice.entity.status.TransferType;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.CarbonWalletsRepository;
+import com.carbontc.walletservice.service.CarbonWalletsService;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
+import com.carbontc.walletservice.util.WalletConflictTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CarbonWalletsServiceImpl.class, ModelMapperConfig.class, TransactionRetryExecutor.class,
+        WalletConflictTracker.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CarbonWalletsServiceImplTest {
+
+    @Autowired
+    private CarbonWalletsService carbonWalletsService;
+
+    @Autowired
+    private CarbonWalletsRepository carbonWalletsRepository;
+
+    @Test
+    void transferWithInsufficientCreditsChangesNothing() {
+        CarbonWallets seller = newWallet("5");
+        CarbonWallets buyer = newWallet("0");
+
+        BusinessException e = assertThrows(BusinessException.class,
+                () -> carbonWalletsService.transferCredits(seller.getOwnerId(), request(buyer.getOwnerId(), "6")));
+
+        assertEquals("Số dư tín chỉ không đủ giao dịch.", e.getMessage());
+        assertBalance(seller, "5");
+        assertBalance(buyer, "0");
+    }
+
+    @Test
+    void oppositeTransfersInParallelDoNotDeadlockAndConserveCredits() throws Exception {
+        CarbonWallets a = newWallet("1000");
+        CarbonWallets b = newWallet("1000");
+        int rounds = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            // A->B và B->A cùng lúc: nếu khoá không theo thứ tự walletId thì sẽ deadlock
+            for (int t = 0; t < 2; t++) {
+                results.add(pool.submit(() -> transferRepeatedly(start, a, b, rounds)));
+                results.add(pool.submit(() -> transferRepeatedly(start, b, a, rounds)));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            assertBalance(a, "1000");
+            assertBalance(b, "1000");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void redeliveredCreditIssuedEventIsNotAddedTwice() throws Exception {
+        CarbonWallets wallet = newWallet("0");
+        CreditIssuedEvent event = creditIssued(wallet.getOwnerId(), "10");
+
+        carbonWalletsService.issueNewCredits(event);
+        carbonWalletsService.issueNewCredits(event);
+        // Cùng event đi lại qua đường batch (vd. lúc bật/tắt chế độ batch), kèm 1 bản trùng ngay trong batch
+        CreditIssuedEvent other = creditIssued(wallet.getOwnerId(), "5");
+        List<CreditIssuedEvent> missing = carbonWalletsService.issueNewCreditsBatch(List.of(event, other, other));
+
+        assertEquals(List.of(), missing);
+        assertBalance(wallet, "15");
+    }
+
+    @Test
+    void creditForMissingWalletIsNotMarkedProcessedSoItsRetryStillApplies() throws Exception {
+        CreditIssuedEvent event = creditIssued("owner-" + UUID.randomUUID(), "7");
+
+        assertEquals(List.of(event), carbonWalletsService.issueNewCreditsBatch(List.of(event)));
+
+        CarbonWallets wallet = newWallet("0", event.getOwnerUserId());
+        assertEquals(List.of(), carbonWalletsService.issueNewCreditsBatch(List.of(event)));
+        assertBalance(wallet, "7");
+    }
+
+    private CreditIssuedEvent creditIssued(String ownerId, String amount) {
+        CreditIssuedEvent event = new CreditIssuedEvent();
+        event.setOwnerUserId(ownerId);
+        event.setCreditAmount(new BigDecimal(amount));
+        event.setReferenceId(UUID.randomUUID().toString());
+        event.setIssuedAt(OffsetDateTime.now());
+        return event;
+    }
+
+    private Void transferRepeatedly(CountDownLatch start, CarbonWallets from, CarbonWallets to, int rounds)
+            throws Exception {
+        start.await();
+        for (int i = 0; i < rounds; i++) {
+            carbonWalletsService.transferCredits(from.getOwnerId(), request(to.getOwnerId(), "1"));
+        }
+        return null;
+    }
+
+    private CreditTransferRequestForConsumer request(String toUserId, String amount) {
+        CreditTransferRequestForConsumer request = new CreditTransferRequestForConsumer();
+        request.setToUserId(toUserId);
+        request.setAmount(new BigDecimal(amount));
+        request.setTransferType(TransferType.SALE);
+        request.setTotalPrice(BigDecimal.ZERO);
+        request.setReferenceId(UUID.randomUUID().toString());
+        return request;
+    }
+
+    private CarbonWallets newWallet(String balance) {
+        return newWallet(balance, "owner-" + UUID.randomUUID());
+    }
+
+    private CarbonWallets newWallet(String balance, String ownerId) {
+        CarbonWallets wallet = new CarbonWallets();
+        wallet.setOwnerId(ownerId);
+        wallet.setBalance(new BigDecimal(balance));
+        wallet.setTotalEarned(new BigDecimal(balance));
+        wallet.setLastUpdated(LocalDateTime.now());
+        return carbonWalletsRepository.save(wallet);
+    }
+
+    private void assertBalance(CarbonWallets wallet, String expected) {
+        CarbonWallets reloaded = carbonWalletsRepository.findById(wallet.getWalletId()).orElseThrow();
+        assertEquals(0, reloaded.getBalance().compareTo(new BigDecimal(expected)));
+    }
+}
@@ -0,0 +1,135 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.CertificateRenderConfig;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
+import com.carbontc.walletservice.repository.CertificateRepository;
+import com.carbontc.walletservice.service.CertificateBundleService;
+import com.carbontc.walletservice.service.CloudinaryService;
+import com.carbontc.walletservice.service.OutboxService;
+import com.carbontc.walletservice.util.CertificateCache;
+import com.carbontc.walletservice.util.CertificateHashIndex;
+import com.carbontc.walletservice.util.CertificatePdfRenderer;
+import com.carbontc.walletservice.util.CertificateSerialGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Xuất gói ZIP trên DB thật: chứng nhận chưa render được render bù, chứng nhận vẫn thiếu file
+ * được liệt kê trong MISSING.txt.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CertificateBundleServiceImpl.class, CertificateServiceImpl.class, CertificatePdfRenderer.class,
+        CertificateCache.class, SimpleMeterRegistry.class, CertificateRenderConfig.class,
+        CertificateBundleServiceImplTest.StorageConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CertificateBundleServiceImplTest {
+
+    @TempDir
+    static Path storageDir;
+
+    @TestConfiguration
+    static class StorageConfig {
+        @Bean
+        LocalCertificateStorage localCertificateStorage() throws IOException {
+            return new LocalCertificateStorage(Mockito.mock(CloudinaryService.class), storageDir.toString(),
+                    "/api/certificates/download/");
+        }
+    }
+
+    @Autowired
+    private CertificateBundleService certificateBundleService;
+
+    @Autowired
+    private CertificateRepository certificateRepository;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @MockitoBean
+    private CertificateHashIndex certificateHashIndex;
+
+    @MockitoBean
+    private CertificateSerialGenerator certificateSerialGenerator;
+
+    @Test
+    void deferredCertificateIsRenderedIntoZipAndInProgressOneIsListedInManifest() throws Exception {
+        String buyer = "buyer-" + UUID.randomUUID();
+        Certificate deferred = saveCertificate(buyer, CertificateStatus.DEFERRED);
+        Certificate rendering = saveCertificate(buyer, CertificateStatus.RENDERING);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int written = certificateBundleService.writeBundle(buyer, null, null, CertificateBundleService.Format.ZIP, out);
+
+        Map<String, byte[]> entries = unzip(out.toByteArray());
+        assertEquals(1, written);
+        assertEquals(2, entries.size());
+        byte[] pdf = entries.get("certificate-" + deferred.getUniqueHash() + ".pdf");
+        assertNotNull(pdf);
+        assertTrue(new String(pdf, 0, 5, StandardCharsets.US_ASCII).startsWith("%PDF"));
+        assertEquals(CertificateStatus.ISSUED,
+                certificateRepository.findById(deferred.getCertificateId()).orElseThrow().getStatus());
+
+        String manifest = new String(entries.get(CertificateBundleServiceImpl.MISSING_MANIFEST), StandardCharsets.UTF_8);
+        assertTrue(manifest.startsWith("# 1 chứng nhận không có trong gói"), manifest);
+        assertTrue(manifest.contains(rendering.getUniqueHash() + "\tchưa có file (RENDERING)"), manifest);
+    }
+
+    private Certificate saveCertificate(String buyer, CertificateStatus status) {
+        Certificate cert = new Certificate();
+        cert.setTransactionId("TX-" + UUID.randomUUID());
+        cert.setBuyerId(buyer);
+        cert.setCreditAmount(BigDecimal.ONE);
+        cert.setUniqueHash(UUID.randomUUID().toString());
+        cert.setCertificateNumber("CTC-" + UUID.randomUUID());
+        cert.setIssuedAt(LocalDateTime.now());
+        cert.setExpiryDate(LocalDateTime.now().plusDays(30));
+        cert.setStatus(status);
+        if (status == CertificateStatus.RENDERING) {
+            cert.setRenderClaimedAt(LocalDateTime.now());
+        }
+        return certificateRepository.save(cert);
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
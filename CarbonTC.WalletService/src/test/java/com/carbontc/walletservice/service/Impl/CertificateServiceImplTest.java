@@ -0,0 +1,390 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.CertificateRenderConfig;
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.entity.status.CertificateStatus;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.CertificateRepository;
+import com.carbontc.walletservice.service.CertificateStorage;
+import com.carbontc.walletservice.service.CloudinaryService;
+import com.carbontc.walletservice.service.OutboxService;
+import com.carbontc.walletservice.util.CertificateCache;
+import com.carbontc.walletservice.util.CertificateHashIndex;
+import com.carbontc.walletservice.util.CertificatePdfRenderer;
+import com.carbontc.walletservice.util.CertificateSerialGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tải chứng nhận trên DB thật với storage local: ETag lấy từ nội dung file đang lưu,
+ * render lại thì ETag và bytes trả về đổi theo; lượt tải đầu đồng thời ở nhiều replica chỉ render 1 lần.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CertificateServiceImpl.class, CertificatePdfRenderer.class, CertificateCache.class, SimpleMeterRegistry.class,
+        CertificateRenderConfig.class, CertificateServiceImplTest.StorageConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CertificateServiceImplTest {
+
+    @TempDir
+    static Path storageDir;
+
+    private static final AtomicLong SERIALS = new AtomicLong();
+
+    @TestConfiguration
+    static class StorageConfig {
+        @Bean
+        LocalCertificateStorage localCertificateStorage() throws IOException {
+            return new LocalCertificateStorage(Mockito.mock(CloudinaryService.class), storageDir.toString(),
+                    "/api/certificates/download/");
+        }
+    }
+
+    @Autowired
+    private CertificateServiceImpl certificateService;
+
+    @Autowired
+    private CertificateRepository certificateRepository;
+
+    @Autowired
+    private CertificateCache certificateCache;
+
+    @MockitoSpyBean
+    private CertificateStorage certificateStorage;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @MockitoBean
+    private CertificateHashIndex certificateHashIndex;
+
+    @MockitoBean
+    private CertificateSerialGenerator certificateSerialGenerator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockitoSpyBean
+    private CertificatePdfRenderer certificatePdfRenderer;
+
+    @Autowired
+    @Qualifier(CertificateRenderConfig.CERTIFICATE_RENDER_EXECUTOR)
+    private ThreadPoolTaskExecutor renderExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void etagIsSha256OfStoredContentAndMatchingRequestGets304WithoutReadingStorage() throws Exception {
+        Certificate cert = issuedCertificate();
+
+        ResponseEntity<Resource> first = certificateService.downloadCertificateByHash(cert.getUniqueHash(), request(null));
+        byte[] body = read(first.getBody());
+        String etag = first.getHeaders().getETag();
+
+        assertEquals("\"" + CertificateServiceImpl.sha256Hex(body) + "\"", etag);
+        assertEquals(CertificateServiceImpl.sha256Hex(body),
+                certificateRepository.findById(cert.getCertificateId()).orElseThrow().getContentSha256());
+
+        Mockito.clearInvocations(certificateStorage);
+        ResponseEntity<Resource> second = certificateService.downloadCertificateByHash(cert.getUniqueHash(), request(etag));
+
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertEquals(etag, second.getHeaders().getETag());
+        verify(certificateStorage, never()).load(any());
+    }
+
+    @Test
+    void regenerationChangesEtagAndServedBytesEvenWithOldBytesCached() throws Exception {
+        Certificate cert = issuedCertificate();
+        ResponseEntity<Resource> before = certificateService.downloadCertificateByHash(cert.getUniqueHash(), request(null));
+        String oldEtag = before.getHeaders().getETag();
+        byte[] oldBytes = read(before.getBody());
+
+        assertTrue(certificateService.regenerateCertificate(cert.getCertificateId()));
+
+        // Bản cũ vẫn nằm trong cache (như ở replica khác), nhưng không còn được dùng
+        String oldSha = oldEtag.substring(1, oldEtag.length() - 1);
+        assertArrayEquals(oldBytes, certificateCache.getBytes(oldSha));
+        ResponseEntity<Resource> after = certificateService.downloadCertificateByHash(cert.getUniqueHash(), request(oldEtag));
+        byte[] newBytes = read(after.getBody());
+
+        assertEquals(HttpStatus.OK, after.getStatusCode());
+        assertNotEquals(oldEtag, after.getHeaders().getETag());
+        assertFalse(Arrays.equals(oldBytes, newBytes));
+        assertEquals("\"" + CertificateServiceImpl.sha256Hex(newBytes) + "\"", after.getHeaders().getETag());
+    }
+
+    @Test
+    void regenerationClaimsTheRowAndWritesOnlyFileColumns() throws Exception {
+        Certificate cert = issuedCertificate();
+        String oldSha = cert.getContentSha256();
+        LocalDateTime extendedExpiry = LocalDateTime.now().plusYears(1).withNano(0);
+        List<CertificateStatus> statusWhileRendering = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(inv -> {
+            Certificate row = certificateRepository.findById(cert.getCertificateId()).orElseThrow();
+            statusWhileRendering.add(row.getStatus());
+            // Cột khác đổi trong lúc render: không được bị entity nạp từ trước ghi đè
+            row.setExpiryDate(extendedExpiry);
+            certificateRepository.save(row);
+            return inv.callRealMethod();
+        }).when(certificatePdfRenderer).render(any());
+
+        assertTrue(certificateService.regenerateCertificate(cert.getCertificateId()));
+
+        Certificate stored = certificateRepository.findById(cert.getCertificateId()).orElseThrow();
+        assertEquals(List.of(CertificateStatus.RENDERING), statusWhileRendering);
+        assertEquals(CertificateStatus.ISSUED, stored.getStatus());
+        assertNotEquals(oldSha, stored.getContentSha256());
+        assertEquals(extendedExpiry, stored.getExpiryDate());
+    }
+
+    @Test
+    void regenerationSkipsCertificateBeingRenderedElsewhere() throws Exception {
+        Certificate cert = issuedCertificate();
+        cert.setStatus(CertificateStatus.RENDERING);
+        cert.setRenderClaimedAt(LocalDateTime.now());
+        certificateRepository.save(cert);
+        Mockito.clearInvocations(certificateStorage);
+
+        assertFalse(certificateService.regenerateCertificate(cert.getCertificateId()));
+
+        verify(certificateStorage, never()).store(eq(cert.getUniqueHash()), any());
+        assertEquals(CertificateStatus.RENDERING,
+                certificateRepository.findById(cert.getCertificateId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void failedRegenerationReleasesTheClaimAndKeepsTheOldFile() throws Exception {
+        Certificate cert = issuedCertificate();
+        Mockito.doThrow(new IOException("storage down")).when(certificateStorage).store(eq(cert.getUniqueHash()), any());
+
+        assertFalse(certificateService.regenerateCertificate(cert.getCertificateId()));
+
+        Certificate stored = certificateRepository.findById(cert.getCertificateId()).orElseThrow();
+        assertEquals(CertificateStatus.ISSUED, stored.getStatus());
+        assertEquals(cert.getCertificateUrl(), stored.getCertificateUrl());
+        assertEquals(cert.getContentSha256(), stored.getContentSha256());
+    }
+
+    @Test
+    void legacyCertificateWithoutContentHashIsBackfilledFromStoredFile() throws Exception {
+        String hash = UUID.randomUUID().toString();
+        byte[] pdf = "%PDF-1.4 legacy".getBytes();
+        String url = certificateStorage.store(hash, pdf);
+        Certificate legacy = new Certificate();
+        legacy.setTransactionId(txId());
+        legacy.setBuyerId("buyer-3");
+        legacy.setCreditAmount(BigDecimal.ONE);
+        legacy.setUniqueHash(hash);
+        legacy.setCertificateNumber("CTC-LEGACY-" + SERIALS.incrementAndGet());
+        legacy.setIssuedAt(LocalDateTime.now());
+        legacy.setCertificateUrl(url);
+        legacy = certificateRepository.save(legacy);
+        assertNull(legacy.getContentSha256());
+
+        ResponseEntity<Resource> response = certificateService.downloadCertificateByHash(hash, request(null));
+
+        String sha = CertificateServiceImpl.sha256Hex(pdf);
+        assertEquals("\"" + sha + "\"", response.getHeaders().getETag());
+        assertEquals(sha, certificateRepository.findById(legacy.getCertificateId()).orElseThrow().getContentSha256());
+    }
+
+    @Test
+    void requestedCertificateIsRenderedByWorkerOnRenderPool() throws Exception {
+        when(certificateSerialGenerator.nextSerial()).thenAnswer(inv -> "CTC-" + SERIALS.incrementAndGet());
+        List<String> renderThreads = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(inv -> {
+            renderThreads.add(Thread.currentThread().getName());
+            return inv.callRealMethod();
+        }).when(certificatePdfRenderer).render(any());
+
+        Certificate requested = transactionTemplate.execute(status ->
+                certificateService.requestCertificate(txId(), "buyer-5", BigDecimal.TEN));
+
+        assertEquals(CertificateStatus.PENDING, requested.getStatus());
+        assertTrue(renderThreads.isEmpty());
+        verify(outboxService).enqueue(eq(RabbitMQConfig.CERTIFICATE_EXCHANGE),
+                eq(RabbitMQConfig.CERTIFICATE_REQUEST_ROUTING_KEY), any());
+
+        Certificate cert = certificateService.renderCertificate(requested.getCertificateId());
+
+        assertEquals(CertificateStatus.ISSUED, cert.getStatus());
+        assertEquals(1, renderThreads.size());
+        assertTrue(renderThreads.get(0).startsWith(renderExecutor.getThreadNamePrefix()), renderThreads.get(0));
+    }
+
+    @Test
+    void concurrentFirstDownloadsOnTwoReplicasRenderAndStoreOnce() throws Exception {
+        Certificate cert = saveCertificate(CertificateStatus.DEFERRED, null);
+        // Upload chậm để các lượt tải khác chắc chắn tới khi dòng đang RENDERING
+        Mockito.doAnswer(inv -> {
+            Thread.sleep(300);
+            return inv.callRealMethod();
+        }).when(certificateStorage).store(eq(cert.getUniqueHash()), any());
+        List<CertificateServiceImpl> replicas = List.of(replica(15000), replica(15000));
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ResponseEntity<Resource>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                CertificateServiceImpl replica = replicas.get(t % replicas.size());
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return replica.downloadCertificateByHash(cert.getUniqueHash(), request(null));
+                }));
+            }
+            start.countDown();
+
+            Set<String> etags = new HashSet<>();
+            for (Future<ResponseEntity<Resource>> result : results) {
+                ResponseEntity<Resource> response = result.get(30, TimeUnit.SECONDS);
+                assertEquals(HttpStatus.OK, response.getStatusCode());
+                etags.add(response.getHeaders().getETag());
+            }
+
+            verify(certificateStorage, times(1)).store(eq(cert.getUniqueHash()), any());
+            Certificate stored = certificateRepository.findById(cert.getCertificateId()).orElseThrow();
+            assertEquals(CertificateStatus.ISSUED, stored.getStatus());
+            assertEquals(Set.of("\"" + stored.getContentSha256() + "\""), etags);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void downloadWaitsForRenderInProgressElsewhereThenReportsItIsStillBeingCreated() throws Exception {
+        Certificate cert = saveCertificate(CertificateStatus.RENDERING, LocalDateTime.now());
+
+        BusinessException e = assertThrows(BusinessException.class,
+                () -> replica(300).downloadCertificateByHash(cert.getUniqueHash(), request(null)));
+
+        assertEquals("Chứng nhận đang được tạo, vui lòng thử lại sau.", e.getMessage());
+        verify(certificateStorage, never()).store(eq(cert.getUniqueHash()), any());
+    }
+
+    @Test
+    void renderingClaimPastLeaseIsTakenOver() throws Exception {
+        // Replica nhận render rồi chết: dòng kẹt ở RENDERING
+        Certificate cert = saveCertificate(CertificateStatus.RENDERING, LocalDateTime.now().minusHours(1));
+
+        ResponseEntity<Resource> response = replica(300).downloadCertificateByHash(cert.getUniqueHash(), request(null));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(CertificateStatus.ISSUED,
+                certificateRepository.findById(cert.getCertificateId()).orElseThrow().getStatus());
+    }
+
+    // Instance riêng (cache riêng, không chung future in-flight) như một replica khác, chế độ lazy
+    private CertificateServiceImpl replica(long renderWaitMs) {
+        CertificateServiceImpl replica = new CertificateServiceImpl(certificateRepository, certificateStorage, outboxService,
+                transactionTemplate, certificatePdfRenderer, new CertificateCache(meterRegistry, 16, 1024, 100),
+                certificateHashIndex, certificateSerialGenerator, meterRegistry, renderExecutor);
+        ReflectionTestUtils.setField(replica, "lazyRender", true);
+        ReflectionTestUtils.setField(replica, "renderWaitMs", renderWaitMs);
+        ReflectionTestUtils.setField(replica, "renderLeaseMs", 120000L);
+        return replica;
+    }
+
+    private Certificate saveCertificate(CertificateStatus status, LocalDateTime renderClaimedAt) {
+        Certificate cert = new Certificate();
+        cert.setTransactionId(txId());
+        cert.setBuyerId("buyer-4");
+        cert.setCreditAmount(BigDecimal.ONE);
+        cert.setUniqueHash(UUID.randomUUID().toString());
+        cert.setCertificateNumber("CTC-" + SERIALS.incrementAndGet());
+        cert.setIssuedAt(LocalDateTime.now());
+        cert.setExpiryDate(LocalDateTime.now().plusDays(30));
+        cert.setStatus(status);
+        cert.setRenderClaimedAt(renderClaimedAt);
+        return certificateRepository.save(cert);
+    }
+
+    // Chứng nhận đã phát hành qua worker: dòng PENDING được nhận render rồi lưu file
+    private Certificate issuedCertificate() throws BusinessException {
+        Certificate pending = saveCertificate(CertificateStatus.PENDING, null);
+        Certificate issued = certificateService.renderCertificate(pending.getCertificateId());
+        assertEquals(CertificateStatus.ISSUED, issued.getStatus());
+        return issued;
+    }
+
+    static ServletWebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/certificates/download/x");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    static byte[] read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String txId() {
+        return "TX-" + UUID.randomUUID();
+    }
+}
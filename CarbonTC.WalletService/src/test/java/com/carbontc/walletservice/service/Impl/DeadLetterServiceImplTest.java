@@ -0,0 +1,118 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.consumer.TieredRetryMessageRecoverer;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Replay parking lot: tin chỉ được ack (rời parking lot) khi bản gửi lại đã được broker xác nhận,
+ * bị nack thì trả về parking lot và dừng replay.
+ */
+class DeadLetterServiceImplTest {
+
+    private static final String QUEUE = RabbitMQConfig.CREDIT_QUEUE;
+    private static final String PARKING_LOT = RabbitMQConfig.parkingLotQueueName(QUEUE);
+
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private DeadLetterServiceImpl deadLetterService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        deadLetterService = new DeadLetterServiceImpl(rabbitTemplate, mock(AmqpAdmin.class));
+        ReflectionTestUtils.setField(deadLetterService, "partitions", 8);
+        ReflectionTestUtils.setField(deadLetterService, "confirmTimeoutMs", 200L);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation -> {
+            ChannelCallback<?> callback = invocation.getArgument(0);
+            return callback.doInRabbit(channel);
+        });
+    }
+
+    @Test
+    void confirmedReplayIsAckedAndRetryHeadersAreReset() throws Exception {
+        when(channel.basicGet(PARKING_LOT, false)).thenReturn(parked(1), parked(2), null);
+        brokerConfirms(true);
+
+        assertEquals(2, deadLetterService.replayParked(QUEUE, 10));
+
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        ArgumentCaptor<Message> replayed = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq(""), eq(QUEUE), replayed.capture(), any(CorrelationData.class));
+        Map<String, Object> headers = replayed.getValue().getMessageProperties().getHeaders();
+        assertNull(headers.get(TieredRetryMessageRecoverer.RETRY_COUNT_HEADER));
+        assertNull(headers.get(TieredRetryMessageRecoverer.EXCEPTION_HEADER));
+        assertEquals(QUEUE, headers.get(TieredRetryMessageRecoverer.ORIGINAL_QUEUE_HEADER));
+    }
+
+    @Test
+    void nackedReplayIsReturnedToParkingLotAndStopsTheReplay() throws Exception {
+        when(channel.basicGet(PARKING_LOT, false)).thenReturn(parked(7), parked(8));
+        brokerConfirms(false);
+
+        BusinessException e = assertThrows(BusinessException.class, () -> deadLetterService.replayParked(QUEUE, 10));
+
+        assertEquals("Replay bị dừng sau 0 tin: broker không xác nhận tin gửi lại.", e.getMessage());
+        verify(channel).basicNack(7, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(channel, times(1)).basicGet(PARKING_LOT, false);
+    }
+
+    @Test
+    void unknownQueueCannotBeReplayed() {
+        assertThrows(BusinessException.class, () -> deadLetterService.replayParked("queue-khong-ton-tai", 1));
+    }
+
+    private void brokerConfirms(boolean ack) {
+        doAnswer(invocation -> {
+            CorrelationData correlation = invocation.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).send(eq(""), eq(QUEUE), any(Message.class), any(CorrelationData.class));
+    }
+
+    private static GetResponse parked(long deliveryTag) {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType("application/json")
+                .headers(Map.of(
+                        TieredRetryMessageRecoverer.RETRY_COUNT_HEADER, 3,
+                        TieredRetryMessageRecoverer.EXCEPTION_HEADER, "BusinessException: thiếu ví",
+                        TieredRetryMessageRecoverer.ORIGINAL_QUEUE_HEADER, QUEUE))
+                .build();
+        Envelope envelope = new Envelope(deliveryTag, false, RabbitMQConfig.DEAD_LETTER_EXCHANGE, PARKING_LOT);
+        return new GetResponse(envelope, properties, "{}".getBytes(StandardCharsets.UTF_8), 0);
+    }
+}
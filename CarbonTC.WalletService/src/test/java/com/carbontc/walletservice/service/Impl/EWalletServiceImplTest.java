@@ -0,0 +1,181 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.ModelMapperConfig;
+import com.carbontc.walletservice.dto.response.EWalletResponse;
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import com.carbontc.walletservice.repository.TransactionLogRepository;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
+import com.carbontc.walletservice.service.EWalletService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Trừ/cộng tiền chạy thật trên DB (H2 chế độ MySQL), mỗi lời gọi commit riêng như khi chạy thật.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({EWalletServiceImpl.class, ModelMapperConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EWalletServiceImplTest {
+
+    @Autowired
+    private EWalletService eWalletService;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @Autowired
+    private TransactionLogRepository transactionLogRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @MockitoBean
+    private BalanceUpdatePublisher balanceUpdatePublisher;
+
+    @Test
+    void debitWithInsufficientFundsLeavesWalletUntouched() {
+        EWallet wallet = newWallet("50000");
+
+        BusinessException e = assertThrows(BusinessException.class,
+                () -> eWalletService.debit(wallet.getWalletId(), new BigDecimal("50001"), "mua tín chỉ"));
+
+        assertEquals("Số dư không đủ để thực hiện giao dịch.", e.getMessage());
+        EWallet reloaded = eWalletRepository.findById(wallet.getWalletId()).orElseThrow();
+        assertEquals(0, reloaded.getBalance().compareTo(new BigDecimal("50000")));
+        assertEquals(wallet.getVersion(), reloaded.getVersion());
+        assertEquals(0, transactionLogRepository.findByWallet_WalletIdOrderByCreatedAtDesc(wallet.getWalletId()).size());
+    }
+
+    @Test
+    void debitOnMissingWalletIsReportedSeparately() {
+        BusinessException e = assertThrows(BusinessException.class,
+                () -> eWalletService.debit(Long.MAX_VALUE, BigDecimal.TEN, "mua tín chỉ"));
+
+        assertEquals("Ví không tồn tại", e.getMessage());
+    }
+
+    @Test
+    void debitAndCreditMoveBalanceAndWriteLogs() throws BusinessException {
+        EWallet wallet = newWallet("100000");
+
+        eWalletService.debit(wallet.getWalletId(), new BigDecimal("30000"), "mua tín chỉ");
+        eWalletService.credit(wallet.getWalletId(), new BigDecimal("5000"), "hoàn tiền");
+
+        EWallet reloaded = eWalletRepository.findById(wallet.getWalletId()).orElseThrow();
+        assertEquals(0, reloaded.getBalance().compareTo(new BigDecimal("75000")));
+        assertEquals(2, transactionLogRepository.findByWallet_WalletIdOrderByCreatedAtDesc(wallet.getWalletId()).size());
+        // Mặc định chỉ nạp tiền VNPAY mới gửi BalanceUpdateCommand
+        verifyNoInteractions(balanceUpdatePublisher);
+    }
+
+    @Test
+    void updatesKeepCallerEntitiesManagedAndDepositReturnsFreshBalance() {
+        EWallet buyer = newWallet("100000");
+        EWallet seller = newWallet("0");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                // Như settle(): người gọi đã nạp ví trước khi trừ/cộng
+                EWallet loadedBuyer = eWalletRepository.findById(buyer.getWalletId()).orElseThrow();
+                EWallet loadedSeller = eWalletRepository.findById(seller.getWalletId()).orElseThrow();
+
+                eWalletService.debit(buyer.getWalletId(), new BigDecimal("30000"), "mua tín chỉ");
+                EWalletResponse deposited = eWalletService.deposit(seller.getWalletId(), new BigDecimal("10000"));
+
+                assertTrue(entityManager.contains(loadedBuyer), "UPDATE không được detach entity của người gọi");
+                assertEquals(10000.0, deposited.getBalance());
+                // Chỉ ví cần trả về được refresh
+                assertEquals(0, loadedSeller.getBalance().compareTo(new BigDecimal("10000")));
+            } catch (BusinessException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        EWallet reloaded = eWalletRepository.findById(buyer.getWalletId()).orElseThrow();
+        assertEquals(0, reloaded.getBalance().compareTo(new BigDecimal("70000")));
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        EWallet wallet = newWallet("100");
+        int threads = 16;
+        int attemptsPerThread = 5;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Callable<Integer> task = () -> {
+                    start.await();
+                    int succeeded = 0;
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        try {
+                            eWalletService.debit(wallet.getWalletId(), BigDecimal.TEN, "mua tín chỉ");
+                            succeeded++;
+                        } catch (BusinessException e) {
+                            assertEquals("Số dư không đủ để thực hiện giao dịch.", e.getMessage());
+                        }
+                    }
+                    return succeeded;
+                };
+                results.add(pool.submit(task));
+            }
+            start.countDown();
+
+            int succeeded = 0;
+            for (Future<Integer> result : results) {
+                succeeded += result.get();
+            }
+
+            // 100 / 10 = đúng 10 lần trừ thành công, không lần nào làm số dư âm
+            assertEquals(10, succeeded);
+            EWallet reloaded = eWalletRepository.findById(wallet.getWalletId()).orElseThrow();
+            assertEquals(0, reloaded.getBalance().signum());
+            assertEquals(10, transactionLogRepository.findByWallet_WalletIdOrderByCreatedAtDesc(wallet.getWalletId()).size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private EWallet newWallet(String balance) {
+        EWallet wallet = new EWallet();
+        wallet.setUserId("user-" + UUID.randomUUID());
+        wallet.setCurrency("VND");
+        wallet.setBalance(new BigDecimal(balance));
+        wallet.setUpdatedAt(LocalDateTime.now());
+        return eWalletRepository.save(wallet);
+    }
+}
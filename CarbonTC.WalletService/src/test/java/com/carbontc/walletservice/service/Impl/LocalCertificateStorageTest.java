@@ -0,0 +1,77 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.entity.Certificate;
+import com.carbontc.walletservice.service.CloudinaryService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LocalCertificateStorageTest {
+
+    @TempDir
+    Path baseDir;
+
+    private final CloudinaryService cloudinaryService = mock(CloudinaryService.class);
+
+    @Test
+    void storedFileIsLoadedFromDisk() throws IOException {
+        LocalCertificateStorage storage = storage();
+        String hash = UUID.randomUUID().toString();
+        byte[] pdf = "%PDF-1.7 test".getBytes();
+
+        String url = storage.store(hash, pdf);
+
+        assertEquals("/api/certificates/download/" + hash, url);
+        assertArrayEquals(pdf, read(storage.load(certificate(hash, url))));
+    }
+
+    @Test
+    void legacyRemoteFileIsFetchedEagerlySoErrorsSurfaceInLoad() throws IOException {
+        LocalCertificateStorage storage = storage();
+        String hash = UUID.randomUUID().toString();
+        String url = "https://res.cloudinary.com/demo/raw/upload/certificates/" + hash + ".pdf";
+        when(cloudinaryService.downloadPdf(url)).thenThrow(new IOException("read timed out"));
+
+        IOException e = assertThrows(IOException.class, () -> storage.load(certificate(hash, url)));
+
+        assertEquals("read timed out", e.getMessage());
+    }
+
+    @Test
+    void missingFileWithoutRemoteUrlIsNotFound() throws IOException {
+        LocalCertificateStorage storage = storage();
+        String hash = UUID.randomUUID().toString();
+
+        assertThrows(FileNotFoundException.class,
+                () -> storage.load(certificate(hash, "/api/certificates/download/" + hash)));
+    }
+
+    private LocalCertificateStorage storage() throws IOException {
+        return new LocalCertificateStorage(cloudinaryService, baseDir.toString(), "/api/certificates/download/");
+    }
+
+    private static Certificate certificate(String hash, String url) {
+        Certificate cert = new Certificate();
+        cert.setUniqueHash(hash);
+        cert.setCertificateUrl(url);
+        return cert;
+    }
+
+    private static byte[] read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
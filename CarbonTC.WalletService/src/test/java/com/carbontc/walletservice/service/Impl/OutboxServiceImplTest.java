@@ -0,0 +1,204 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.RabbitMQConfig;
+import com.carbontc.walletservice.dto.event.BalanceUpdateCommand;
+import com.carbontc.walletservice.dto.event.TransactionCompletedEvent;
+import com.carbontc.walletservice.entity.OutboxMessage;
+import com.carbontc.walletservice.entity.status.OutboxStatus;
+import com.carbontc.walletservice.repository.OutboxMessageRepository;
+import com.carbontc.walletservice.service.OutboxService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({OutboxServiceImpl.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {
+        "wallet-config.outbox.max-attempts=2",
+        "wallet-config.outbox.confirm-timeout-ms=200",
+        "wallet-config.outbox.claim-lease-ms=1000",
+        "wallet-config.outbox.coalesce-window-ms=0"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxServiceImplTest {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Autowired
+    private MessageConverter messageConverter;
+
+    @MockitoBean
+    private RabbitTemplate rabbitTemplate;
+
+    @TestConfiguration
+    static class MessageConverterConfig {
+        @Bean
+        MessageConverter jsonMessageConverter() {
+            return new RabbitMQConfig().jsonMessageConverter();
+        }
+    }
+
+    @BeforeEach
+    void clearOutbox() {
+        outboxMessageRepository.deleteAll();
+    }
+
+    @Test
+    void publishesOutsideAnyTransactionAndMarksAckedMessagesSent() {
+        enqueue();
+        AtomicBoolean sentInsideTransaction = new AtomicBoolean();
+        brokerReplies(true, null, sentInsideTransaction);
+
+        assertEquals(1, outboxService.relayBatch());
+
+        assertFalse(sentInsideTransaction.get(), "không được giữ transaction/khoá dòng khi chờ broker");
+        OutboxMessage message = outboxMessageRepository.findAll().get(0);
+        assertEquals(OutboxStatus.SENT, message.getStatus());
+        assertNotNull(message.getSentAt());
+    }
+
+    @Test
+    void longNackReasonIsTruncatedAndMessageParkedAfterMaxAttempts() {
+        enqueue();
+        brokerReplies(false, "x".repeat(1000), new AtomicBoolean());
+
+        assertEquals(0, outboxService.relayBatch());
+        OutboxMessage afterFirst = outboxMessageRepository.findAll().get(0);
+        assertEquals(OutboxStatus.PENDING, afterFirst.getStatus());
+        assertEquals(1, afterFirst.getAttempts());
+        assertEquals(OutboxMessage.MAX_ERROR_LENGTH, afterFirst.getLastError().length());
+
+        assertEquals(0, outboxService.relayBatch());
+        OutboxMessage afterSecond = outboxMessageRepository.findAll().get(0);
+        assertEquals(OutboxStatus.PARKED, afterSecond.getStatus());
+        assertEquals(2, afterSecond.getAttempts());
+
+        // Tin PARKED không còn được relay nhận
+        assertEquals(0, outboxService.relayBatch());
+    }
+
+    @Test
+    void staleClaimFromCrashedRelayIsSentAgain() {
+        enqueue();
+        OutboxMessage stuck = outboxMessageRepository.findAll().get(0);
+        stuck.setStatus(OutboxStatus.SENDING);
+        stuck.setClaimedAt(LocalDateTime.now().minusMinutes(5));
+        outboxMessageRepository.save(stuck);
+        brokerReplies(true, null, new AtomicBoolean());
+
+        assertEquals(1, outboxService.relayBatch());
+        assertEquals(OutboxStatus.SENT, outboxMessageRepository.findAll().get(0).getStatus());
+    }
+
+    @Test
+    void freshClaimOfAnotherRelayIsLeftAlone() {
+        enqueue();
+        OutboxMessage inFlight = outboxMessageRepository.findAll().get(0);
+        inFlight.setStatus(OutboxStatus.SENDING);
+        inFlight.setClaimedAt(LocalDateTime.now());
+        outboxMessageRepository.save(inFlight);
+
+        assertEquals(0, outboxService.relayBatch());
+        assertEquals(OutboxStatus.SENDING, outboxMessageRepository.findAll().get(0).getStatus());
+    }
+
+    @Test
+    void onlyNewestMessagePerCoalesceKeyIsSentAndOlderOnesAreCoalesced() throws Exception {
+        String userId = "user-" + UUID.randomUUID();
+        for (long version = 1; version <= 3; version++) {
+            outboxService.enqueueCoalesced(RabbitMQConfig.BALANCE_EXCHANGE, RabbitMQConfig.BALANCE_UPDATE_ROUTING_KEY,
+                    "balance:" + userId, balanceUpdate(userId, version));
+        }
+        outboxService.enqueueCoalesced(RabbitMQConfig.BALANCE_EXCHANGE, RabbitMQConfig.BALANCE_UPDATE_ROUTING_KEY,
+                "balance:other", balanceUpdate("other", 7));
+        enqueue();
+        brokerReplies(true, null, new AtomicBoolean());
+        Thread.sleep(5);
+
+        // 3 tin gửi đi + 2 tin bị gộp
+        assertEquals(5, outboxService.relayBatch());
+
+        List<OutboxMessage> rows = outboxMessageRepository.findAll().stream()
+                .sorted(Comparator.comparing(OutboxMessage::getId)).toList();
+        assertEquals(List.of(OutboxStatus.COALESCED, OutboxStatus.COALESCED, OutboxStatus.SENT,
+                OutboxStatus.SENT, OutboxStatus.SENT), rows.stream().map(OutboxMessage::getStatus).toList());
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq(RabbitMQConfig.BALANCE_EXCHANGE), eq(RabbitMQConfig.BALANCE_UPDATE_ROUTING_KEY),
+                sent.capture(), any(CorrelationData.class));
+        BalanceUpdateCommand newest = (BalanceUpdateCommand) messageConverter.fromMessage(sent.getAllValues().get(0));
+        assertEquals(userId, newest.getUserId());
+        assertEquals(3L, newest.getVersion());
+    }
+
+    private static BalanceUpdateCommand balanceUpdate(String userId, long version) {
+        BalanceUpdateCommand command = new BalanceUpdateCommand();
+        command.setUserId(userId);
+        command.setNewTotalBalance(BigDecimal.valueOf(version * 1000));
+        command.setVersion(version);
+        command.setUpdatedAt(OffsetDateTime.now());
+        return command;
+    }
+
+    private void enqueue() {
+        outboxService.enqueue(RabbitMQConfig.TRANSACTION_EXCHANGE, "transaction.completed",
+                TransactionCompletedEvent.builder()
+                        .transactionId(UUID.randomUUID().toString())
+                        .status("COMPLETED")
+                        .build());
+        List<OutboxMessage> all = outboxMessageRepository.findAll();
+        assertEquals(OutboxStatus.PENDING, all.get(all.size() - 1).getStatus());
+    }
+
+    private void brokerReplies(boolean ack, String reason, AtomicBoolean sentInsideTransaction) {
+        doAnswer(invocation -> {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                sentInsideTransaction.set(true);
+            }
+            CorrelationData correlation = invocation.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(ack, reason));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+}
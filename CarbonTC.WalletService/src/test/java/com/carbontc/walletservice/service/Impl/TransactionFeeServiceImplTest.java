@@ -0,0 +1,129 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.config.ModelMapperConfig;
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.entity.TransactionFee;
+import com.carbontc.walletservice.entity.status.FeeStatus;
+import com.carbontc.walletservice.entity.status.FeeType;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import com.carbontc.walletservice.repository.TransactionFeeRepository;
+import com.carbontc.walletservice.service.BalanceUpdatePublisher;
+import com.carbontc.walletservice.service.TransactionFeeService;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
+import com.carbontc.walletservice.util.WalletConflictTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TransactionFeeServiceImpl.class, EWalletServiceImpl.class, ModelMapperConfig.class,
+        TransactionRetryExecutor.class, WalletConflictTracker.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionFeeServiceImplTest {
+
+    @Autowired
+    private TransactionFeeService transactionFeeService;
+
+    @Autowired
+    private TransactionFeeRepository transactionFeeRepository;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @MockitoBean
+    private BalanceUpdatePublisher balanceUpdatePublisher;
+
+    @BeforeEach
+    void clearFees() {
+        transactionFeeRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentRunsWithdrawEachFeeExactlyOnce() throws Exception {
+        EWallet admin = newWallet();
+        for (int i = 0; i < 3; i++) {
+            transactionFeeService.recordFee(UUID.randomUUID().toString(), new BigDecimal("4000"), FeeType.PLATFORM_FEE);
+        }
+
+        int runs = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(runs);
+        try {
+            List<Future<BigDecimal>> results = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                Callable<BigDecimal> task = () -> {
+                    start.await();
+                    return transactionFeeService.withdrawPendingFeeToAdmin(admin.getUserId());
+                };
+                results.add(pool.submit(task));
+            }
+            start.countDown();
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (Future<BigDecimal> result : results) {
+                total = total.add(result.get());
+            }
+
+            assertEquals(0, total.compareTo(new BigDecimal("12000")));
+            assertBalance(admin, "12000");
+            assertTrue(transactionFeeRepository.findByFeeStatus(FeeStatus.PENDING_WITHDRAWAL).isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedDepositLeavesFeesPending() {
+        EWallet admin = newWallet();
+        // Dưới mức nạp tối thiểu 5.000 VND nên deposit báo lỗi
+        transactionFeeService.recordFee(UUID.randomUUID().toString(), new BigDecimal("1000"), FeeType.PLATFORM_FEE);
+
+        assertThrows(BusinessException.class, () -> transactionFeeService.withdrawPendingFeeToAdmin(admin.getUserId()));
+
+        List<TransactionFee> pending = transactionFeeRepository.findByFeeStatus(FeeStatus.PENDING_WITHDRAWAL);
+        assertEquals(1, pending.size());
+        assertNull(pending.get(0).getWithdrawalId());
+        assertBalance(admin, "0");
+    }
+
+    private EWallet newWallet() {
+        EWallet wallet = new EWallet();
+        wallet.setUserId("admin-" + UUID.randomUUID());
+        wallet.setCurrency("VND");
+        wallet.setBalance(BigDecimal.ZERO);
+        wallet.setUpdatedAt(LocalDateTime.now());
+        return eWalletRepository.save(wallet);
+    }
+
+    private void assertBalance(EWallet wallet, String expected) {
+        EWallet reloaded = eWalletRepository.findById(wallet.getWalletId()).orElseThrow();
+        assertEquals(0, reloaded.getBalance().compareTo(new BigDecimal(expected)));
+    }
+}
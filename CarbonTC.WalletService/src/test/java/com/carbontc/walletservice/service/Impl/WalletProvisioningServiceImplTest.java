@@ -0,0 +1,102 @@
+package com.carbontc.walletservice.service.Impl;
+
+import com.carbontc.walletservice.repository.CarbonWalletsRepository;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import com.carbontc.walletservice.repository.WalletProvisioningRepository;
+import com.carbontc.walletservice.util.TransactionRetryExecutor;
+import com.carbontc.walletservice.util.WalletConflictTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tạo ví lại cho cùng user (tin UserCreatedEvent gửi lại, trùng trong batch, chạy song song)
+ * không được sinh ví thứ 2.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({WalletProvisioningServiceImpl.class, WalletProvisioningRepository.class,
+        TransactionRetryExecutor.class, WalletConflictTracker.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WalletProvisioningServiceImplTest {
+
+    @Autowired
+    private WalletProvisioningServiceImpl walletProvisioningService;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @Autowired
+    private CarbonWalletsRepository carbonWalletsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void reprovisioningSameUserKeepsOneWalletOfEachKind() throws Exception {
+        String userId = UUID.randomUUID().toString();
+
+        walletProvisioningService.provisionWallets(List.of(userId));
+        walletProvisioningService.provisionWallets(List.of(userId, userId));
+
+        assertWalletCounts(userId, 1);
+        assertEquals(0, eWalletRepository.findByUserId(userId).orElseThrow().getBalance().signum());
+    }
+
+    @Test
+    void reprovisioningDoesNotResetExistingBalance() throws Exception {
+        String userId = UUID.randomUUID().toString();
+        walletProvisioningService.provisionWallets(List.of(userId));
+        jdbcTemplate.update("UPDATE e_wallets SET balance = 500 WHERE user_id = ?", userId);
+
+        walletProvisioningService.provisionWallets(List.of(userId));
+
+        assertWalletCounts(userId, 1);
+        assertEquals(0, eWalletRepository.findByUserId(userId).orElseThrow().getBalance().compareTo(BigDecimal.valueOf(500)));
+    }
+
+    @Test
+    void concurrentProvisioningOfSameUsersCreatesNoDuplicates() throws Exception {
+        List<String> userIds = IntStream.range(0, 20).mapToObj(i -> UUID.randomUUID().toString()).toList();
+
+        CompletableFuture<?>[] runs = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                    try {
+                        walletProvisioningService.provisionWallets(userIds);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(runs).get(30, TimeUnit.SECONDS);
+
+        for (String userId : userIds) {
+            assertWalletCounts(userId, 1);
+        }
+    }
+
+    private void assertWalletCounts(String userId, int expected) {
+        assertEquals(expected, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM e_wallets WHERE user_id = ?", Integer.class, userId));
+        assertEquals(expected, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM carbon_wallets WHERE owner_id = ?", Integer.class, userId));
+        assertEquals(expected == 1, carbonWalletsRepository.findByOwnerId(userId).isPresent());
+    }
+}
@@ -0,0 +1,157 @@
+package com.carbontc.walletservice.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CertificateHashIndexTest {
+
+    private static final LocalDateTime EXPIRY = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Test
+    void lookupReturnsExpiryNoExpiryOrNotFound() {
+        CertificateHashIndex index = newIndex();
+        UUID withExpiry = UUID.randomUUID();
+        UUID withoutExpiry = UUID.randomUUID();
+        index.add(withExpiry.toString(), EXPIRY);
+        index.add(withoutExpiry.toString(), null);
+
+        assertEquals(epochSeconds(EXPIRY), index.lookup(withExpiry));
+        assertEquals(CertificateHashIndex.NO_EXPIRY, index.lookup(withoutExpiry));
+        assertEquals(CertificateHashIndex.NOT_FOUND, index.lookup(UUID.randomUUID()));
+
+        index.compact();
+
+        assertEquals(epochSeconds(EXPIRY), index.lookup(withExpiry));
+        assertEquals(CertificateHashIndex.NO_EXPIRY, index.lookup(withoutExpiry));
+        assertEquals(CertificateHashIndex.NOT_FOUND, index.lookup(UUID.randomUUID()));
+    }
+
+    @Test
+    void malformedHashesAreIgnored() {
+        CertificateHashIndex index = newIndex();
+        index.add("not-a-uuid", EXPIRY);
+        index.add(null, EXPIRY);
+
+        assertEquals(0, index.size());
+        assertNull(CertificateHashIndex.parse(UUID.randomUUID() + "x"));
+        assertNull(CertificateHashIndex.parse("zzzzzzzz-zzzz-zzzz-zzzz-zzzzzzzzzzzz"));
+    }
+
+    @Test
+    void tableGrowsAcrossManyCompactions() {
+        CertificateHashIndex index = newIndex();
+        List<UUID> hashes = new ArrayList<>();
+        // Mỗi vòng đều phải dựng bảng lớn hơn (bảng đầu chỉ có 16 ô)
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                UUID hash = UUID.randomUUID();
+                hashes.add(hash);
+                index.add(hash.toString(), EXPIRY.plusSeconds(hashes.size()));
+            }
+            index.compact();
+            assertEquals(0, index.pendingSize());
+            assertEquals(hashes.size(), index.size());
+        }
+
+        for (int i = 0; i < hashes.size(); i++) {
+            assertEquals(epochSeconds(EXPIRY.plusSeconds(i + 1)), index.lookup(hashes.get(i)));
+        }
+    }
+
+    @Test
+    void compactionFoldsRecentAndReaddingSameEntryDoesNotGrowIndex() {
+        CertificateHashIndex index = newIndex();
+        UUID hash = UUID.randomUUID();
+        index.add(hash.toString(), EXPIRY);
+        assertEquals(1, index.pendingSize());
+
+        index.compact();
+        // Lần nạp bổ sung đọc lại khoảng overlap
+        index.add(hash.toString(), EXPIRY);
+
+        assertEquals(0, index.pendingSize());
+        assertEquals(1, index.size());
+
+        // Hạn dùng đổi: bản mới nằm ở recent, che bản cũ trong bảng, compact thì thay hẳn
+        index.add(hash.toString(), EXPIRY.plusDays(1));
+        assertEquals(epochSeconds(EXPIRY.plusDays(1)), index.lookup(hash));
+        index.compact();
+        assertEquals(1, index.size());
+        assertEquals(epochSeconds(EXPIRY.plusDays(1)), index.lookup(hash));
+    }
+
+    @Test
+    void concurrentAddsDuringCompactionAreNeverLost() throws Exception {
+        CertificateHashIndex index = newIndex();
+        int writers = 4;
+        int perWriter = 20_000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 1);
+        try {
+            Future<?> compactor = pool.submit(() -> {
+                start.await();
+                while (writing.get()) {
+                    index.compact();
+                }
+                return null;
+            });
+            List<Future<List<UUID>>> results = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    List<UUID> added = new ArrayList<>(perWriter);
+                    for (int i = 0; i < perWriter; i++) {
+                        UUID hash = UUID.randomUUID();
+                        index.add(hash.toString(), EXPIRY);
+                        // Đổi hạn dùng ngay sau đó: compact đang gộp bản cũ không được xoá mất bản mới
+                        index.add(hash.toString(), EXPIRY.plusDays(1));
+                        added.add(hash);
+                    }
+                    return added;
+                }));
+            }
+            start.countDown();
+
+            List<UUID> all = new ArrayList<>();
+            for (Future<List<UUID>> result : results) {
+                all.addAll(result.get(60, TimeUnit.SECONDS));
+            }
+            writing.set(false);
+            compactor.get(60, TimeUnit.SECONDS);
+            index.compact();
+
+            assertEquals(0, index.pendingSize());
+            assertEquals(writers * perWriter, index.size());
+            long expected = epochSeconds(EXPIRY.plusDays(1));
+            for (UUID hash : all) {
+                assertEquals(expected, index.lookup(hash), hash.toString());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static CertificateHashIndex newIndex() {
+        return new CertificateHashIndex(new SimpleMeterRegistry());
+    }
+
+    private static long epochSeconds(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
@@ -0,0 +1,64 @@
+package com.carbontc.walletservice.util;
+
+import com.carbontc.walletservice.entity.Certificate;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Đo số chứng nhận/giây và số byte cấp phát cho mỗi chứng nhận (không cần mạng).
+ * Chạy: mvn test -Dtest=CertificatePdfRendererBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CertificatePdfRendererBenchmarkTest {
+
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"layout", "template"})
+    void renderThroughputAndAllocation(String mode) {
+        CertificatePdfRenderer renderer = new CertificatePdfRenderer(new DefaultResourceLoader(),
+                "", mode);
+        renderer.loadAssets();
+
+        for (int i = 0; i < WARMUP; i++) {
+            assertNotNull(renderer.render(sampleCertificate(i)));
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long totalBytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            byte[] pdf = renderer.render(sampleCertificate(i));
+            assertNotNull(pdf);
+            totalBytes += pdf.length;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("Certificate render [%s]: %.1f cert/s, %d KB allocated/cert, %d KB PDF/cert%n",
+                mode, ITERATIONS / (elapsedNanos / 1e9), allocated / ITERATIONS / 1024, totalBytes / ITERATIONS / 1024);
+    }
+
+    private static Certificate sampleCertificate(int i) {
+        Certificate cert = new Certificate();
+        cert.setTransactionId("TX-" + i);
+        cert.setBuyerId(UUID.randomUUID().toString());
+        cert.setCreditAmount(BigDecimal.valueOf(100 + i));
+        cert.setUniqueHash(UUID.randomUUID().toString());
+        cert.setCertificateNumber("CTC-" + i);
+        cert.setIssuedAt(LocalDateTime.now());
+        return cert;
+    }
+}
@@ -0,0 +1,193 @@
+package com.carbontc.walletservice.util;
+
+import com.carbontc.walletservice.entity.Certificate;
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.LocationTextExtractionStrategy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Font/logo nạp lúc khởi động: không gọi mạng, cấu hình sai thì dừng khởi động thay vì âm thầm bỏ logo.
+ * Chế độ template phải cho ra cùng nội dung và cùng vị trí giá trị như chế độ layout.
+ */
+class CertificatePdfRendererTest {
+
+    // Sai lệch vị trí chấp nhận được giữa 2 chế độ (point)
+    private static final float POSITION_TOLERANCE = 1f;
+
+    private static final List<String> LABELS = List.of(
+            "Mã giao dịch:", "Người sở hữu:", "Số lượng tín chỉ:", "Ngày phát hành:", "Mã xác thực:", "Số serial:");
+
+    record TextChunk(String text, float x, float y) {
+    }
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void rendersWithoutLogoWhenNoneConfigured() {
+        CertificatePdfRenderer renderer = renderer("", "layout");
+
+        assertPdf(renderer.render(sampleCertificate()));
+    }
+
+    @Test
+    void rendersWithLogoFromFile() throws Exception {
+        Path logo = tempDir.resolve("logo.png");
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+
+        CertificatePdfRenderer renderer = renderer("file:" + logo, "layout");
+
+        assertPdf(renderer.render(sampleCertificate()));
+    }
+
+    @Test
+    void missingConfiguredLogoFailsStartup() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> renderer("file:" + tempDir.resolve("missing.png"), "layout"));
+
+        assertTrue(e.getMessage().contains("missing.png"));
+    }
+
+    @Test
+    void remoteLogoLocationIsRejected() {
+        assertThrows(IllegalStateException.class,
+                () -> renderer("https://example.com/logo.jpg", "layout"));
+    }
+
+    @Test
+    void templateAndLayoutProduceSameTextAndFieldPositions() throws IOException {
+        Certificate cert = sampleCertificate();
+        byte[] layoutPdf = renderer("", "layout").render(cert);
+        byte[] templatePdf = renderer("", "template").render(cert);
+
+        String layoutText = normalize(extractText(layoutPdf));
+        String templateText = normalize(extractText(templatePdf));
+        for (String expected : fieldValues(cert)) {
+            assertTrue(layoutText.contains(expected), () -> "layout thiếu " + expected);
+            assertTrue(templateText.contains(expected), () -> "template thiếu " + expected);
+        }
+        for (String label : LABELS) {
+            assertTrue(templateText.contains(label), () -> "template thiếu nhãn " + label);
+        }
+        assertEquals(layoutText, templateText);
+
+        List<TextChunk> layoutChunks = extractChunks(layoutPdf);
+        List<TextChunk> templateChunks = extractChunks(templatePdf);
+        for (String value : fieldValues(cert)) {
+            TextChunk inLayout = firstChunkOf(value, layoutChunks);
+            TextChunk inTemplate = firstChunkOf(value, templateChunks);
+            assertEquals(inLayout.x(), inTemplate.x(), POSITION_TOLERANCE, () -> "Lệch ngang: " + value);
+            assertEquals(inLayout.y(), inTemplate.y(), POSITION_TOLERANCE, () -> "Lệch dọc: " + value);
+        }
+    }
+
+    @Test
+    void longValueInTemplateStaysOnOneLineInsideItsField() throws IOException {
+        Certificate cert = sampleCertificate();
+        cert.setBuyerId("buyer-" + "x".repeat(120));
+
+        byte[] pdf = renderer("", "template").render(cert);
+
+        List<TextChunk> chunks = extractChunks(pdf);
+        TextChunk first = firstChunkOf(cert.getBuyerId(), chunks);
+        String sameLine = chunks.stream()
+                .filter(c -> Math.abs(c.y() - first.y()) <= POSITION_TOLERANCE && c.x() >= first.x())
+                .map(TextChunk::text)
+                .reduce("", String::concat);
+        assertEquals(cert.getBuyerId(), sameLine.strip());
+    }
+
+    static CertificatePdfRenderer renderer(String logoLocation, String mode) {
+        CertificatePdfRenderer renderer = new CertificatePdfRenderer(new DefaultResourceLoader(), logoLocation, mode);
+        renderer.loadAssets();
+        return renderer;
+    }
+
+    static Certificate sampleCertificate() {
+        Certificate cert = new Certificate();
+        cert.setTransactionId("TX-001");
+        cert.setBuyerId("buyer-001");
+        cert.setCreditAmount(new BigDecimal("125.50"));
+        cert.setUniqueHash("3f2a9c1e-hash");
+        cert.setCertificateNumber("CTC-000001");
+        cert.setIssuedAt(LocalDateTime.of(2026, 1, 2, 3, 4, 5));
+        return cert;
+    }
+
+    private static List<String> fieldValues(Certificate cert) {
+        return List.of(cert.getTransactionId(), cert.getBuyerId(), "125.50 kg CO₂",
+                "02/01/2026 03:04:05", cert.getUniqueHash(), cert.getCertificateNumber());
+    }
+
+    private static String extractText(byte[] pdf) throws IOException {
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            return PdfTextExtractor.getTextFromPage(document.getFirstPage(), new LocationTextExtractionStrategy());
+        }
+    }
+
+    private static String normalize(String text) {
+        // Ô giá trị trong khung template giữ chỗ bằng NBSP (không hiện ra), coi như khoảng trắng
+        return text.replace('\u00A0', ' ').replaceAll("\\s+", " ").strip();
+    }
+
+    // Vị trí đầu đường baseline của từng đoạn chữ trên trang 1
+    private static List<TextChunk> extractChunks(byte[] pdf) throws IOException {
+        List<TextChunk> chunks = new ArrayList<>();
+        IEventListener listener = new IEventListener() {
+            @Override
+            public void eventOccurred(IEventData data, EventType type) {
+                if (data instanceof TextRenderInfo info && !info.getText().isBlank()) {
+                    Vector start = info.getBaseline().getStartPoint();
+                    chunks.add(new TextChunk(info.getText(), start.get(Vector.I1), start.get(Vector.I2)));
+                }
+            }
+
+            @Override
+            public Set<EventType> getSupportedEvents() {
+                return Set.of(EventType.RENDER_TEXT);
+            }
+        };
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            new PdfCanvasProcessor(listener).processPageContent(document.getFirstPage());
+        }
+        return chunks;
+    }
+
+    private static TextChunk firstChunkOf(String value, List<TextChunk> chunks) {
+        return chunks.stream()
+                .filter(c -> value.startsWith(c.text()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Không tìm thấy " + value + " trong PDF"));
+    }
+
+    private static void assertPdf(byte[] pdf) {
+        assertNotNull(pdf);
+        assertTrue(new String(pdf, 0, 5).startsWith("%PDF-"));
+    }
+}
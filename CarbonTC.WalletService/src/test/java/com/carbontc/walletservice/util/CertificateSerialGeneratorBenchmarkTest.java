@@ -0,0 +1,57 @@
+package com.carbontc.walletservice.util;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Đo số serial/giây theo số luồng gọi đồng thời.
+ * Chạy: mvn test -Dtest=CertificateSerialGeneratorBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CertificateSerialGeneratorBenchmarkTest {
+
+    private static final int PER_THREAD = 2_000_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16})
+    void throughput(int threads) throws Exception {
+        CertificateSerialGenerator generator = new CertificateSerialGenerator(1, System::currentTimeMillis);
+        for (int i = 0; i < PER_THREAD; i++) {
+            generator.nextSerial();
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        generator.nextSerial();
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long elapsedNanos = System.nanoTime() - begin;
+
+            System.out.printf("Certificate serials [%d threads]: %.0f serial/s%n",
+                    threads, (double) threads * PER_THREAD / (elapsedNanos / 1e9));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
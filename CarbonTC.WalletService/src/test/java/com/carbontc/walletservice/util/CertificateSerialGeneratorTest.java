@@ -0,0 +1,123 @@
+package com.carbontc.walletservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CertificateSerialGeneratorTest {
+
+    private static final long NOW = CertificateSerialGenerator.EPOCH_MILLIS + 1_000_000L;
+
+    @Test
+    void idsAreUniqueAcrossThreadsAndIncreasingWithinEachThread() throws Exception {
+        CertificateSerialGenerator generator = new CertificateSerialGenerator(7, System::currentTimeMillis);
+        int threads = 8;
+        int perThread = 200_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Callable<long[]> task = () -> {
+                    start.await();
+                    long[] ids = new long[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                };
+                results.add(pool.submit(task));
+            }
+            start.countDown();
+
+            long[] all = new long[threads * perThread];
+            int offset = 0;
+            for (Future<long[]> result : results) {
+                long[] ids = result.get();
+                for (int i = 1; i < ids.length; i++) {
+                    assertTrue(ids[i] > ids[i - 1], "id trong cùng một luồng phải tăng dần");
+                }
+                System.arraycopy(ids, 0, all, offset, ids.length);
+                offset += ids.length;
+            }
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                assertTrue(all[i] != all[i - 1], "trùng id " + all[i]);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextMillisecond() {
+        CertificateSerialGenerator generator = new CertificateSerialGenerator(1, () -> NOW);
+        int count = 3 * (int) (CertificateSerialGenerator.SEQUENCE_MASK + 1);
+        long previous = -1;
+        for (int i = 0; i < count; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void clockMovingBackwardsNeverRepeatsIds() {
+        AtomicLong clock = new AtomicLong(NOW);
+        CertificateSerialGenerator generator = new CertificateSerialGenerator(1, clock::get);
+        long before = generator.nextId();
+        clock.addAndGet(-5_000);
+        long after = generator.nextId();
+        assertTrue(after > before);
+    }
+
+    @Test
+    void differentNodesNeverCollide() {
+        CertificateSerialGenerator node1 = new CertificateSerialGenerator(1, () -> NOW);
+        CertificateSerialGenerator node2 = new CertificateSerialGenerator(2, () -> NOW);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(node1.nextId());
+            ids.add(node2.nextId());
+        }
+        assertEquals(20_000, ids.size());
+    }
+
+    @Test
+    void serialCarriesPrefix() {
+        CertificateSerialGenerator generator = new CertificateSerialGenerator(1, () -> NOW);
+        assertTrue(generator.nextSerial().startsWith(CertificateSerialGenerator.PREFIX));
+    }
+
+    @Test
+    void missingNodeIdFailsFastUnlessHostnameFallbackIsAllowed() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> CertificateSerialGenerator.resolveNodeId(-1, false));
+        assertTrue(e.getMessage().contains("WALLET_NODE_ID"), e.getMessage());
+
+        long derived = CertificateSerialGenerator.resolveNodeId(-1, true);
+        assertTrue(derived >= 0 && derived <= CertificateSerialGenerator.MAX_NODE_ID);
+        assertEquals(5, CertificateSerialGenerator.resolveNodeId(5, false));
+        assertEquals(5, new CertificateSerialGenerator(5, false).getNodeId());
+    }
+
+    @Test
+    void rejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CertificateSerialGenerator(CertificateSerialGenerator.MAX_NODE_ID + 1, System::currentTimeMillis));
+    }
+}
@@ -0,0 +1,141 @@
+package com.carbontc.walletservice.util;
+
+import com.carbontc.walletservice.entity.EWallet;
+import com.carbontc.walletservice.exception.BusinessException;
+import com.carbontc.walletservice.repository.EWalletRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mô phỏng deadlock/xung đột version bằng cách ném đúng loại exception mà driver MySQL/Hibernate trả về
+ * ở những lần chạy đầu, rồi kiểm tra dữ liệu của lần chạy cuối cùng được commit (và của các lần trước thì không).
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TransactionRetryExecutor.class, WalletConflictTracker.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionRetryExecutorTest {
+
+    @Autowired
+    private TransactionRetryExecutor transactionRetryExecutor;
+
+    @Autowired
+    private EWalletRepository eWalletRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void deadlockIsRetriedAndOnlyTheLastAttemptCommits() throws BusinessException {
+        EWallet wallet = newWallet();
+        AtomicInteger attempts = new AtomicInteger();
+
+        transactionRetryExecutor.execute("deadlockTest", () -> {
+            eWalletRepository.creditBalance(wallet.getWalletId(), BigDecimal.TEN, LocalDateTime.now());
+            if (attempts.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("deadlock",
+                        new SQLException("Deadlock found when trying to get lock", "40001", 1213));
+            }
+            return null;
+        });
+
+        assertEquals(3, attempts.get());
+        // 2 lần bị deadlock đã rollback, chỉ lần thứ 3 được cộng
+        assertBalance(wallet, "10");
+        assertEquals(2.0, meterRegistry.counter("wallet.tx.deadlocks", "operation", "deadlockTest").count());
+    }
+
+    @Test
+    void rawMysqlDeadlockCodeIsRecognised() {
+        assertTrue(TransactionRetryExecutor.isLockConflict(
+                new RuntimeException(new SQLException("Lock wait timeout exceeded", "HY000", 1205))));
+        assertFalse(TransactionRetryExecutor.isLockConflict(
+                new RuntimeException(new SQLException("Duplicate entry", "23000", 1062))));
+    }
+
+    @Test
+    void optimisticConflictIsRetried() throws BusinessException {
+        EWallet wallet = newWallet();
+        AtomicInteger attempts = new AtomicInteger();
+
+        transactionRetryExecutor.execute("optimisticTest", () -> {
+            eWalletRepository.creditBalance(wallet.getWalletId(), BigDecimal.ONE, LocalDateTime.now());
+            if (attempts.incrementAndGet() == 1) {
+                throw new ObjectOptimisticLockingFailureException(EWallet.class, wallet.getWalletId());
+            }
+            return null;
+        });
+
+        assertEquals(2, attempts.get());
+        assertBalance(wallet, "1");
+    }
+
+    @Test
+    void businessExceptionRollsBackWithoutRetry() {
+        EWallet wallet = newWallet();
+        AtomicInteger attempts = new AtomicInteger();
+        BusinessException failure = new BusinessException("Số dư không đủ");
+
+        BusinessException thrown = assertThrows(BusinessException.class,
+                () -> transactionRetryExecutor.execute("businessTest", () -> {
+                    attempts.incrementAndGet();
+                    eWalletRepository.creditBalance(wallet.getWalletId(), BigDecimal.TEN, LocalDateTime.now());
+                    throw failure;
+                }));
+
+        assertSame(failure, thrown);
+        assertEquals(1, attempts.get());
+        assertBalance(wallet, "0");
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(CannotAcquireLockException.class,
+                () -> transactionRetryExecutor.execute("exhaustedTest", () -> {
+                    attempts.incrementAndGet();
+                    throw new CannotAcquireLockException("deadlock");
+                }));
+
+        // wallet-config.tx-retry.max-attempts trong application-test.yml
+        assertEquals(20, attempts.get());
+    }
+
+    private EWallet newWallet() {
+        EWallet wallet = new EWallet();
+        wallet.setUserId("user-" + UUID.randomUUID());
+        wallet.setCurrency("VND");
+        wallet.setBalance(BigDecimal.ZERO);
+        wallet.setUpdatedAt(LocalDateTime.now());
+        return eWalletRepository.save(wallet);
+    }
+
+    private void assertBalance(EWallet wallet, String expected) {
+        EWallet reloaded = eWalletRepository.findById(wallet.getWalletId()).orElseThrow();
+        assertEquals(0, reloaded.getBalance().compareTo(new BigDecimal(expected)));
+    }
+}